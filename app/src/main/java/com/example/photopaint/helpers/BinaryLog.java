@@ -0,0 +1,275 @@
+package com.example.photopaint.helpers;
+
+import com.example.photopaint.helpers.time.FastDateFormat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 二进制结构化日志：每条记录定长64字节，写进内存映射的文件里，格式化留给BinaryLogDecoder在电脑上做。
+// 消息用模板加数字参数，"{}"是long，"{f}"是double（传bits(value)）；模板和线程名第一次出现时写进旁边的字典文件。
+// 没开BuildVars.BINARY_LOGS时按模板拼成文本交给FileLog
+public class BinaryLog {
+
+    public static final int LEVEL_DEBUG = 0;
+    public static final int LEVEL_WARN = 1;
+    public static final int LEVEL_ERROR = 2;
+
+    static final int MAGIC = 0x424c4f47;
+    static final int VERSION = 1;
+    static final String DICTIONARY_SUFFIX = ".dict";
+
+    // 文件头：magic、version、recordSize、capacity
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 64;
+    static final int MAX_ARGS = 4;
+    // 序号最后写，解码时序号为0表示这个槽位还没写完或没用过
+    static final int OFFSET_SEQUENCE = 0;
+    static final int OFFSET_TIME = 8;
+    static final int OFFSET_THREAD = 16;
+    static final int OFFSET_TEMPLATE = 20;
+    static final int OFFSET_LEVEL = 24;
+    static final int OFFSET_ARG_COUNT = 25;
+    static final int OFFSET_ARGS = 32;
+
+    // 32768条，文件2MB，写满后从头覆盖
+    private static final int CAPACITY = 32768;
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private File file;
+    private OutputStreamWriter dictionary;
+    private final AtomicLong position = new AtomicLong();
+    private final ConcurrentHashMap<String, Integer> templateIds = new ConcurrentHashMap<>();
+    private int nextTemplateId;
+    // 线程id按线程当前的名字分配：SharedExecutor的线程执行每个SerialQueue的任务时会改成队列的名字，
+    // 记下的是当时在跑哪个队列。每个线程缓存上一次的名字和id，名字没变时不用查表
+    private final ConcurrentHashMap<String, Integer> threadIds = new ConcurrentHashMap<>();
+    private final ThreadLocal<ThreadName> threadNames = new ThreadLocal<>();
+    private int nextThreadId;
+
+    private static class ThreadName {
+        private String name;
+        private int id;
+    }
+    private volatile boolean initied;
+
+    private static volatile BinaryLog Instance = null;
+
+    public static BinaryLog getInstance() {
+        BinaryLog localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (BinaryLog.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new BinaryLog();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    public static File getCurrentFile() {
+        BinaryLog localInstance = Instance;
+        return localInstance != null ? localInstance.file : null;
+    }
+
+    public static File getDictionaryFile() {
+        File current = getCurrentFile();
+        return current != null ? new File(current.getPath() + DICTIONARY_SUFFIX) : null;
+    }
+
+    public static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    private void init() {
+        if (initied) {
+            return;
+        }
+        synchronized (this) {
+            if (!initied) {
+                openFile();
+                initied = true;
+            }
+        }
+    }
+
+    private void openFile() {
+        try {
+            File sdCard = ApplicationLoader.applicationContext.getExternalFilesDir(null);
+            if (sdCard == null) {
+                return;
+            }
+            File dir = new File(sdCard.getAbsolutePath() + "/logs");
+            dir.mkdirs();
+            String name = FastDateFormat.getInstance("dd_MM_yyyy_HH_mm_ss", Locale.US).format(System.currentTimeMillis());
+            open(new File(dir, name + ".blog"), CAPACITY);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // capacity必须是2的幂
+    void open(File logFile, int capacity) throws IOException {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(logFile, "rw");
+            long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+            randomAccessFile.setLength(size);
+            MappedByteBuffer mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            mapped.putInt(8, RECORD_SIZE);
+            mapped.putInt(12, capacity);
+            dictionary = new OutputStreamWriter(new FileOutputStream(new File(logFile.getPath() + DICTIONARY_SUFFIX)), "UTF-8");
+            this.capacity = capacity;
+            file = logFile;
+            buffer = mapped;
+        } finally {
+            // 映射建立后关掉文件不影响映射区
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (Exception ignore) {
+
+                }
+            }
+        }
+    }
+
+    public static void d(String template) {
+        log(LEVEL_DEBUG, template, 0, 0, 0, 0, 0);
+    }
+
+    public static void d(String template, long a0) {
+        log(LEVEL_DEBUG, template, 1, a0, 0, 0, 0);
+    }
+
+    public static void d(String template, long a0, long a1) {
+        log(LEVEL_DEBUG, template, 2, a0, a1, 0, 0);
+    }
+
+    public static void d(String template, long a0, long a1, long a2) {
+        log(LEVEL_DEBUG, template, 3, a0, a1, a2, 0);
+    }
+
+    public static void d(String template, long a0, long a1, long a2, long a3) {
+        log(LEVEL_DEBUG, template, 4, a0, a1, a2, a3);
+    }
+
+    public static void w(String template, long a0) {
+        log(LEVEL_WARN, template, 1, a0, 0, 0, 0);
+    }
+
+    public static void e(String template, long a0) {
+        log(LEVEL_ERROR, template, 1, a0, 0, 0, 0);
+    }
+
+    public static void log(int level, String template, int argCount, long a0, long a1, long a2, long a3) {
+        if (!BuildVars.LOGS_ENABLED) {
+            return;
+        }
+        if (!BuildVars.BINARY_LOGS) {
+            logText(level, template, argCount, a0, a1, a2, a3);
+            return;
+        }
+        BinaryLog instance = getInstance();
+        instance.init();
+        if (instance.buffer == null) {
+            logText(level, template, argCount, a0, a1, a2, a3);
+            return;
+        }
+        instance.write(level, template, argCount, a0, a1, a2, a3);
+    }
+
+    void write(int level, String template, int argCount, long a0, long a1, long a2, long a3) {
+        int templateId = getTemplateId(template);
+        int threadId = getThreadId();
+        long sequence = position.getAndIncrement();
+        int offset = HEADER_SIZE + (int) (sequence & (capacity - 1)) * RECORD_SIZE;
+
+        MappedByteBuffer buffer = this.buffer;
+        buffer.putLong(offset + OFFSET_SEQUENCE, 0);
+        buffer.putLong(offset + OFFSET_TIME, System.currentTimeMillis());
+        buffer.putInt(offset + OFFSET_THREAD, threadId);
+        buffer.putInt(offset + OFFSET_TEMPLATE, templateId);
+        buffer.put(offset + OFFSET_LEVEL, (byte) level);
+        buffer.put(offset + OFFSET_ARG_COUNT, (byte) argCount);
+        buffer.putLong(offset + OFFSET_ARGS, a0);
+        buffer.putLong(offset + OFFSET_ARGS + 8, a1);
+        buffer.putLong(offset + OFFSET_ARGS + 16, a2);
+        buffer.putLong(offset + OFFSET_ARGS + 24, a3);
+        buffer.putLong(offset + OFFSET_SEQUENCE, sequence + 1);
+    }
+
+    private int getTemplateId(String template) {
+        Integer id = templateIds.get(template);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = templateIds.get(template);
+            if (id == null) {
+                id = nextTemplateId++;
+                writeDictionary("M", id, template);
+                templateIds.put(template, id);
+            }
+        }
+        return id;
+    }
+
+    private int getThreadId() {
+        String name = Thread.currentThread().getName();
+        ThreadName cached = threadNames.get();
+        if (cached != null && (cached.name == name || cached.name.equals(name))) {
+            return cached.id;
+        }
+        Integer id = threadIds.get(name);
+        if (id == null) {
+            synchronized (this) {
+                id = threadIds.get(name);
+                if (id == null) {
+                    id = nextThreadId++;
+                    writeDictionary("T", id, name);
+                    threadIds.put(name, id);
+                }
+            }
+        }
+        if (cached == null) {
+            cached = new ThreadName();
+            threadNames.set(cached);
+        }
+        cached.name = name;
+        cached.id = id;
+        return id;
+    }
+
+    private void writeDictionary(String type, int id, String text) {
+        try {
+            dictionary.write(type + "\t" + id + "\t" + text.replace('\n', ' ').replace('\t', ' ') + "\n");
+            dictionary.flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void logText(int level, String template, int argCount, long a0, long a1, long a2, long a3) {
+        StringBuilder text = new StringBuilder(template.length() + 32);
+        BinaryLogDecoder.render(text, template, argCount, new long[]{a0, a1, a2, a3});
+        if (level == LEVEL_ERROR) {
+            FileLog.e(text.toString());
+        } else if (level == LEVEL_WARN) {
+            FileLog.w(text.toString());
+        } else {
+            FileLog.d(text.toString());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.photopaint.helpers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// 把BinaryLog写出的.blog文件还原成文本日志，只依赖JDK，可以在电脑上直接跑：
+// java -cp <classes> com.example.photopaint.helpers.BinaryLogDecoder xxx.blog
+public class BinaryLogDecoder {
+
+    private final Map<Integer, String> templates = new HashMap<>();
+    private final Map<Integer, String> threads = new HashMap<>();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd_MM_yyyy_HH_mm_ss.SSS", Locale.US);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: BinaryLogDecoder <file.blog> [dictionary]");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        File dictionary = new File(args.length > 1 ? args[1] : args[0] + BinaryLog.DICTIONARY_SUFFIX);
+        BinaryLogDecoder decoder = new BinaryLogDecoder();
+        decoder.readDictionary(dictionary);
+        decoder.decode(file, System.out);
+    }
+
+    // 字典每行是 "M\tid\t模板" 或 "T\tid\t线程名"
+    public void readDictionary(File file) throws Exception {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+                int id = Integer.parseInt(parts[1]);
+                if ("M".equals(parts[0])) {
+                    templates.put(id, parts[2]);
+                } else if ("T".equals(parts[0])) {
+                    threads.put(id, parts[2]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void decode(File file, PrintStream out) throws Exception {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != BinaryLog.MAGIC) {
+                throw new IllegalArgumentException("not a binary log: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != BinaryLog.VERSION) {
+                throw new IllegalArgumentException("unsupported binary log version " + version);
+            }
+            int recordSize = buffer.getInt(8);
+            int capacity = buffer.getInt(12);
+
+            // 文件是循环写的，按序号排序还原先后顺序，序号为0的槽位还没写过
+            long[] order = new long[capacity];
+            int count = 0;
+            for (int a = 0; a < capacity; a++) {
+                int offset = BinaryLog.HEADER_SIZE + a * recordSize;
+                if (offset + recordSize > buffer.limit()) {
+                    break;
+                }
+                long sequence = buffer.getLong(offset + BinaryLog.OFFSET_SEQUENCE);
+                if (sequence != 0) {
+                    order[count++] = (sequence << 20) | a;
+                }
+            }
+            Arrays.sort(order, 0, count);
+
+            long[] args = new long[BinaryLog.MAX_ARGS];
+            StringBuilder line = new StringBuilder(256);
+            for (int a = 0; a < count; a++) {
+                int offset = BinaryLog.HEADER_SIZE + (int) (order[a] & 0xfffff) * recordSize;
+                long time = buffer.getLong(offset + BinaryLog.OFFSET_TIME);
+                int thread = buffer.getInt(offset + BinaryLog.OFFSET_THREAD);
+                int template = buffer.getInt(offset + BinaryLog.OFFSET_TEMPLATE);
+                int level = buffer.get(offset + BinaryLog.OFFSET_LEVEL);
+                int argCount = Math.min(buffer.get(offset + BinaryLog.OFFSET_ARG_COUNT), BinaryLog.MAX_ARGS);
+                for (int b = 0; b < argCount; b++) {
+                    args[b] = buffer.getLong(offset + BinaryLog.OFFSET_ARGS + b * 8);
+                }
+
+                line.setLength(0);
+                line.append(dateFormat.format(new Date(time)));
+                line.append(level == BinaryLog.LEVEL_ERROR ? " E/" : (level == BinaryLog.LEVEL_WARN ? " W/" : " D/"));
+                String threadName = threads.get(thread);
+                line.append(threadName != null ? threadName : "thread-" + thread).append(": ");
+                String text = templates.get(template);
+                if (text == null) {
+                    line.append("<unknown template ").append(template).append('>');
+                    for (int b = 0; b < argCount; b++) {
+                        line.append(' ').append(args[b]);
+                    }
+                } else {
+                    render(line, text, argCount, args);
+                }
+                out.println(line);
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    // "{}"按long输出，"{f}"按double的位模式还原
+    static void render(StringBuilder out, String template, int argCount, long[] args) {
+        int arg = 0;
+        int length = template.length();
+        for (int a = 0; a < length; a++) {
+            char c = template.charAt(a);
+            if (c == '{' && arg < argCount) {
+                if (a + 1 < length && template.charAt(a + 1) == '}') {
+                    out.append(args[arg++]);
+                    a++;
+                    continue;
+                } else if (a + 2 < length && template.charAt(a + 1) == 'f' && template.charAt(a + 2) == '}') {
+                    out.append(String.format(Locale.US, "%.2f", Double.longBitsToDouble(args[arg++])));
+                    a += 2;
+                    continue;
+                }
+            }
+            out.append(c);
+        }
+    }
+}
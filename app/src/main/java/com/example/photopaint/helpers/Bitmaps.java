@@ -318,6 +318,82 @@ public class Bitmaps {
         return bitmap;
     }
 
+    // 和createBitmap(source, 0, 0, w, h, m, filter)结果一样，但按水平条带分给多个线程画，大图旋转缩放时能用上多核。
+    // 同一个Bitmap不能同时被几个Canvas画，所以每条先画进一张条带大小的小图，再用setPixels写进结果里互不重叠的几行，
+    // 写完马上回收，额外的内存只有每个线程手上的一条；单线程、ALPHA_8或者内存不够时退回到普通的createBitmap
+    public static Bitmap createTransformedBitmap(final Bitmap source, final Matrix m, final boolean filter, TileExecutor executor) {
+        RectF deviceR = new RectF();
+        m.mapRect(deviceR, new RectF(0, 0, source.getWidth(), source.getHeight()));
+        final int width = Math.round(deviceR.width());
+        int height = Math.round(deviceR.height());
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int parallelism = executor.getParallelism();
+        if (parallelism < 2 || height <= TileExecutor.DEFAULT_TILE_SIZE || source.getConfig() == Bitmap.Config.ALPHA_8) {
+            return createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), m, filter);
+        }
+        // 结果图加上每个线程一张条带图和一份像素数组
+        long bandBytes = (long) width * TileExecutor.DEFAULT_TILE_SIZE * 4;
+        long required = (long) width * height * 4 + bandBytes * 2 * parallelism;
+        Runtime runtime = Runtime.getRuntime();
+        if (runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory()) < required) {
+            return createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), m, filter);
+        }
+
+        final float offsetX = deviceR.left;
+        final float offsetY = deviceR.top;
+        final boolean antiAlias = !m.rectStaysRect();
+        Bitmap bitmap = null;
+        try {
+            final Bitmap result = bitmap = createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            result.setDensity(source.getDensity());
+            result.setHasAlpha(source.hasAlpha());
+            if (Build.VERSION.SDK_INT >= 19) {
+                result.setPremultiplied(source.isPremultiplied());
+            }
+            executor.run(width, height, width, TileExecutor.DEFAULT_TILE_SIZE, new TileExecutor.Kernel() {
+                @Override
+                public void run(int left, int top, int right, int bottom) {
+                    int rows = bottom - top;
+                    Bitmap band = Bitmap.createBitmap(width, rows, Bitmap.Config.ARGB_8888);
+                    try {
+                        if (Build.VERSION.SDK_INT >= 19) {
+                            band.setPremultiplied(result.isPremultiplied());
+                        }
+                        Matrix matrix = new Matrix(m);
+                        matrix.postTranslate(-offsetX, -offsetY - top);
+                        Paint paint = new Paint();
+                        paint.setFilterBitmap(filter);
+                        paint.setAntiAlias(antiAlias);
+                        Canvas canvas = new Canvas(band);
+                        canvas.drawBitmap(source, matrix, paint);
+                        try {
+                            canvas.setBitmap(null);
+                        } catch (Exception ignore) {
+
+                        }
+                        int[] pixels = new int[width * rows];
+                        band.getPixels(pixels, 0, width, 0, 0, width, rows);
+                        result.setPixels(pixels, 0, width, 0, top, width, rows);
+                    } finally {
+                        band.recycle();
+                    }
+                }
+            });
+        } catch (OutOfMemoryError e) {
+            FileLog.e(e);
+            if (bitmap != null) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+        if (bitmap == null) {
+            return createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), m, filter);
+        }
+        return bitmap;
+    }
+
     public static Bitmap createBitmap(Bitmap source, int x, int y, int width, int height) {
         return createBitmap(source, x, y, width, height, null, false);
     }
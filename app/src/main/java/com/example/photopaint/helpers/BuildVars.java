@@ -2,12 +2,17 @@ package com.example.photopaint.helpers;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import com.example.photopaint.BuildConfig;
 
 public class BuildVars {
 
     public static boolean DEBUG_VERSION = false;
     public static boolean DEBUG_PRIVATE_VERSION = false;
     public static boolean LOGS_ENABLED = false;
+    // 打开后BinaryLog写内存映射的二进制日志，用BinaryLogDecoder还原
+    public static boolean BINARY_LOGS = false;
+    // 编译期常量，release包里相关的调试代码会被编译器去掉
+    public static final boolean DEBUG_GL = BuildConfig.GL_DEBUG;
     public static boolean USE_CLOUD_STRINGS = true;
     public static boolean CHECK_UPDATES = false;
     public static int BUILD_VERSION = 1608;
@@ -23,6 +28,7 @@ public class BuildVars {
         if (ApplicationLoader.applicationContext != null) {
             SharedPreferences sharedPreferences = ApplicationLoader.applicationContext.getSharedPreferences("systemConfig", Context.MODE_PRIVATE);
             LOGS_ENABLED = sharedPreferences.getBoolean("logsEnabled", DEBUG_VERSION);
+            BINARY_LOGS = sharedPreferences.getBoolean("binaryLogsEnabled", false);
         }
     }
 }
\ No newline at end of file
@@ -8,21 +8,50 @@ import java.util.concurrent.CountDownLatch;
 
 public class DispatchQueue extends Thread {
 
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
     private volatile Handler handler = null;
     private CountDownLatch syncLatch = new CountDownLatch(1);
 
+    // 不带延迟的任务先进这里按优先级排队，handler里最多只有一个drainRunnable，
+    // 每次只取一个任务执行，执行完再重新投递，中间可以穿插延迟任务和消息
+    private final Object sync = new Object();
+    private final PriorityTaskQueue pendingTasks = new PriorityTaskQueue(PRIORITY_LOW + 1);
+    private boolean drainPosted;
+
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            runNextTask();
+        }
+    };
+
     public DispatchQueue(final String threadName) {
         setName(threadName);
         start();
     }
 
+    private Handler getHandler() {
+        Handler localHandler = handler;
+        if (localHandler == null) {
+            try {
+                syncLatch.await();
+            } catch (Exception e) {
+                FileLog.e(e);
+            }
+            localHandler = handler;
+        }
+        return localHandler;
+    }
+
     public void sendMessage(Message msg, int delay) {
         try {
-            syncLatch.await();
             if (delay <= 0) {
-                handler.sendMessage(msg);
+                getHandler().sendMessage(msg);
             } else {
-                handler.sendMessageDelayed(msg, delay);
+                getHandler().sendMessageDelayed(msg, delay);
             }
         } catch (Exception e) {
             FileLog.e(e);
@@ -30,9 +59,11 @@ public class DispatchQueue extends Thread {
     }
 
     public void cancelRunnable(Runnable runnable) {
+        synchronized (sync) {
+            pendingTasks.remove(runnable);
+        }
         try {
-            syncLatch.await();
-            handler.removeCallbacks(runnable);
+            getHandler().removeCallbacks(runnable);
         } catch (Exception e) {
             FileLog.e(e);
         }
@@ -42,26 +73,86 @@ public class DispatchQueue extends Thread {
         postRunnable(runnable, 0);
     }
 
+    // 带延迟的任务直接交给handler，不参与优先级排序
     public void postRunnable(Runnable runnable, long delay) {
-        try {
-            syncLatch.await();
-        } catch (Exception e) {
-            FileLog.e(e);
-        }
         if (delay <= 0) {
-            handler.post(runnable);
+            postRunnable(runnable, PRIORITY_NORMAL, null);
         } else {
-            handler.postDelayed(runnable, delay);
+            getHandler().postDelayed(runnable, delay);
+        }
+    }
+
+    // key不为空时，队列里还没执行的同key任务会被替换掉，只执行最后一次投递的
+    public void postRunnable(Runnable runnable, int priority, Object key) {
+        boolean post = false;
+        boolean coalesced = false;
+        synchronized (sync) {
+            coalesced = pendingTasks.offer(runnable, priority, key, System.nanoTime());
+            if (!drainPosted) {
+                drainPosted = post = true;
+            }
+        }
+        if (post) {
+            getHandler().post(drainRunnable);
+        }
+        if (coalesced) {
+            onTaskCoalesced(priority);
+        }
+    }
+
+    private void runNextTask() {
+        PriorityTaskQueue.Task task;
+        synchronized (sync) {
+            task = pendingTasks.poll();
+            if (task == null) {
+                drainPosted = false;
+                return;
+            }
+        }
+
+        long startTime = System.nanoTime();
+        task.runnable.run();
+        long endTime = System.nanoTime();
+        long waitTime = startTime - task.postTime;
+        long runTime = endTime - startTime;
+
+        boolean post;
+        synchronized (sync) {
+            post = drainPosted = pendingTasks.size() > 0;
+        }
+        if (post) {
+            handler.post(drainRunnable);
+        }
+        onTaskCompleted(task.priority, waitTime / 1000, runTime / 1000);
+    }
+
+    // 子类可以把每个任务的排队和执行时间（微秒）记到自己的统计里
+    protected void onTaskCompleted(int priority, long waitTime, long runTime) {
+
+    }
+
+    // 同key的任务还没执行就被新投递的替换掉了
+    protected void onTaskCoalesced(int priority) {
+
+    }
+
+    public int getPendingCount() {
+        synchronized (sync) {
+            return pendingTasks.size();
         }
     }
 
     public void cleanupQueue() {
         try {
-            syncLatch.await();
-            handler.removeCallbacksAndMessages(null);
+            getHandler().removeCallbacksAndMessages(null);
         } catch (Exception e) {
             FileLog.e(e);
         }
+        // drainRunnable已经从handler里移除，这里要把标记一起清掉
+        synchronized (sync) {
+            pendingTasks.clear();
+            drainPosted = false;
+        }
     }
 
     public void handleMessage(Message inputMessage) {
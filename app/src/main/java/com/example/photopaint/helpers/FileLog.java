@@ -6,16 +6,54 @@ import com.example.photopaint.helpers.time.FastDateFormat;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FileLog {
+
+    private static final int LEVEL_DEBUG = 0;
+    private static final int LEVEL_WARN = 1;
+    private static final int LEVEL_ERROR = 2;
+
+    private static final int BUFFER_CAPACITY = 1024;
+    // 普通日志攒一段时间再一起写，错误日志马上写
+    private static final long FLUSH_INTERVAL = 500;
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+    private static final long MAX_TOTAL_SIZE = 8 * 1024 * 1024;
+    // 打不开日志文件时隔这么久再试，期间的记录留在缓冲区里
+    private static final long REOPEN_INTERVAL = 5000;
+
     private OutputStreamWriter streamWriter = null;
     private FastDateFormat dateFormat = null;
-    private DispatchQueue logQueue = null;
+    private SerialQueue logQueue = null;
+    private File logsDir = null;
     private File currentFile = null;
+    private long currentFileSize;
     private File networkFile = null;
     private boolean initied;
 
+    // 调用线程只往环形缓冲区里放记录，格式化和写文件都在logQueue上按批进行
+    private volatile LogRingBuffer buffer;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final StringBuffer lineBuffer = new StringBuffer(256);
+
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            writeScheduled.set(false);
+            writePending();
+        }
+    };
+
+    private final LogRingBuffer.Consumer recordWriter = new LogRingBuffer.Consumer() {
+        @Override
+        public void onRecord(int level, long time, String message, Throwable exception) {
+            writeRecord(level, time, message, exception);
+        }
+    };
+
     private final static String tag = "tmessages";
 
     private static volatile FileLog Instance = null;
@@ -50,19 +88,18 @@ public class FileLog {
             if (sdCard == null) {
                 return;
             }
-            File dir = new File(sdCard.getAbsolutePath() + "/logs");
-            dir.mkdirs();
-            currentFile = new File(dir, dateFormat.format(System.currentTimeMillis()) + ".txt");
+            logsDir = new File(sdCard.getAbsolutePath() + "/logs");
+            logsDir.mkdirs();
         } catch (Exception e) {
             e.printStackTrace();
         }
         try {
-            logQueue = new DispatchQueue("logQueue");
-            currentFile.createNewFile();
-            FileOutputStream stream = new FileOutputStream(currentFile);
-            streamWriter = new OutputStreamWriter(stream);
-            streamWriter.write("-----start log " + dateFormat.format(System.currentTimeMillis()) + "-----\n");
-            streamWriter.flush();
+            logQueue = new SerialQueue("logQueue");
+            // 没有日志目录时写不了文件，也就不往缓冲区里放，免得一直重试打开
+            if (logsDir != null) {
+                buffer = new LogRingBuffer(BUFFER_CAPACITY);
+            }
+            openLogFile();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -98,20 +135,7 @@ public class FileLog {
         }
         ensureInitied();
         Log.e(tag, message, exception);
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/tmessages: " + message + "\n");
-                        getInstance().streamWriter.write(exception.toString());
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().enqueue(LEVEL_ERROR, message, exception);
     }
 
     public static void e(final String message) {
@@ -120,19 +144,7 @@ public class FileLog {
         }
         ensureInitied();
         Log.e(tag, message);
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/tmessages: " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().enqueue(LEVEL_ERROR, message, null);
     }
 
     public static void e(final Throwable e) {
@@ -141,26 +153,7 @@ public class FileLog {
         }
         ensureInitied();
         e.printStackTrace();
-        if (getInstance().streamWriter != null) {
-
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/tmessages: " + e + "\n");
-                        StackTraceElement[] stack = e.getStackTrace();
-                        for (int a = 0; a < stack.length; a++) {
-                            getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/tmessages: " + stack[a] + "\n");
-                        }
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e1) {
-                        e1.printStackTrace();
-                    }
-                }
-            });
-        } else {
-            e.printStackTrace();
-        }
+        getInstance().enqueue(LEVEL_ERROR, null, e);
     }
 
     public static void d(final String message) {
@@ -169,19 +162,7 @@ public class FileLog {
         }
         ensureInitied();
         Log.d(tag, message);
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " D/tmessages: " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().enqueue(LEVEL_DEBUG, message, null);
     }
 
     public static void w(final String message) {
@@ -190,18 +171,144 @@ public class FileLog {
         }
         ensureInitied();
         Log.w(tag, message);
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " W/tmessages: " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+        getInstance().enqueue(LEVEL_WARN, message, null);
+    }
+
+    // 只看缓冲区在不在，没有日志目录时会被置空；streamWriter只在logQueue上用，轮换或者打不开文件时为空，记录先留着等写的时候再处理
+    private void enqueue(int level, String message, Throwable exception) {
+        LogRingBuffer localBuffer = buffer;
+        if (localBuffer == null) {
+            return;
+        }
+        localBuffer.offer(level, System.currentTimeMillis(), message, exception);
+        if (level == LEVEL_ERROR) {
+            writeScheduled.set(true);
+            logQueue.postRunnable(writeRunnable);
+        } else if (writeScheduled.compareAndSet(false, true)) {
+            logQueue.postRunnable(writeRunnable, FLUSH_INTERVAL);
+        }
+    }
+
+    private void writePending() {
+        if (streamWriter == null && !reopenLogFile()) {
+            if (logsDir == null) {
+                buffer = null;
+                return;
+            }
+            // 只有打开文件出错时才过一会儿再试
+            if (writeScheduled.compareAndSet(false, true)) {
+                logQueue.postRunnable(writeRunnable, REOPEN_INTERVAL);
+            }
+            return;
+        }
+        try {
+            int count = buffer.drain(recordWriter);
+            long dropped = buffer.takeDroppedCount();
+            if (dropped > 0) {
+                writeRecord(LEVEL_WARN, System.currentTimeMillis(), "log buffer full, dropped " + dropped + " records", null);
+                count++;
+            }
+            if (count == 0) {
+                return;
+            }
+            streamWriter.flush();
+            if (currentFileSize >= MAX_FILE_SIZE) {
+                streamWriter.close();
+                streamWriter = null;
+                reopenLogFile();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean reopenLogFile() {
+        try {
+            openLogFile();
+        } catch (Exception e) {
+            e.printStackTrace();
+            streamWriter = null;
+        }
+        return streamWriter != null;
+    }
+
+    private void writeRecord(int level, long time, String message, Throwable exception) {
+        String prefix = level == LEVEL_ERROR ? " E/tmessages: " : (level == LEVEL_WARN ? " W/tmessages: " : " D/tmessages: ");
+        if (message != null) {
+            writeLine(time, prefix, message);
+            if (exception != null) {
+                writeLine(time, prefix, exception.toString());
+            }
+        } else if (exception != null) {
+            writeLine(time, prefix, exception.toString());
+            StackTraceElement[] stack = exception.getStackTrace();
+            for (int a = 0; a < stack.length; a++) {
+                writeLine(time, prefix, stack[a].toString());
+            }
+        }
+    }
+
+    private void writeLine(long time, String prefix, String text) {
+        lineBuffer.setLength(0);
+        dateFormat.format(time, lineBuffer);
+        lineBuffer.append(prefix).append(text).append('\n');
+        try {
+            streamWriter.append(lineBuffer);
+            currentFileSize += lineBuffer.length();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void openLogFile() throws Exception {
+        if (logsDir == null) {
+            return;
+        }
+        String name = dateFormat.format(System.currentTimeMillis());
+        File file = new File(logsDir, name + ".txt");
+        for (int a = 1; file.exists(); a++) {
+            file = new File(logsDir, name + "_" + a + ".txt");
+        }
+        currentFile = file;
+        currentFile.createNewFile();
+        FileOutputStream stream = new FileOutputStream(currentFile);
+        streamWriter = new OutputStreamWriter(stream);
+        streamWriter.write("-----start log " + dateFormat.format(System.currentTimeMillis()) + "-----\n");
+        streamWriter.flush();
+        currentFileSize = 0;
+        trimLogs();
+    }
+
+    // 日志目录总大小超出预算时从最旧的文件开始删，正在写的文本、网络和二进制日志不删
+    private void trimLogs() {
+        File[] files = logsDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (int a = 0; a < files.length; a++) {
+            total += files[a].length();
+        }
+        if (total <= MAX_TOTAL_SIZE) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l > r ? 1 : 0);
+            }
+        });
+        for (int a = 0; a < files.length && total > MAX_TOTAL_SIZE; a++) {
+            File file = files[a];
+            if (file.equals(currentFile) || file.equals(networkFile) || file.equals(BinaryLog.getCurrentFile()) || file.equals(BinaryLog.getDictionaryFile())) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
         }
     }
 
@@ -222,8 +329,11 @@ public class FileLog {
                 if (getInstance().networkFile != null && file.getAbsolutePath().equals(getInstance().networkFile.getAbsolutePath())) {
                     continue;
                 }
+                if (file.equals(BinaryLog.getCurrentFile()) || file.equals(BinaryLog.getDictionaryFile())) {
+                    continue;
+                }
                 file.delete();
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package com.example.photopaint.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 预先分配好的多生产者、单消费者环形缓冲区，写日志的线程只做一次CAS和几次字段赋值，不加锁。
+// 满了就丢弃新记录并计数，不会阻塞调用方
+public class LogRingBuffer {
+
+    public interface Consumer {
+        void onRecord(int level, long time, String message, Throwable exception);
+    }
+
+    private final int mask;
+    private final int[] levels;
+    private final long[] times;
+    private final String[] messages;
+    private final Throwable[] exceptions;
+    // 每个槽位上已经写完的序号，消费者看到序号对上了才读
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // capacity必须是2的幂
+    public LogRingBuffer(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        mask = capacity - 1;
+        levels = new int[capacity];
+        times = new long[capacity];
+        messages = new String[capacity];
+        exceptions = new Throwable[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int a = 0; a < capacity; a++) {
+            published.set(a, -1);
+        }
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public boolean offer(int level, long time, String message, Throwable exception) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        levels[slot] = level;
+        times[slot] = time;
+        messages[slot] = message;
+        exceptions[slot] = exception;
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    // 只能在一个线程上调用，返回这次取出的条数
+    public int drain(Consumer consumer) {
+        long sequence = consumed.get();
+        int count = 0;
+        while (true) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence) {
+                break;
+            }
+            String message = messages[slot];
+            Throwable exception = exceptions[slot];
+            messages[slot] = null;
+            exceptions[slot] = null;
+            consumer.onRecord(levels[slot], times[slot], message, exception);
+            sequence++;
+            count++;
+            consumed.lazySet(sequence);
+        }
+        return count;
+    }
+
+    public int size() {
+        return (int) (claimed.get() - consumed.get());
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long takeDroppedCount() {
+        return dropped.getAndSet(0);
+    }
+}
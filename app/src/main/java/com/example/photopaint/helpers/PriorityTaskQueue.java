@@ -0,0 +1,96 @@
+package com.example.photopaint.helpers;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// DispatchQueue里按优先级排队、同key合并的部分，不依赖Looper。不是线程安全的，由调用方加锁
+class PriorityTaskQueue {
+
+    static class Task {
+        Runnable runnable;
+        int priority;
+        Object key;
+        long postTime;
+    }
+
+    private final ArrayDeque<Task>[] tasks;
+    private final Map<Object, Task> keyedTasks = new HashMap<>();
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    PriorityTaskQueue(int priorities) {
+        tasks = new ArrayDeque[priorities];
+        for (int a = 0; a < tasks.length; a++) {
+            tasks[a] = new ArrayDeque<>();
+        }
+    }
+
+    // 返回true表示替换掉了队列里同key的任务。优先级相同时保留原来的位置，否则排到新优先级的末尾
+    boolean offer(Runnable runnable, int priority, Object key, long postTime) {
+        Task existing = key != null ? keyedTasks.get(key) : null;
+        if (existing != null && existing.priority == priority) {
+            existing.runnable = runnable;
+            return true;
+        }
+        if (existing != null) {
+            tasks[existing.priority].remove(existing);
+            size--;
+        }
+
+        Task task = new Task();
+        task.runnable = runnable;
+        task.priority = priority;
+        task.key = key;
+        task.postTime = postTime;
+        tasks[priority].add(task);
+        if (key != null) {
+            keyedTasks.put(key, task);
+        }
+        size++;
+        return existing != null;
+    }
+
+    Task poll() {
+        for (int a = 0; a < tasks.length; a++) {
+            Task task = tasks[a].poll();
+            if (task != null) {
+                size--;
+                if (task.key != null) {
+                    keyedTasks.remove(task.key);
+                }
+                return task;
+            }
+        }
+        return null;
+    }
+
+    void remove(Runnable runnable) {
+        for (int a = 0; a < tasks.length; a++) {
+            Iterator<Task> iterator = tasks[a].iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (task.runnable == runnable) {
+                    iterator.remove();
+                    size--;
+                    if (task.key != null) {
+                        keyedTasks.remove(task.key);
+                    }
+                }
+            }
+        }
+    }
+
+    void clear() {
+        for (int a = 0; a < tasks.length; a++) {
+            tasks[a].clear();
+        }
+        keyedTasks.clear();
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
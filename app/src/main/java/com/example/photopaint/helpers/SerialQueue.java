@@ -0,0 +1,140 @@
+package com.example.photopaint.helpers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+// 跑在SharedExecutor上的串行队列，任务按投递顺序一个一个执行，用法和DispatchQueue一样但不独占线程。
+// 每执行完一个任务就把剩下的重新交给线程池，不会一直占着共享线程
+public class SerialQueue {
+
+    private final String name;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    // 延迟任务先挂在主线程handler上，到时间再进队列；记下包装后的runnable以便取消。
+    // 同一个runnable可以延迟投递多次，每次都要执行，所以按runnable存一个列表
+    private final Map<Runnable, ArrayList<Runnable>> delayedTasks = new HashMap<>();
+    private boolean running;
+
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(name);
+            try {
+                task.run();
+            } catch (Throwable e) {
+                FileLog.e(e);
+            } finally {
+                thread.setName(threadName);
+            }
+
+            synchronized (tasks) {
+                if (tasks.isEmpty()) {
+                    running = false;
+                    return;
+                }
+            }
+            SharedExecutor.getExecutor().execute(this);
+        }
+    };
+
+    public SerialQueue(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void postRunnable(Runnable runnable) {
+        postRunnable(runnable, 0);
+    }
+
+    public void postRunnable(final Runnable runnable, long delay) {
+        if (delay > 0) {
+            Runnable delayed = new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (tasks) {
+                        ArrayList<Runnable> list = delayedTasks.get(runnable);
+                        if (list == null || !list.remove(this)) {
+                            return;
+                        }
+                        if (list.isEmpty()) {
+                            delayedTasks.remove(runnable);
+                        }
+                    }
+                    postRunnable(runnable, 0);
+                }
+            };
+            synchronized (tasks) {
+                ArrayList<Runnable> list = delayedTasks.get(runnable);
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    delayedTasks.put(runnable, list);
+                }
+                list.add(delayed);
+            }
+            scheduleDelayed(delayed, delay);
+            return;
+        }
+
+        synchronized (tasks) {
+            tasks.add(runnable);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        SharedExecutor.getExecutor().execute(drainRunnable);
+    }
+
+    public void cancelRunnable(Runnable runnable) {
+        ArrayList<Runnable> delayed;
+        synchronized (tasks) {
+            while (tasks.remove(runnable)) {
+
+            }
+            delayed = delayedTasks.remove(runnable);
+        }
+        if (delayed != null) {
+            for (int a = 0; a < delayed.size(); a++) {
+                cancelDelayed(delayed.get(a));
+            }
+        }
+    }
+
+    public void cleanupQueue() {
+        ArrayList<Runnable> delayed = new ArrayList<>();
+        synchronized (tasks) {
+            tasks.clear();
+            for (ArrayList<Runnable> list : delayedTasks.values()) {
+                delayed.addAll(list);
+            }
+            delayedTasks.clear();
+        }
+        for (int a = 0; a < delayed.size(); a++) {
+            cancelDelayed(delayed.get(a));
+        }
+    }
+
+    // 单测里换成手动触发的定时器
+    void scheduleDelayed(Runnable runnable, long delay) {
+        AndroidUtilities.runOnUIThread(runnable, delay);
+    }
+
+    void cancelDelayed(Runnable runnable) {
+        AndroidUtilities.cancelRunOnUIThread(runnable);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.photopaint.helpers;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 所有SerialQueue共用的线程池。第一次投递任务时才创建，线程数有上限，空闲一段时间后线程会被回收
+public class SharedExecutor {
+
+    private static final int KEEP_ALIVE_SECONDS = 10;
+
+    private static volatile ThreadPoolExecutor executor;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    static ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor localExecutor = executor;
+        if (localExecutor == null) {
+            synchronized (SharedExecutor.class) {
+                localExecutor = executor;
+                if (localExecutor == null) {
+                    int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+                    localExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            return new Thread(runnable, "shared-" + threadCount.incrementAndGet());
+                        }
+                    });
+                    localExecutor.allowCoreThreadTimeOut(true);
+                    executor = localExecutor;
+                }
+            }
+        }
+        return localExecutor;
+    }
+
+    public static boolean isStarted() {
+        return executor != null;
+    }
+
+    public static String getStats() {
+        ThreadPoolExecutor localExecutor = executor;
+        if (localExecutor == null) {
+            return "shared executor not started";
+        }
+        return "shared executor threads=" + localExecutor.getPoolSize() + " active=" + localExecutor.getActiveCount()
+                + " queued=" + localExecutor.getQueue().size() + " completed=" + localExecutor.getCompletedTaskCount()
+                + " created=" + threadCount.get();
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.photopaint.helpers;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 把图像切成小块，在多个线程上并行跑同一个处理函数。
+// 每个线程（包括调用线程）从共享计数器里抢下一块，快的线程自然多做，效果上和work stealing一样，
+// 又不用依赖API 21才有的ForkJoinPool。各块之间不能有依赖
+public class TileExecutor {
+
+    public interface Kernel {
+        void run(int left, int top, int right, int bottom);
+    }
+
+    public static final int DEFAULT_TILE_SIZE = 128;
+
+    private static final int KEEP_ALIVE_SECONDS = 10;
+
+    private static volatile TileExecutor defaultInstance;
+
+    public static TileExecutor getDefault() {
+        TileExecutor localInstance = defaultInstance;
+        if (localInstance == null) {
+            synchronized (TileExecutor.class) {
+                localInstance = defaultInstance;
+                if (localInstance == null) {
+                    defaultInstance = localInstance = new TileExecutor(Runtime.getRuntime().availableProcessors());
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    private final int parallelism;
+    private volatile ThreadPoolExecutor executor;
+
+    private static class Job implements Runnable {
+        private final Kernel kernel;
+        private final int width;
+        private final int height;
+        private final int tileWidth;
+        private final int tileHeight;
+        private final int columns;
+        private final int tileCount;
+        private final AtomicInteger nextTile = new AtomicInteger();
+        private volatile Throwable error;
+        private boolean closed;
+        private int running;
+
+        private Job(Kernel kernel, int width, int height, int tileWidth, int tileHeight) {
+            this.kernel = kernel;
+            this.width = width;
+            this.height = height;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            columns = (width + tileWidth - 1) / tileWidth;
+            tileCount = columns * ((height + tileHeight - 1) / tileHeight);
+        }
+
+        @Override
+        public void run() {
+            // 调用线程已经做完所有块时，还在排队的辅助任务直接退出，嵌套调用也不会互相等死
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                running++;
+            }
+            try {
+                process();
+            } finally {
+                synchronized (this) {
+                    running--;
+                    if (running == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        private void process() {
+            int index;
+            while (error == null && (index = nextTile.getAndIncrement()) < tileCount) {
+                int left = (index % columns) * tileWidth;
+                int top = (index / columns) * tileHeight;
+                try {
+                    kernel.run(left, top, Math.min(left + tileWidth, width), Math.min(top + tileHeight, height));
+                } catch (Throwable e) {
+                    error = e;
+                }
+            }
+        }
+
+        private void finish() throws InterruptedException {
+            synchronized (this) {
+                closed = true;
+                while (running > 0) {
+                    wait();
+                }
+            }
+        }
+    }
+
+    public TileExecutor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor localExecutor = executor;
+        if (localExecutor == null) {
+            synchronized (this) {
+                localExecutor = executor;
+                if (localExecutor == null) {
+                    final AtomicInteger counter = new AtomicInteger();
+                    int threads = parallelism - 1;
+                    localExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "tileExecutor" + counter.getAndIncrement());
+                        }
+                    });
+                    localExecutor.allowCoreThreadTimeOut(true);
+                    executor = localExecutor;
+                }
+            }
+        }
+        return localExecutor;
+    }
+
+    public void run(int width, int height, Kernel kernel) {
+        run(width, height, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE, kernel);
+    }
+
+    // 阻塞到所有块处理完；任何一块抛出的异常会在这里重新抛出
+    public void run(int width, int height, int tileWidth, int tileHeight, Kernel kernel) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Job job = new Job(kernel, width, height, Math.max(1, tileWidth), Math.max(1, tileHeight));
+        int helpers = Math.min(parallelism, job.tileCount) - 1;
+        if (helpers > 0) {
+            ThreadPoolExecutor localExecutor = getExecutor();
+            for (int a = 0; a < helpers; a++) {
+                localExecutor.execute(job);
+            }
+        }
+
+        job.process();
+        try {
+            job.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        if (job.error != null) {
+            if (job.error instanceof RuntimeException) {
+                throw (RuntimeException) job.error;
+            } else if (job.error instanceof Error) {
+                throw (Error) job.error;
+            }
+            throw new RuntimeException(job.error);
+        }
+    }
+
+    public void shutdown() {
+        ThreadPoolExecutor localExecutor = executor;
+        if (localExecutor != null) {
+            localExecutor.shutdown();
+            executor = null;
+        }
+    }
+}
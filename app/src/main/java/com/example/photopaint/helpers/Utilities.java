@@ -20,10 +20,11 @@ public class Utilities {
     public static Pattern pattern = Pattern.compile("[\\-0-9]+");
     public static SecureRandom random = new SecureRandom();
 
-    public static volatile DispatchQueue stageQueue = new DispatchQueue("stageQueue");
-    public static volatile DispatchQueue globalQueue = new DispatchQueue("globalQueue");
-    public static volatile DispatchQueue searchQueue = new DispatchQueue("searchQueue");
-    public static volatile DispatchQueue phoneBookQueue = new DispatchQueue("phoneBookQueue");
+    // 共用SharedExecutor的线程，第一次投递任务时才会创建线程
+    public static volatile SerialQueue stageQueue = new SerialQueue("stageQueue");
+    public static volatile SerialQueue globalQueue = new SerialQueue("globalQueue");
+    public static volatile SerialQueue searchQueue = new SerialQueue("searchQueue");
+    public static volatile SerialQueue phoneBookQueue = new SerialQueue("phoneBookQueue");
 
     final protected static char[] hexArray = "0123456789ABCDEF".toCharArray();
 
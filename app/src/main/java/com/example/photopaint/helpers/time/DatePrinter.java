@@ -43,6 +43,28 @@ public interface DatePrinter {
      */
     StringBuffer format(long millis, StringBuffer buf);
 
+    /**
+     * <p>Formats a millisecond {@code long} value into the supplied
+     * {@code char} array without allocating.</p>
+     *
+     * @param millis the millisecond value to format
+     * @param dest   the array to format into, must have room for the result
+     * @param offset the index in {@code dest} to start writing at
+     * @return the number of chars written
+     */
+    int format(long millis, char[] dest, int offset);
+
+    /**
+     * <p>Formats a millisecond {@code long} value into the supplied
+     * {@code Appendable}, such as a {@code StringBuilder} or {@code CharBuffer},
+     * without allocating.</p>
+     *
+     * @param millis the millisecond value to format
+     * @param buf    the buffer to format into
+     * @return the specified buffer
+     */
+    <B extends Appendable> B format(long millis, B buf);
+
     /**
      * <p>Formats a {@code Date} object into the
      * supplied {@code StringBuffer} using a {@code GregorianCalendar}.</p>
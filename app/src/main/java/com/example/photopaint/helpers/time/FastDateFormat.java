@@ -403,6 +403,33 @@ public class FastDateFormat extends Format implements DateParser, DatePrinter {
         return printer.format(millis, buf);
     }
 
+    /**
+     * <p>Formats a millisecond {@code long} value into the supplied
+     * {@code char} array without allocating.</p>
+     *
+     * @param millis the millisecond value to format
+     * @param dest   the array to format into, must have room for the result
+     * @param offset the index in {@code dest} to start writing at
+     * @return the number of chars written
+     */
+    @Override
+    public int format(final long millis, final char[] dest, final int offset) {
+        return printer.format(millis, dest, offset);
+    }
+
+    /**
+     * <p>Formats a millisecond {@code long} value into the supplied
+     * {@code Appendable} without allocating.</p>
+     *
+     * @param millis the millisecond value to format
+     * @param buf    the buffer to format into
+     * @return the specified buffer
+     */
+    @Override
+    public <B extends Appendable> B format(final long millis, final B buf) {
+        return printer.format(millis, buf);
+    }
+
     /**
      * <p>Formats a {@code Date} object into the
      * supplied {@code StringBuffer} using a {@code GregorianCalendar}.</p>
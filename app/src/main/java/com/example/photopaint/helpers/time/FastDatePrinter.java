@@ -67,6 +67,32 @@ public class FastDatePrinter implements DatePrinter, Serializable {
      * The estimated maximum length.
      */
     private transient int mMaxLengthEstimate;
+    /**
+     * Minimum width of each millisecond rule in pattern order, -1 for other rules.
+     * <p/>
+     * <p>This and the fields below form the per-second cache of the {@code format(long, ...)}
+     * methods and are guarded by the monitor of this printer. Threads sharing one printer
+     * therefore serialize on it, where the uncached implementation allocated a Calendar per
+     * call and never contended; the lock is only held to splice the milliseconds and copy
+     * the result out.</p>
+     */
+    private transient int[] mMillisWidths;
+    /**
+     * Second (millis / 1000, floored) that the cached prefix was built for.
+     */
+    private transient long mCachedSecond;
+    /**
+     * Output of every non-millisecond rule for the cached second.
+     */
+    private transient char[] mCachedChars;
+    private transient int mCachedLength;
+    /**
+     * Offsets in {@code mCachedChars} where the millisecond rules are spliced in.
+     */
+    private transient int[] mCachedMillisOffsets;
+    private transient char[] mScratch;
+    private transient StringBuffer mCacheBuffer;
+    private transient Calendar mCacheCalendar;
 
     // Constructor
     //-----------------------------------------------------------------------
@@ -100,6 +126,37 @@ public class FastDatePrinter implements DatePrinter, Serializable {
         }
 
         mMaxLengthEstimate = len;
+
+        int millisRules = 0;
+        mMillisWidths = new int[mRules.length];
+        for (int i = 0; i < mRules.length; i++) {
+            mMillisWidths[i] = getMillisWidth(mRules[i]);
+            if (mMillisWidths[i] > 0) {
+                millisRules++;
+            }
+        }
+        mCachedMillisOffsets = new int[millisRules];
+        mCachedSecond = Long.MIN_VALUE;
+        mCachedChars = null;
+        mScratch = null;
+    }
+
+    /**
+     * <p>Returns the minimum output width of a rule that prints
+     * {@code Calendar.MILLISECOND}, or -1 for any other rule.</p>
+     *
+     * @param rule the rule to inspect
+     * @return the minimum width or -1
+     */
+    private static int getMillisWidth(final Rule rule) {
+        if (rule instanceof UnpaddedNumberField && ((UnpaddedNumberField) rule).mField == Calendar.MILLISECOND) {
+            return 1;
+        } else if (rule instanceof TwoDigitNumberField && ((TwoDigitNumberField) rule).mField == Calendar.MILLISECOND) {
+            return 2;
+        } else if (rule instanceof PaddedNumberField && ((PaddedNumberField) rule).mField == Calendar.MILLISECOND) {
+            return ((PaddedNumberField) rule).mSize;
+        }
+        return -1;
     }
 
     // Parse the pattern
@@ -355,9 +412,10 @@ public class FastDatePrinter implements DatePrinter, Serializable {
      */
     @Override
     public String format(final long millis) {
-        final Calendar c = newCalendar();  // hard code GregorianCalendar
-        c.setTimeInMillis(millis);
-        return applyRulesToString(c);
+        synchronized (this) {
+            final int length = formatCached(millis);
+            return new String(mScratch, 0, length);
+        }
     }
 
     /**
@@ -403,7 +461,136 @@ public class FastDatePrinter implements DatePrinter, Serializable {
      */
     @Override
     public StringBuffer format(final long millis, final StringBuffer buf) {
-        return format(new Date(millis), buf);
+        synchronized (this) {
+            final int length = formatCached(millis);
+            buf.append(mScratch, 0, length);
+        }
+        return buf;
+    }
+
+    /* (non-Javadoc)
+     * @see com.example.photopaint.helpers.time.DatePrinter#format(long, char[], int)
+     */
+    @Override
+    public int format(final long millis, final char[] dest, final int offset) {
+        synchronized (this) {
+            final int length = formatCached(millis);
+            System.arraycopy(mScratch, 0, dest, offset, length);
+            return length;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.example.photopaint.helpers.time.DatePrinter#format(long, java.lang.Appendable)
+     */
+    @Override
+    public <B extends Appendable> B format(final long millis, final B buf) {
+        synchronized (this) {
+            final int length = formatCached(millis);
+            try {
+                for (int i = 0; i < length; i++) {
+                    buf.append(mScratch[i]);
+                }
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return buf;
+    }
+
+    /**
+     * <p>Formats {@code millis} into {@code mScratch} and returns the length.</p>
+     * <p/>
+     * <p>Everything except the millisecond fields is identical within one second,
+     * so the output of the other rules is cached per second and only the
+     * millisecond digits are written on each call. Must hold the lock on this.</p>
+     *
+     * @param millis the millisecond value to format
+     * @return the number of chars written to {@code mScratch}
+     */
+    private int formatCached(final long millis) {
+        long second = millis / 1000;
+        int millisOfSecond = (int) (millis - second * 1000);
+        if (millisOfSecond < 0) {
+            second--;
+            millisOfSecond += 1000;
+        }
+        if (second != mCachedSecond || mCachedChars == null) {
+            buildCache(second);
+        }
+
+        final char[] scratch = mScratch;
+        int src = 0;
+        int dst = 0;
+        for (int i = 0, m = 0; i < mMillisWidths.length; i++) {
+            final int width = mMillisWidths[i];
+            if (width <= 0) {
+                continue;
+            }
+            final int offset = mCachedMillisOffsets[m++];
+            System.arraycopy(mCachedChars, src, scratch, dst, offset - src);
+            dst += offset - src;
+            src = offset;
+            dst = appendNumber(scratch, dst, millisOfSecond, width);
+        }
+        System.arraycopy(mCachedChars, src, scratch, dst, mCachedLength - src);
+        return dst + mCachedLength - src;
+    }
+
+    /**
+     * <p>Rebuilds the cached output of the non-millisecond rules for the given second.</p>
+     *
+     * @param second the second to build the cache for
+     */
+    private void buildCache(final long second) {
+        if (mCacheCalendar == null) {
+            mCacheCalendar = newCalendar();
+            mCacheBuffer = new StringBuffer(mMaxLengthEstimate);
+        }
+        mCacheCalendar.setTimeInMillis(second * 1000);
+        final StringBuffer buffer = mCacheBuffer;
+        buffer.setLength(0);
+        int millisWidth = 0;
+        for (int i = 0, m = 0; i < mRules.length; i++) {
+            if (mMillisWidths[i] > 0) {
+                mCachedMillisOffsets[m++] = buffer.length();
+                millisWidth += Math.max(3, mMillisWidths[i]);
+            } else {
+                mRules[i].appendTo(buffer, mCacheCalendar);
+            }
+        }
+
+        mCachedLength = buffer.length();
+        if (mCachedChars == null || mCachedChars.length < mCachedLength) {
+            mCachedChars = new char[mCachedLength];
+        }
+        buffer.getChars(0, mCachedLength, mCachedChars, 0);
+        if (mScratch == null || mScratch.length < mCachedLength + millisWidth) {
+            mScratch = new char[mCachedLength + millisWidth];
+        }
+        mCachedSecond = second;
+    }
+
+    /**
+     * <p>Writes {@code value} zero padded to at least {@code width} digits.</p>
+     *
+     * @param dest   the array to write to
+     * @param offset the index to start writing at
+     * @param value  the non-negative value to write
+     * @param width  the minimum number of digits
+     * @return the index after the last written char
+     */
+    private static int appendNumber(final char[] dest, final int offset, int value, final int width) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        final int end = offset + Math.max(digits, width);
+        for (int i = end; --i >= offset; ) {
+            dest[i] = (char) (value % 10 + '0');
+            value /= 10;
+        }
+        return end;
     }
 
     /* (non-Javadoc)
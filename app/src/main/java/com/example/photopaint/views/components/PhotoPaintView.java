@@ -38,6 +38,7 @@ import com.example.photopaint.R;
 //import org.telegram.ui.ActionBar.ActionBar;
 import com.example.photopaint.views.actionbar.ActionBarPopupWindow;
 import com.example.photopaint.views.actionbar.Theme;
+import com.example.photopaint.views.components.paint.FaceCache;
 import com.example.photopaint.views.components.paint.PhotoFace;
 import com.example.photopaint.views.components.paint.views.EditTextOutline;
 import com.example.photopaint.views.components.paint.views.EntitiesContainerView;
@@ -46,13 +47,18 @@ import com.example.photopaint.views.components.paint.views.StickerView;
 import com.example.photopaint.views.components.paint.views.TextPaintView;
 import com.example.photopaint.views.components.paint.UndoStore;
 import com.example.photopaint.views.components.paint.Brush;
+import com.example.photopaint.views.components.paint.BrushAtlas;
 import com.example.photopaint.views.components.paint.RenderView;
 import com.example.photopaint.views.components.paint.Painting;
+import com.example.photopaint.views.components.paint.Viewport;
 import com.example.photopaint.views.components.paint.Swatch;
+import com.example.photopaint.views.components.paint.metrics.Metrics;
+import com.example.photopaint.views.components.paint.metrics.MetricsOverlayView;
 import com.example.photopaint.views.components.paint.views.ColorPicker;
 //import org.telegram.ui.PhotoViewer;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @SuppressLint("NewApi")
@@ -82,6 +88,7 @@ public class PhotoPaintView extends FrameLayout implements EntityView.EntityView
     private FrameLayout textDimView;
     private FrameLayout selectionContainerView;
     private ColorPicker colorPicker;
+    private MetricsOverlayView metricsOverlayView;
 
     private ImageView paintButton;
     private ImageView mosaicButton;
@@ -116,6 +123,8 @@ public class PhotoPaintView extends FrameLayout implements EntityView.EntityView
         super(context);
 
         queue = new DispatchQueue("Paint");
+        // 画刷印章在后台先解码好，第一笔不用等
+        BrushAtlas.getInstance().preload();
 
         bitmapToEdit = bitmap;
         orientation = rotation;
@@ -149,6 +158,18 @@ public class PhotoPaintView extends FrameLayout implements EntityView.EntityView
                 colorPicker.setRecoverEnalbled(undoStore.canRecover());
             }
 
+            @Override
+            public void onViewportChanged(Viewport viewport) {
+                // 贴纸和文字跟着画布一起缩放平移
+                entitiesView.setScaleX(viewport.getScale());
+                entitiesView.setScaleY(viewport.getScale());
+                entitiesView.setTranslationX(viewport.getOffsetX());
+                entitiesView.setTranslationY(viewport.getOffsetY());
+                if (currentEntityView != null) {
+                    currentEntityView.updateSelectionView();
+                }
+            }
+
             @Override
             public boolean shouldDraw() {
                 boolean draw = currentEntityView == null;
@@ -466,6 +487,22 @@ public class PhotoPaintView extends FrameLayout implements EntityView.EntityView
         return colorPicker;
     }
 
+    // 调试用，在画布左上角显示帧耗时、触摸延迟等指标
+    public void setMetricsOverlayEnabled(boolean enabled) {
+        Metrics.setEnabled(enabled);
+        if (enabled) {
+            if (metricsOverlayView == null) {
+                metricsOverlayView = new MetricsOverlayView(getContext());
+                addView(metricsOverlayView, LayoutHelper.createFrame(LayoutHelper.WRAP_CONTENT, LayoutHelper.WRAP_CONTENT, Gravity.TOP | Gravity.LEFT));
+            } else {
+                metricsOverlayView.setVisibility(VISIBLE);
+                metricsOverlayView.restart();
+            }
+        } else if (metricsOverlayView != null) {
+            metricsOverlayView.setVisibility(GONE);
+        }
+    }
+
     private boolean hasChanges() {
         return undoStore.canUndo() || entitiesView.entitiesCount() > 0;
     }
@@ -674,7 +711,7 @@ public class PhotoPaintView extends FrameLayout implements EntityView.EntityView
 
         renderView.layout(x, y, x + renderView.getMeasuredWidth(), y + renderView.getMeasuredHeight());
 
-        float scale = renderWidth / paintingSize.width;
+        float scale = renderWidth / paintingSize.width * renderView.getViewport().getZoom();
         entitiesView.setScaleX(scale);
         entitiesView.setScaleY(scale);
         entitiesView.layout(x, y, x + entitiesView.getMeasuredWidth(), y + entitiesView.getMeasuredHeight());
@@ -1325,38 +1362,58 @@ public class PhotoPaintView extends FrameLayout implements EntityView.EntityView
         }
     }
 
+    // 检测用的图最长边不超过这个值，关键点按缩小后的图换算回画布坐标
+    private static final int FACE_DETECTION_SIZE = 1024;
+
     private void detectFaces() {
         queue.postRunnable(new Runnable() {
             @Override
             public void run() {
-
+                Bitmap bitmap = null;
                 FaceDetector faceDetector = null;
                 try {
-                    faceDetector = new FaceDetector.Builder(getContext())
-                            .setMode(FaceDetector.ACCURATE_MODE)
-                            .setLandmarkType(FaceDetector.ALL_LANDMARKS)
-                            .setTrackingEnabled(false).build();
-                    if (!faceDetector.isOperational()) {
-                        if (BuildVars.LOGS_ENABLED) {
-                            FileLog.e("face detection is not operational");
-                        }
+                    bitmap = createFaceDetectionBitmap(bitmapToEdit);
+                    if (bitmap == null) {
                         return;
                     }
+                    boolean sideward = isSidewardOrientation();
+                    FaceCache cache = new FaceCache();
+                    String key = FaceCache.getKey(bitmap, orientation);
+                    List<float[]> landmarks = cache.get(key);
+
+                    if (landmarks == null) {
+                        faceDetector = new FaceDetector.Builder(getContext())
+                                .setMode(FaceDetector.ACCURATE_MODE)
+                                .setLandmarkType(FaceDetector.ALL_LANDMARKS)
+                                .setTrackingEnabled(false).build();
+                        if (!faceDetector.isOperational()) {
+                            if (BuildVars.LOGS_ENABLED) {
+                                FileLog.e("face detection is not operational");
+                            }
+                            return;
+                        }
 
-                    Frame frame = new Frame.Builder().setBitmap(bitmapToEdit).setRotation(getFrameRotation()).build();
-                    SparseArray<Face> faces;
-                    try {
-                        faces = faceDetector.detect(frame);
-                    } catch (Throwable e) {
-                        FileLog.e(e);
-                        return;
+                        Frame frame = new Frame.Builder().setBitmap(bitmap).setRotation(getFrameRotation()).build();
+                        SparseArray<Face> faces;
+                        try {
+                            faces = faceDetector.detect(frame);
+                        } catch (Throwable e) {
+                            FileLog.e(e);
+                            return;
+                        }
+                        landmarks = new ArrayList<>();
+                        for (int i = 0; i < faces.size(); i++) {
+                            landmarks.add(PhotoFace.getNormalizedLandmarks(faces.valueAt(i), bitmap, sideward));
+                        }
+                        cache.put(key, landmarks);
+                    } else if (BuildVars.LOGS_ENABLED) {
+                        FileLog.d("face detection cache hit, " + landmarks.size() + " faces");
                     }
+
                     ArrayList<PhotoFace> result = new ArrayList<>();
                     Size targetSize = getPaintingSize();
-                    for (int i = 0; i < faces.size(); i++) {
-                        int key = faces.keyAt(i);
-                        Face f = faces.get(key);
-                        PhotoFace face = new PhotoFace(f, bitmapToEdit, targetSize, isSidewardOrientation());
+                    for (int i = 0; i < landmarks.size(); i++) {
+                        PhotoFace face = new PhotoFace(landmarks.get(i), targetSize);
                         if (face.isSufficient()) {
                             result.add(face);
                         }
@@ -1368,11 +1425,28 @@ public class PhotoPaintView extends FrameLayout implements EntityView.EntityView
                     if (faceDetector != null) {
                         faceDetector.release();
                     }
+                    if (bitmap != null && bitmap != bitmapToEdit) {
+                        bitmap.recycle();
+                    }
                 }
             }
         });
     }
 
+    private Bitmap createFaceDetectionBitmap(Bitmap source) {
+        if (source == null) {
+            return null;
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int max = Math.max(width, height);
+        if (max <= FACE_DETECTION_SIZE) {
+            return source;
+        }
+        float scale = FACE_DETECTION_SIZE / (float) max;
+        return Bitmaps.createScaledBitmap(source, Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+    }
+
     private StickerPosition calculateStickerPosition(Bitmap bitmap){
 
         return new StickerPosition(centerPositionForEntity(), 0.75f, 0.0f);
@@ -0,0 +1,164 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import com.example.photopaint.helpers.BuildVars;
+import com.example.photopaint.helpers.FileLog;
+import com.example.photopaint.helpers.Utilities;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+// 所有画刷的印章只解码一次，拼到一张图里，切换画刷时只需要换一下uniform里的纹理坐标。
+// 启动时在globalQueue上准备好，GL线程第一次要用时如果还没好就等它
+public class BrushAtlas {
+
+    private static final int MAX_WIDTH = 2048;
+    // 印章之间留空，线性采样不会采到旁边的印章
+    private static final int PADDING = 2;
+
+    private static volatile BrushAtlas Instance;
+
+    public static BrushAtlas getInstance() {
+        BrushAtlas localInstance = Instance;
+        if (localInstance == null) {
+            synchronized (BrushAtlas.class) {
+                localInstance = Instance;
+                if (localInstance == null) {
+                    Instance = localInstance = new BrushAtlas();
+                }
+            }
+        }
+        return localInstance;
+    }
+
+    private final Brush[] brushes = new Brush[]{
+            new Brush.Radial(),
+            new Brush.Elliptical(),
+            new Brush.Neon(),
+            new Brush.Mosaic()
+    };
+
+    private Bitmap bitmap;
+    private Map<Class<?>, float[]> rects = new HashMap<>();
+    private CountDownLatch loadLatch;
+
+    private BrushAtlas() {
+
+    }
+
+    public void preload() {
+        synchronized (this) {
+            if (loadLatch != null) {
+                return;
+            }
+            loadLatch = new CountDownLatch(1);
+        }
+        Utilities.globalQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    // 阻塞到解码完成；没有调过preload()时就在当前线程解码
+    public Bitmap getBitmap() {
+        boolean loadHere = false;
+        CountDownLatch latch;
+        synchronized (this) {
+            if (loadLatch == null) {
+                loadLatch = new CountDownLatch(1);
+                loadHere = true;
+            }
+            latch = loadLatch;
+        }
+        if (loadHere) {
+            load();
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            FileLog.e(e);
+        }
+        return bitmap;
+    }
+
+    // 画刷在图集里的纹理坐标{u, v, 宽, 高}，不在图集里的画刷返回null
+    public float[] getStampRect(Brush brush) {
+        if (brush == null || getBitmap() == null) {
+            return null;
+        }
+        return rects.get(brush.getClass());
+    }
+
+    private void load() {
+        long time = System.currentTimeMillis();
+        try {
+            Bitmap[] stamps = new Bitmap[brushes.length];
+            int[] x = new int[brushes.length];
+            int[] y = new int[brushes.length];
+
+            // 按行排，一行放不下就换行
+            int rowX = 0;
+            int rowY = 0;
+            int rowHeight = 0;
+            int width = 0;
+            for (int a = 0; a < brushes.length; a++) {
+                stamps[a] = brushes[a].getStamp();
+                if (stamps[a] == null) {
+                    continue;
+                }
+                int stampWidth = stamps[a].getWidth() + PADDING * 2;
+                int stampHeight = stamps[a].getHeight() + PADDING * 2;
+                if (rowX > 0 && rowX + stampWidth > MAX_WIDTH) {
+                    rowX = 0;
+                    rowY += rowHeight;
+                    rowHeight = 0;
+                }
+                x[a] = rowX + PADDING;
+                y[a] = rowY + PADDING;
+                rowX += stampWidth;
+                rowHeight = Math.max(rowHeight, stampHeight);
+                width = Math.max(width, rowX);
+            }
+            int height = rowY + rowHeight;
+            if (width == 0 || height == 0) {
+                return;
+            }
+
+            Bitmap atlas = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(atlas);
+            Map<Class<?>, float[]> result = new HashMap<>();
+            for (int a = 0; a < brushes.length; a++) {
+                Bitmap stamp = stamps[a];
+                if (stamp == null) {
+                    continue;
+                }
+                canvas.drawBitmap(stamp, x[a], y[a], null);
+
+                // 往里缩半个像素，边缘不会混进留空的透明像素
+                result.put(brushes[a].getClass(), new float[]{
+                        (x[a] + 0.5f) / width,
+                        (y[a] + 0.5f) / height,
+                        (stamp.getWidth() - 1.0f) / width,
+                        (stamp.getHeight() - 1.0f) / height
+                });
+
+                stamp.recycle();
+            }
+
+            rects = result;
+            bitmap = atlas;
+
+            if (BuildVars.LOGS_ENABLED) {
+                FileLog.d("brush atlas " + width + "x" + height + " in " + (System.currentTimeMillis() - time) + "ms");
+            }
+        } catch (Throwable e) {
+            FileLog.e(e);
+        } finally {
+            loadLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.RectF;
+import android.util.SparseArray;
+import com.example.photopaint.helpers.DispatchQueue;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+// 按图层、按瓦片保存的检查点，每个瓦片是一个落盘压缩的Slice，新的数据会覆盖旧的瓦片
+public class CheckpointStore {
+
+    private Map<Layer, SparseArray<Slice>> tiles = new HashMap<>();
+
+    public void put(Layer layer, int index, ByteBuffer data, RectF bounds, DispatchQueue queue) {
+        SparseArray<Slice> layerTiles = tiles.get(layer);
+        if (layerTiles == null) {
+            layerTiles = new SparseArray<>();
+            tiles.put(layer, layerTiles);
+        }
+
+        Slice previous = layerTiles.get(index);
+        if (previous != null) {
+            previous.cleanResources();
+        }
+        layerTiles.put(index, new Slice(data, bounds, queue));
+    }
+
+    public SparseArray<Slice> getTiles(Layer layer) {
+        return tiles.get(layer);
+    }
+
+    public int getTileCount() {
+        int count = 0;
+        for (SparseArray<Slice> layerTiles : tiles.values()) {
+            count += layerTiles.size();
+        }
+        return count;
+    }
+
+    public void removeLayer(Layer layer) {
+        SparseArray<Slice> layerTiles = tiles.remove(layer);
+        if (layerTiles == null) {
+            return;
+        }
+        for (int a = 0; a < layerTiles.size(); a++) {
+            layerTiles.valueAt(a).cleanResources();
+        }
+    }
+
+    public void clear() {
+        for (SparseArray<Slice> layerTiles : tiles.values()) {
+            for (int a = 0; a < layerTiles.size(); a++) {
+                layerTiles.valueAt(a).cleanResources();
+            }
+        }
+        tiles.clear();
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.opengl.GLES20;
+import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// 屏幕分辨率的代理纹理。GLES2里非2的幂纹理不能生成mipmap，所以用一串逐级减半的纹理代替，
+// 最后一级正好是屏幕大小，只重画脏掉的区域
+public class DisplayProxy {
+
+    private Size size;
+    private float scale = 1.0f;
+    private Size[] levelSizes;
+    private int[] levels;
+    // 两个rect都复用，每帧更新不分配对象
+    private RectF dirtyRect = new RectF();
+    private boolean dirty;
+    private RectF updateRect = new RectF();
+
+    public DisplayProxy(Size size) {
+        this.size = size;
+    }
+
+    public boolean isActive() {
+        return levelSizes != null;
+    }
+
+    public void setScale(float value) {
+        if (value == scale) {
+            return;
+        }
+        cleanResources();
+        scale = value;
+        levelSizes = null;
+        levels = null;
+
+        // 放大显示时直接用全尺寸纹理
+        if (scale >= 1.0f || scale <= 0.0f) {
+            return;
+        }
+
+        float targetWidth = (float) Math.ceil(size.width * scale);
+        float targetHeight = (float) Math.ceil(size.height * scale);
+
+        List<Size> sizes = new ArrayList<>();
+        float width = size.width;
+        float height = size.height;
+        while (width / 2.0f >= targetWidth && height / 2.0f >= targetHeight) {
+            width = (float) Math.ceil(width / 2.0f);
+            height = (float) Math.ceil(height / 2.0f);
+            sizes.add(new Size(width, height));
+        }
+        if (width != targetWidth || height != targetHeight) {
+            sizes.add(new Size(targetWidth, targetHeight));
+        }
+
+        levelSizes = sizes.toArray(new Size[0]);
+        levels = new int[levelSizes.length];
+        invalidateAll();
+    }
+
+    public void invalidate(Rect rect) {
+        if (!isActive()) {
+            return;
+        }
+        if (!dirty) {
+            dirtyRect.set(rect.left, rect.top, rect.right, rect.bottom);
+            dirty = true;
+        } else {
+            dirtyRect.union(rect.left, rect.top, rect.right, rect.bottom);
+        }
+    }
+
+    public void invalidateAll() {
+        dirtyRect.set(0, 0, size.width, size.height);
+        dirty = true;
+    }
+
+    public int getTexture() {
+        return levels != null ? levels[levels.length - 1] : 0;
+    }
+
+    // shader要原样拷贝像素（nonPremultipliedBlit），每一级都再预乘一次的话半透明的地方会一级比一级暗
+    public void update(int source, Shader shader, int framebuffer, float[] projection, ByteBuffer vertexBuffer, ByteBuffer textureBuffer) {
+        if (!isActive() || !dirty || shader == null) {
+            return;
+        }
+
+        RectF rect = updateRect;
+        rect.set(dirtyRect);
+        dirty = false;
+
+        GLState.get().bindFramebuffer(framebuffer);
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ZERO);
+        GLBackend.get().glEnable(GLES20.GL_SCISSOR_TEST);
+
+        int input = source;
+        for (int a = 0; a < levelSizes.length; a++) {
+            Size levelSize = levelSizes[a];
+            int texture = getLevelTexture(a);
+
+            GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+            if (GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+                break;
+            }
+
+            float scaleX = levelSize.width / size.width;
+            float scaleY = levelSize.height / size.height;
+
+            // 线性采样会用到旁边的像素，每一级多重画一个像素
+            rect.inset(-1.0f / scaleX, -1.0f / scaleY);
+            int left = Math.max(0, (int) Math.floor(rect.left * scaleX));
+            int top = Math.max(0, (int) Math.floor(rect.top * scaleY));
+            int right = Math.min((int) levelSize.width, (int) Math.ceil(rect.right * scaleX));
+            int bottom = Math.min((int) levelSize.height, (int) Math.ceil(rect.bottom * scaleY));
+            if (right <= left || bottom <= top) {
+                break;
+            }
+
+            GLBackend.get().glViewport(0, 0, (int) levelSize.width, (int) levelSize.height);
+            GLBackend.get().glScissor(left, top, right - left, bottom - top);
+
+            GLState.get().useProgram(shader.getProgram());
+            GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, projection, 0);
+            GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
+
+            GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+            GLState.get().bindTexture(input);
+
+            GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
+            GLBackend.get().glEnableVertexAttribArray(0);
+            GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
+            GLBackend.get().glEnableVertexAttribArray(1);
+
+            GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+            input = texture;
+        }
+
+        GLBackend.get().glDisable(GLES20.GL_SCISSOR_TEST);
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.get().bindFramebuffer(0);
+    }
+
+    private int getLevelTexture(int index) {
+        if (levels[index] == 0) {
+            levels[index] = Texture.generateTexture(levelSizes[index]);
+        }
+        return levels[index];
+    }
+
+    public void cleanResources() {
+        if (levels == null) {
+            return;
+        }
+        for (int a = 0; a < levels.length; a++) {
+            if (levels[a] != 0) {
+                GLState.get().deleteTexture(levels[a]);
+                levels[a] = 0;
+            }
+        }
+        invalidateAll();
+    }
+}
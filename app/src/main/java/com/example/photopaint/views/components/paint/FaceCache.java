@@ -0,0 +1,151 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.Bitmap;
+import com.example.photopaint.helpers.ApplicationLoader;
+import com.example.photopaint.helpers.FileLog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// 人脸检测结果的磁盘缓存，key是检测用的缩小图的像素哈希加上方向，同一张图再次打开时直接读结果。
+// 存的是归一化后的关键点，和画布大小无关；没检测到人脸也会存一条空记录
+public class FaceCache {
+
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRIES = 32;
+
+    private File directory;
+
+    public FaceCache() {
+        if (ApplicationLoader.applicationContext != null) {
+            directory = new File(ApplicationLoader.applicationContext.getCacheDir(), "faces");
+        }
+    }
+
+    public static String getKey(Bitmap bitmap, int orientation) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(bitmap.getRowBytes() * bitmap.getHeight());
+            bitmap.copyPixelsToBuffer(buffer);
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(buffer.array(), 0, buffer.position());
+            digest.update(ByteBuffer.allocate(12).putInt(bitmap.getWidth()).putInt(bitmap.getHeight()).putInt(orientation).array());
+            byte[] hash = digest.digest();
+
+            StringBuilder name = new StringBuilder();
+            for (int a = 0; a < hash.length; a++) {
+                name.append(String.format("%02x", hash[a] & 0xff));
+            }
+            return name.toString();
+        } catch (Exception e) {
+            FileLog.e(e);
+        }
+        return null;
+    }
+
+    // 没有缓存时返回null，缓存里没有人脸时返回空列表
+    public List<float[]> get(String key) {
+        File file = getFile(key);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            int count = in.readInt();
+            List<float[]> result = new ArrayList<>(count);
+            for (int a = 0; a < count; a++) {
+                float[] landmarks = new float[PhotoFace.LANDMARKS_LENGTH];
+                for (int b = 0; b < landmarks.length; b++) {
+                    landmarks[b] = in.readFloat();
+                }
+                result.add(landmarks);
+            }
+            file.setLastModified(System.currentTimeMillis());
+            return result;
+        } catch (Exception e) {
+            FileLog.e(e);
+            file.delete();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (Exception ignore) {
+
+                }
+            }
+        }
+        return null;
+    }
+
+    public void put(String key, List<float[]> faces) {
+        File file = getFile(key);
+        if (file == null || !directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(file));
+            out.writeInt(VERSION);
+            out.writeInt(faces.size());
+            for (int a = 0; a < faces.size(); a++) {
+                float[] landmarks = faces.get(a);
+                for (int b = 0; b < PhotoFace.LANDMARKS_LENGTH; b++) {
+                    out.writeFloat(landmarks[b]);
+                }
+            }
+        } catch (Exception e) {
+            FileLog.e(e);
+            file.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (Exception ignore) {
+
+                }
+            }
+        }
+        trim();
+    }
+
+    // 只保留最近用过的MAX_ENTRIES条
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? 1 : (l > r ? -1 : 0);
+            }
+        });
+        for (int a = MAX_ENTRIES; a < files.length; a++) {
+            files[a].delete();
+        }
+    }
+
+    private File getFile(String key) {
+        if (directory == null || key == null) {
+            return null;
+        }
+        return new File(directory, key + ".bin");
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.photopaint.views.components.paint;
+
+import android.opengl.GLES20;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// 记住当前绑定的program、纹理、混合方式和framebuffer，和上次一样的调用直接跳过。
+// GL context只在创建它的线程上用，所以每个线程一份；绕过这里直接改状态后要调reset()
+public class GLState {
+
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int UNKNOWN = -1;
+
+    private static final ThreadLocal<GLState> current = new ThreadLocal<GLState>() {
+        @Override
+        protected GLState initialValue() {
+            return new GLState();
+        }
+    };
+
+    public static GLState get() {
+        return current.get();
+    }
+
+    private int program;
+    private int activeUnit;
+    private int[] textures = new int[MAX_TEXTURE_UNITS];
+    private int blendSrcRGB;
+    private int blendDstRGB;
+    private int blendSrcAlpha;
+    private int blendDstAlpha;
+    private int framebuffer;
+    private int[] ids = new int[1];
+
+    private int issuedCalls;
+    private int skippedCalls;
+    private int lastFrameIssued;
+    private int lastFrameSkipped;
+    private long totalIssued;
+    private long totalSkipped;
+    private int frames;
+
+    private GLState() {
+        reset();
+    }
+
+    public void reset() {
+        program = UNKNOWN;
+        activeUnit = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        blendSrcRGB = UNKNOWN;
+        blendDstRGB = UNKNOWN;
+        blendSrcAlpha = UNKNOWN;
+        blendDstAlpha = UNKNOWN;
+        framebuffer = UNKNOWN;
+    }
+
+    public void useProgram(int value) {
+        if (program == value) {
+            skippedCalls++;
+            return;
+        }
+        program = value;
+        issuedCalls++;
+        GLBackend.get().glUseProgram(value);
+    }
+
+    public void activeTexture(int unit) {
+        if (activeUnit == unit) {
+            skippedCalls++;
+            return;
+        }
+        activeUnit = unit;
+        issuedCalls++;
+        GLBackend.get().glActiveTexture(unit);
+    }
+
+    public void bindTexture(int texture) {
+        int index = activeUnit == UNKNOWN ? UNKNOWN : activeUnit - GLES20.GL_TEXTURE0;
+        if (index >= 0 && index < MAX_TEXTURE_UNITS) {
+            if (textures[index] == texture) {
+                skippedCalls++;
+                return;
+            }
+            textures[index] = texture;
+        }
+        issuedCalls++;
+        GLBackend.get().glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    }
+
+    public void blendFunc(int src, int dst) {
+        blendFuncSeparate(src, dst, src, dst);
+    }
+
+    public void blendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+        if (blendSrcRGB == srcRGB && blendDstRGB == dstRGB && blendSrcAlpha == srcAlpha && blendDstAlpha == dstAlpha) {
+            skippedCalls++;
+            return;
+        }
+        blendSrcRGB = srcRGB;
+        blendDstRGB = dstRGB;
+        blendSrcAlpha = srcAlpha;
+        blendDstAlpha = dstAlpha;
+        issuedCalls++;
+        if (srcRGB == srcAlpha && dstRGB == dstAlpha) {
+            GLBackend.get().glBlendFunc(srcRGB, dstRGB);
+        } else {
+            GLBackend.get().glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+        }
+    }
+
+    public void bindFramebuffer(int value) {
+        if (framebuffer == value) {
+            skippedCalls++;
+            return;
+        }
+        framebuffer = value;
+        issuedCalls++;
+        GLBackend.get().glBindFramebuffer(GLES20.GL_FRAMEBUFFER, value);
+    }
+
+    public void deleteTexture(int texture) {
+        if (texture == 0) {
+            return;
+        }
+        onTextureDeleted(texture);
+        ids[0] = texture;
+        GLBackend.get().glDeleteTextures(1, ids, 0);
+    }
+
+    public void deleteFramebuffer(int value) {
+        if (value == 0) {
+            return;
+        }
+        onFramebufferDeleted(value);
+        ids[0] = value;
+        GLBackend.get().glDeleteFramebuffers(1, ids, 0);
+    }
+
+    // 删除正在绑定的对象后GL会把绑定改回0，缓存也要跟着改，否则复用同一个id时会被错误地跳过
+    public void onTextureDeleted(int texture) {
+        for (int a = 0; a < MAX_TEXTURE_UNITS; a++) {
+            if (textures[a] == texture) {
+                textures[a] = 0;
+            }
+        }
+    }
+
+    public void onFramebufferDeleted(int value) {
+        if (framebuffer == value) {
+            framebuffer = 0;
+        }
+    }
+
+    public void onProgramDeleted(int value) {
+        if (program == value) {
+            program = UNKNOWN;
+        }
+    }
+
+    // 每帧结束时调用，记下这一帧的调用数
+    public void endFrame() {
+        lastFrameIssued = issuedCalls;
+        lastFrameSkipped = skippedCalls;
+        totalIssued += issuedCalls;
+        totalSkipped += skippedCalls;
+        frames++;
+        issuedCalls = 0;
+        skippedCalls = 0;
+    }
+
+    public int getLastFrameIssued() {
+        return lastFrameIssued;
+    }
+
+    public int getLastFrameSkipped() {
+        return lastFrameSkipped;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public void resetStats() {
+        issuedCalls = 0;
+        skippedCalls = 0;
+        lastFrameIssued = 0;
+        lastFrameSkipped = 0;
+        totalIssued = 0;
+        totalSkipped = 0;
+        frames = 0;
+    }
+
+    @Override
+    public String toString() {
+        float avgIssued = frames > 0 ? (float) totalIssued / frames : 0;
+        float avgSkipped = frames > 0 ? (float) totalSkipped / frames : 0;
+        return "frames=" + frames + " last issued=" + lastFrameIssued + " skipped=" + lastFrameSkipped
+                + " avg issued=" + String.format(Locale.US, "%.1f", avgIssued) + " skipped=" + String.format(Locale.US, "%.1f", avgSkipped);
+    }
+}
@@ -4,10 +4,16 @@ import android.graphics.Matrix;
 import android.view.MotionEvent;
 import com.example.photopaint.helpers.AndroidUtilities;
 
-import java.util.Vector;
+import java.util.Arrays;
 
 public class Input {
 
+    private static final long SLOW_SAMPLE_INTERVAL = 32;
+    private static final float SLOW_SAMPLE_DISTANCE_FACTOR = 0.4f;
+    private static final long PREDICTION_TIME = 16;
+    private static final float FLATNESS_TOLERANCE = 0.02f;
+    private static final float MIN_FLATNESS_TOLERANCE = 0.25f;
+
     private RenderView renderView;
 
     private boolean beganDrawing;
@@ -16,6 +22,7 @@ public class Input {
     private boolean clearBuffer;
 
     private Point lastLocation;
+    private long lastTime;
     private double lastRemainder;
 
     private Point[] points = new Point[3];
@@ -24,66 +31,64 @@ public class Input {
     private Matrix invertMatrix;
     private float[] tempPoint = new float[2];
 
+    // 当前事件里的采样点，x0, y0, x1, y1 ...
+    private float[] samples = new float[64 * 2];
+    private long[] sampleTimes = new long[64];
+    private int samplesCount;
+
+    // 最近一个采样点和按采样点估算的速度（painting坐标每毫秒）
+    private float sampleX;
+    private float sampleY;
+    private long sampleTime;
+    private float velocityX;
+    private float velocityY;
+
     public Input(RenderView render) {
         renderView = render;
     }
 
     public void setMatrix(Matrix m) {
-        invertMatrix = new Matrix();
+        if (invertMatrix == null) {
+            invertMatrix = new Matrix();
+        }
         m.invert(invertMatrix);
     }
 
+    public void cancel() {
+        // 第二根手指按下时丢掉还没提交的笔画
+        if (!beganDrawing) {
+            return;
+        }
+        beganDrawing = false;
+        pointsCount = 0;
+        renderView.getPainting().cancelStroke();
+        if (hasMoved) {
+            renderView.onFinishedDrawing(false);
+        }
+    }
+
     public void process(MotionEvent event) {
         int action = event.getActionMasked();
-        float x = event.getX();
-        float y = renderView.getHeight() - event.getY();
-
-        tempPoint[0] = x;
-        tempPoint[1] = y;
-        invertMatrix.mapPoints(tempPoint);
-
-        Point location = new Point(tempPoint[0], tempPoint[1], 1.0f);
 
         switch (action) {
             case MotionEvent.ACTION_DOWN:
             case MotionEvent.ACTION_MOVE: {
-                if (!beganDrawing) {
-                    // 如果当前的状态不是正在绘制中，那么开始绘制
-                    beganDrawing = true;
-                    hasMoved = false;
-                    isFirst = true;
-
-                    // 记录上一个点
-                    lastLocation = location;
-
-                    points[0] = location;
-                    pointsCount = 1;
-
-                    clearBuffer = true;
-                } else {
-                    //每次移动都是直线距离（无数个短的直线形成曲线），这里的distance是三维直线距离
-                    float distance = location.getDistanceTo(lastLocation);
-                    if (distance < AndroidUtilities.dp(5.0f)) {
-                        // 移动距离小于5dp时，绘制状态不做变更
-                        return;
-                    }
-
-                    if (!hasMoved) {
-                        // 当发生移动之后回调onBeganDrawing
-                        renderView.onBeganDrawing();
-                        hasMoved = true;
-                    }
+                // 一次MOVE里打包了上一帧以来的所有历史采样点，全部取出来
+                samplesCount = 0;
+                int historySize = event.getHistorySize();
+                for (int h = 0; h < historySize; h++) {
+                    addSample(event.getHistoricalX(h), event.getHistoricalY(h), event.getHistoricalEventTime(h));
+                }
+                addSample(event.getX(), event.getY(), event.getEventTime());
 
-                    // 把当前点记录下来
-                    points[pointsCount] = location;
-                    pointsCount++;
+                invertMatrix.mapPoints(samples, 0, samples, 0, samplesCount);
 
-                    if (pointsCount == 3) {
-                        //中间添加过渡的点让路径path更顺滑，并绘制这些点
-                        smoothenAndPaintPoints(false);
-                    }
+                for (int a = 0; a < samplesCount; a++) {
+                    processSample(samples[a * 2], samples[a * 2 + 1], sampleTimes[a]);
+                }
 
-                    lastLocation = location;
+                if (action == MotionEvent.ACTION_MOVE) {
+                    predict();
                 }
             }
             break;
@@ -91,6 +96,11 @@ public class Input {
             case MotionEvent.ACTION_UP: {
                 if (!hasMoved) {
                     if (renderView.shouldDraw()) {
+                        tempPoint[0] = event.getX();
+                        tempPoint[1] = renderView.getHeight() - event.getY();
+                        invertMatrix.mapPoints(tempPoint);
+
+                        Point location = new Point(tempPoint[0], tempPoint[1], 1.0f);
                         location.edge = true;
                         paintPath(new Path(location));
                     }
@@ -110,14 +120,131 @@ public class Input {
         }
     }
 
+    private void addSample(float x, float y, long time) {
+        if (samplesCount == sampleTimes.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+            sampleTimes = Arrays.copyOf(sampleTimes, sampleTimes.length * 2);
+        }
+        samples[samplesCount * 2] = x;
+        samples[samplesCount * 2 + 1] = renderView.getHeight() - y;
+        sampleTimes[samplesCount] = time;
+        samplesCount++;
+    }
+
+    private void processSample(float x, float y, long time) {
+        trackVelocity(x, y, time);
+
+        if (!beganDrawing) {
+            // 如果当前的状态不是正在绘制中，那么开始绘制
+            beganDrawing = true;
+            hasMoved = false;
+            isFirst = true;
+
+            Point location = new Point(x, y, 1.0f);
+
+            // 记录上一个点
+            lastLocation = location;
+            lastTime = time;
+
+            points[0] = location;
+            pointsCount = 1;
+
+            clearBuffer = true;
+            return;
+        }
+
+        //每次移动都是直线距离（无数个短的直线形成曲线）
+        double dx = x - lastLocation.x;
+        double dy = y - lastLocation.y;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+
+        // 屏幕上移动距离小于5dp时，绘制状态不做变更；慢慢画的时候隔一段时间放宽距离，让细小的转折也能跟上
+        float minDistance = AndroidUtilities.dp(5.0f) / renderView.getViewport().getZoom();
+        if (time - lastTime >= SLOW_SAMPLE_INTERVAL) {
+            minDistance *= SLOW_SAMPLE_DISTANCE_FACTOR;
+        }
+        if (distance < minDistance) {
+            return;
+        }
+
+        if (!hasMoved) {
+            // 当发生移动之后回调onBeganDrawing
+            renderView.onBeganDrawing();
+            hasMoved = true;
+        }
+
+        // 把当前点记录下来
+        Point location = new Point(x, y, 1.0f);
+        points[pointsCount] = location;
+        pointsCount++;
+
+        if (pointsCount == 3) {
+            //中间添加过渡的点让路径path更顺滑，并绘制这些点
+            smoothenAndPaintPoints(false);
+        }
+
+        lastLocation = location;
+        lastTime = time;
+    }
+
+    private void trackVelocity(float x, float y, long time) {
+        if (!beganDrawing) {
+            velocityX = 0;
+            velocityY = 0;
+        } else if (time > sampleTime) {
+            float dt = time - sampleTime;
+            velocityX = velocityX * 0.5f + (x - sampleX) / dt * 0.5f;
+            velocityY = velocityY * 0.5f + (y - sampleY) / dt * 0.5f;
+        }
+        sampleX = x;
+        sampleY = y;
+        sampleTime = time;
+    }
+
+    private void predict() {
+        // 按最近的速度往前推一小段先画出来，真实的点到了会替换掉
+        if (!hasMoved || pointsCount != 2 || renderView.isMosaic()) {
+            return;
+        }
+
+        float zoom = renderView.getViewport().getZoom();
+        float dx = velocityX * PREDICTION_TIME;
+        float dy = velocityY * PREDICTION_TIME;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length < AndroidUtilities.dp(1.0f) / zoom) {
+            renderView.getPainting().paintPrediction(null);
+            return;
+        }
+        float maxLength = AndroidUtilities.dp(48.0f) / zoom;
+        if (length > maxLength) {
+            dx *= maxLength / length;
+            dy *= maxLength / length;
+        }
+
+        // 已经画到的位置是最后两个点的中点
+        Point start = points[0].multiplySum(points[1], 0.5f);
+        Point sample = new Point(sampleX, sampleY, 1.0f);
+        Point predicted = new Point(sampleX + dx, sampleY + dy, 1.0f);
+
+        Point[] result;
+        if (sample.getDistanceTo(points[1]) < 0.5f) {
+            result = new Point[]{start, points[1], predicted};
+        } else {
+            result = new Point[]{start, points[1], sample, predicted};
+        }
+
+        Path path = new Path(result);
+        path.setup(renderView.getCurrentColor(), renderView.getCurrentWeight(), renderView.getCurrentBrush());
+        path.setTouchTime(sampleTime);
+        renderView.getPainting().paintPrediction(path);
+    }
+
     private void reset() {
         pointsCount = 0;
     }
 
     private void smoothenAndPaintPoints(boolean ended) {
         if (pointsCount > 2) {
-            Vector<Point> points = new Vector<>();
-
             Point prev2 = this.points[0];
             Point prev1 = this.points[1];
             Point cur = this.points[2];
@@ -131,31 +258,25 @@ public class Input {
             Point midPoint2 = cur.multiplySum(prev1, 0.5f);// 计算当前点和上一个点的中间点
             midPoint2.mosaicColor = renderView.getMosaicColor((float) midPoint2.x, (float) midPoint2.y);
 
-            int segmentDistance = renderView.isMosaic() ? 30 : 1;//设置线段的距离为1px.
-            float distance = midPoint1.getDistanceTo(midPoint2);// 计算两个中间点的距离
-            int numberOfSegments = (int) Math.min(48, Math.max(Math.floor(distance / segmentDistance), 24));// 计算可以分成多少段
+            int numberOfSegments = getNumberOfSegments(midPoint1, prev1, midPoint2);
 
-            float t = 0.0f;
+            Point[] result = new Point[numberOfSegments + 1];
             float step = 1.0f / (float) numberOfSegments;
 
             for (int j = 0; j < numberOfSegments; j++) {
-                Point point = smoothPoint(midPoint1, midPoint2, prev1, t);// 添加过渡点
+                Point point = smoothPoint(midPoint1, midPoint2, prev1, j * step);// 添加过渡点
                 point.mosaicColor = renderView.getMosaicColor((float) point.x, (float) point.y);
                 if (isFirst) {// 是否为起始点，如果是起始点和结束点都需要标记
                     point.edge = true;
                     isFirst = false;
                 }
-                points.add(point);
-                t += step;
+                result[j] = point;
             }
 
             if (ended) {// 是否为结束点，当手势抬起的时候标记为结束点
                 midPoint2.edge = true;
             }
-            points.add(midPoint2);
-
-            Point[] result = new Point[points.size()];
-            points.toArray(result);
+            result[numberOfSegments] = midPoint2;
 
             Path path = new Path(result);
             paintPath(path);
@@ -176,6 +297,27 @@ public class Input {
         }
     }
 
+    private int getNumberOfSegments(Point start, Point control, Point end) {
+        // 二次曲线离弦最远是|start - 2 * control + end| / 4，分成n段后误差缩小到1/n²，按笔刷大小定容差
+        Brush brush = renderView.getCurrentBrush();
+        float brushSize = renderView.getCurrentWeight() * brush.getScale();
+        float stampSpacing = Math.max(1.0f, brush.getSpacing() * brushSize);
+        float tolerance = Math.max(MIN_FLATNESS_TOLERANCE, brushSize * FLATNESS_TOLERANCE);
+
+        double ddx = start.x - 2.0 * control.x + end.x;
+        double ddy = start.y - 2.0 * control.y + end.y;
+        double deviation = Math.sqrt(ddx * ddx + ddy * ddy) / 4.0;
+
+        // 曲线长度在弦长和控制多边形长度之间，取平均估算；点不需要比印章间距更密
+        double length = (start.getDistanceTo(control) + control.getDistanceTo(end) + start.getDistanceTo(end)) / 2.0;
+        int maxSegments = Math.max(1, (int) Math.ceil(length / stampSpacing));
+        if (renderView.isMosaic()) {
+            // 马赛克每个印章单独取色，直接按印章间距输出
+            return maxSegments;
+        }
+        return Math.min(maxSegments, Math.max(1, (int) Math.ceil(Math.sqrt(deviation / tolerance))));
+    }
+
     private Point smoothPoint(Point midPoint1, Point midPoint2, Point prev1, float t) {
         double a1 = Math.pow(1.0f - t, 2);
         double a2 = (2.0f * (1.0f - t) * t);
@@ -186,6 +328,7 @@ public class Input {
 
     private void paintPath(final Path path) {
         path.setup(renderView.getCurrentColor(), renderView.getCurrentWeight(), renderView.getCurrentBrush());
+        path.setTouchTime(sampleTime);
 
         if (clearBuffer) {
             lastRemainder = 0.0f;
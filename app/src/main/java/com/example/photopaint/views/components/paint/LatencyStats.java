@@ -0,0 +1,49 @@
+package com.example.photopaint.views.components.paint;
+
+import java.util.Locale;
+
+// 触摸到上屏的延迟统计，GL线程写入，UI线程读取
+public class LatencyStats {
+
+    private int count;
+    private long total;
+    private long max;
+    private long last;
+
+    public synchronized void add(long latency) {
+        count++;
+        total += latency;
+        last = latency;
+        if (latency > max) {
+            max = latency;
+        }
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getLast() {
+        return last;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized float getAverage() {
+        return count > 0 ? (float) total / count : 0.0f;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        total = 0;
+        max = 0;
+        last = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "frames=" + count + " avg=" + String.format(Locale.US, "%.1f", getAverage()) + "ms max=" + max + "ms last=" + last + "ms";
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.RectF;
+import android.opengl.GLES20;
+import com.example.photopaint.views.components.Size;
+
+public class Layer {
+
+    // 图层纹理中保存的是预乘alpha的颜色，混合因子按预乘来选
+    public enum BlendMode {
+        NORMAL(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA),
+        MULTIPLY(GLES20.GL_DST_COLOR, GLES20.GL_ONE_MINUS_SRC_ALPHA),
+        SCREEN(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_COLOR),
+        ADD(GLES20.GL_ONE, GLES20.GL_ONE);
+
+        private final int srcFactor;
+        private final int dstFactor;
+
+        BlendMode(int srcFactor, int dstFactor) {
+            this.srcFactor = srcFactor;
+            this.dstFactor = dstFactor;
+        }
+
+        public void apply() {
+            GLState.get().blendFunc(srcFactor, dstFactor);
+        }
+    }
+
+    private String name;
+    private BlendMode blendMode;
+    private boolean visible = true;
+    private int texture;
+    private RectF contentBounds;
+    private TileGrid checkpointTiles;
+
+    public Layer(String name, BlendMode blendMode, Size size) {
+        this.name = name;
+        this.blendMode = blendMode;
+
+        // 记录上次检查点之后改动过的瓦片
+        checkpointTiles = new TileGrid(size);
+        checkpointTiles.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BlendMode getBlendMode() {
+        return blendMode;
+    }
+
+    public void setBlendMode(BlendMode value) {
+        blendMode = value;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean value) {
+        visible = value;
+    }
+
+    public boolean isEmpty() {
+        return contentBounds == null;
+    }
+
+    public RectF getContentBounds() {
+        return contentBounds != null ? new RectF(contentBounds) : null;
+    }
+
+    void includeContent(RectF rect) {
+        if (rect == null) {
+            return;
+        }
+        if (contentBounds == null) {
+            contentBounds = new RectF(rect);
+        } else {
+            contentBounds.union(rect);
+        }
+    }
+
+    void resetContent() {
+        contentBounds = null;
+    }
+
+    TileGrid getCheckpointTiles() {
+        return checkpointTiles;
+    }
+
+    int getTexture() {
+        return texture;
+    }
+
+    void setTexture(int value) {
+        texture = value;
+    }
+
+    public void cleanResources() {
+        if (texture == 0) {
+            return;
+        }
+
+        GLState.get().deleteTexture(texture);
+        texture = 0;
+    }
+}
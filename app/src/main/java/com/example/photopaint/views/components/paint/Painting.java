@@ -2,18 +2,27 @@ package com.example.photopaint.views.components.paint;
 
 import android.graphics.*;
 import android.opengl.GLES20;
+import android.util.SparseArray;
+import com.example.photopaint.helpers.BuildVars;
 import com.example.photopaint.helpers.DispatchQueue;
+import com.example.photopaint.helpers.FileLog;
 import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+import com.example.photopaint.views.components.paint.metrics.Metrics;
 
 import javax.microedition.khronos.opengles.GL10;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 public class Painting {
 
+    private static final float[] FULL_STAMP_RECT = new float[]{0.0f, 0.0f, 1.0f, 1.0f};
+
     public interface PaintingDelegate {
         void contentChanged(RectF rect);
         void strokeCommited();
@@ -21,6 +30,14 @@ public class Painting {
         DispatchQueue requestDispatchQueue();
     }
 
+    // 在调用线程里通知Input交给Painting的每一段笔画，回放时用它拿到平滑、切段、预测之后的真实输出
+    public interface StrokeListener {
+        void onStrokePainted(Path path, boolean clearBuffer);
+        void onPredictionPainted(Path path);
+        void onStrokeCommitted(int color);
+        void onStrokeCancelled();
+    }
+
     public class PaintingData {
         public Bitmap bitmap;
         public ByteBuffer data;
@@ -32,6 +49,7 @@ public class Painting {
     }
 
     private PaintingDelegate delegate;
+    private StrokeListener strokeListener;
     private Path activePath;
     private RenderState renderState;
     private RenderView renderView;
@@ -39,12 +57,33 @@ public class Painting {
     private RectF activeStrokeBounds;
     private Brush brush;
     private Texture brushTexture;
-    private Texture bitmapTexture;
+    private Texture atlasTexture;
+    private ProgressiveTexture bitmapTexture;
+    private Layer mosaicLayer;
+    private Layer paintLayer;
+    private List<Layer> layers;
+    private int compositeTexture;
+    // 笔画所在图层上面还有内容时，预览要夹在中间：原图和下面的图层先合成到这里，预览画完再叠上面的图层
+    private int underlayTexture;
+    private int underlayIndex = -1;
+    private TileGrid dirtyTiles;
+    private Rect tileRect = new Rect();
     private ByteBuffer vertexBuffer;
     private ByteBuffer textureBuffer;
+    private ByteBuffer visibleVertexBuffer;
+    private ByteBuffer visibleTextureBuffer;
+    private RectF visibleRect;
+    private DisplayProxy displayProxy;
+
+    private RenderState predictionState = new RenderState();
+    private RectF predictionBounds;
+    private int predictionTexture;
+    private long pendingTouchTime;
+    private float displayScale = 1.0f;
     private int reusableFramebuffer;
     private int paintTexture;
     private Map<String, Shader> shaders;
+    private ProgramCache programCache = new ProgramCache();
     private int suppressChangesCounter;
     private int[] buffers = new int[1];
     private int[] recoverBuffers = new int[1];
@@ -52,7 +91,7 @@ public class Painting {
     private ByteBuffer recoverDataBuffer;
 
     private boolean paused;
-    private Slice backupSlice;
+    private CheckpointStore checkpointStore = new CheckpointStore();
 
     private float projection[];
     private float renderProjection[];
@@ -67,6 +106,16 @@ public class Painting {
 
         projection = GLMatrix.LoadOrtho(0, size.width, 0, size.height, -1.0f, 1.0f);
 
+        // 图层从下往上依次是：原图、画笔图层、马赛克图层；马赛克盖在画笔上面，打过码的地方不会被后画的笔画露出来
+        paintLayer = new Layer("paint", Layer.BlendMode.NORMAL, size);
+        mosaicLayer = new Layer("mosaic", Layer.BlendMode.NORMAL, size);
+        layers = new ArrayList<>();
+        layers.add(paintLayer);
+        layers.add(mosaicLayer);
+
+        dirtyTiles = new TileGrid(size);
+        displayProxy = new DisplayProxy(size);
+
         if (vertexBuffer == null) {
             vertexBuffer = ByteBuffer.allocateDirect(8 * 4);
             vertexBuffer.order(ByteOrder.nativeOrder());
@@ -100,6 +149,10 @@ public class Painting {
         delegate = paintingDelegate;
     }
 
+    public void setStrokeListener(StrokeListener listener) {
+        strokeListener = listener;
+    }
+
     public void setRenderView(RenderView view) {
         renderView = view;
     }
@@ -112,6 +165,23 @@ public class Painting {
         return new RectF(0.0f, 0.0f, size.width, size.height);
     }
 
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    private Layer layerForBrush(Brush brush) {
+        return brush.isMosaic() ? mosaicLayer : paintLayer;
+    }
+
+    private void invalidate(RectF rect) {
+        dirtyTiles.markDirty(rect);
+    }
+
+    private void invalidate(Layer layer, RectF rect) {
+        layer.getCheckpointTiles().markDirty(rect);
+        dirtyTiles.markDirty(rect);
+    }
+
     private boolean isSuppressingChanges() {
         return suppressChangesCounter > 0;
     }
@@ -126,23 +196,51 @@ public class Painting {
 
     public void setBitmap(Bitmap bitmap) {
         if (bitmapTexture != null) {
+            // 之前只给了预览图，现在补上全尺寸的原图，之后几帧里分段上传
+            bitmapTexture.setBitmap(bitmap);
             return;
         }
 
-        // 创建原图的纹理
-        bitmapTexture = new Texture(bitmap);
+        // 创建原图的纹理，先显示预览图，全尺寸的在之后几帧里分段上传
+        bitmapTexture = new ProgressiveTexture(bitmap);
     }
 
-    private void update(RectF bounds, Runnable action) {
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, getReusableFramebuffer());
-        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, getTexture(), 0);
+    // 全尺寸原图还没准备好时先用缩放旋转好的小图当背景，画笔照常画在图层上
+    public void setPreview(Bitmap preview) {
+        if (bitmapTexture != null) {
+            preview.recycle();
+            return;
+        }
+        bitmapTexture = new ProgressiveTexture(null, preview);
+    }
+
+    public boolean hasBitmap() {
+        return bitmapTexture != null && bitmapTexture.hasBitmap();
+    }
+
+    // 每帧画完后调用，上传原图的下一段；返回true表示还要再画一帧
+    public boolean uploadBackground() {
+        if (bitmapTexture == null || !bitmapTexture.hasPendingBands()) {
+            return false;
+        }
+        if (bitmapTexture.uploadNextBand()) {
+            // 换成全尺寸纹理，整张画布重新合成
+            dirtyTiles.markAllDirty();
+            underlayIndex = -1;
+        }
+        return true;
+    }
 
-        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+    private void update(int texture, RectF bounds, Runnable action) {
+        GLState.get().bindFramebuffer(getReusableFramebuffer());
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+
+        int status = GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
         if (status == GLES20.GL_FRAMEBUFFER_COMPLETE) {
-            GLES20.glViewport(0, 0, (int) size.width, (int) size.height);
+            GLBackend.get().glViewport(0, 0, (int) size.width, (int) size.height);
             action.run();
         }
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLState.get().bindFramebuffer(0);
 
         if (!isSuppressingChanges() && delegate != null) {
             delegate.contentChanged(bounds);
@@ -150,48 +248,40 @@ public class Painting {
     }
 
     public void paintStroke(final Path path, final boolean clearBuffer, final Runnable action) {
+        if (strokeListener != null) {
+            strokeListener.onStrokePainted(path, clearBuffer);
+        }
         renderView.performInContext(new Runnable() {
             @Override
             public void run() {
+                discardPrediction();
+                if (activePath == null) {
+                    underlayIndex = -1;
+                }
                 activePath = path;
+                trackTouchTime(path);
 
                 RectF bounds = null;
 
-                GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, getReusableFramebuffer());
-                GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, getPaintTexture(), 0);
-
-                Utils.HasGLError();
+                GLState.get().bindFramebuffer(getReusableFramebuffer());
+                GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, getPaintTexture(), 0);
 
-                int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+                int status = GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
                 if (status == GLES20.GL_FRAMEBUFFER_COMPLETE) {
-                    GLES20.glViewport(0, 0, (int) size.width, (int) size.height);
+                    GLBackend.get().glViewport(0, 0, (int) size.width, (int) size.height);
 
                     if (clearBuffer) {
-                        GLES20.glClearColor(0, 0, 0, 0);
-                        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+                        GLBackend.get().glClearColor(0, 0, 0, 0);
+                        GLBackend.get().glClear(GLES20.GL_COLOR_BUFFER_BIT);
                     }
 
                     if (shaders == null) {
                         return;
                     }
-                    Shader shader = shaders.get(brush.isMosaic() ? "mosaicBrush" : (brush.isLightSaber() ? "brushLight" : "brush"));
-                    if (shader == null) {
-                        return;
-                    }
-
-                    GLES20.glUseProgram(shader.program);
-                    if (brushTexture == null) {
-                        brushTexture = new Texture(brush.getStamp());//获取画刷的texture
-                    }
-                    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, brushTexture.texture());
-                    GLES20.glUniformMatrix4fv(shader.getUniform("mvpMatrix"), 1, false, FloatBuffer.wrap(projection));
-                    GLES20.glUniform1i(shader.getUniform("texture"), 0);
-
-                    bounds = Render.RenderPath(path, renderState);
+                    bounds = renderPath(path, renderState);
                 }
 
-                GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+                GLState.get().bindFramebuffer(0);
 
                 if (delegate != null) {
                     delegate.contentChanged(bounds);
@@ -210,16 +300,156 @@ public class Painting {
         });
     }
 
+    private RectF renderPath(Path path, RenderState state) {
+        Shader shader = shaders.get(brush.isMosaic() ? "mosaicBrush" : (brush.isLightSaber() ? "brushLight" : "brush"));
+        if (shader == null) {
+            return null;
+        }
+
+        GLState.get().useProgram(shader.getProgram());
+        // 内置画刷都在图集里，只换纹理坐标；图集里没有的画刷才单独建纹理
+        float[] stampRect = BrushAtlas.getInstance().getStampRect(brush);
+        int stampTexture;
+        if (stampRect != null) {
+            if (atlasTexture == null) {
+                atlasTexture = new Texture(BrushAtlas.getInstance().getBitmap());
+            }
+            stampTexture = atlasTexture.texture();
+        } else {
+            if (brushTexture == null) {
+                brushTexture = new Texture(brush.getStamp());//获取画刷的texture
+            }
+            stampTexture = brushTexture.texture();
+            stampRect = FULL_STAMP_RECT;
+        }
+        GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+        GLState.get().bindTexture(stampTexture);
+        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, projection, 0);
+        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
+        GLBackend.get().glUniform4f(shader.getUniform(Shader.UNIFORM_STAMP_RECT), stampRect[0], stampRect[1], stampRect[2], stampRect[3]);
+
+        return Render.RenderPath(path, state);
+    }
+
+    // 预测的笔画先画进画笔纹理，画之前把那块区域备份，真实的点到了以后先还原再画
+    public void paintPrediction(final Path path) {
+        if (strokeListener != null) {
+            strokeListener.onPredictionPainted(path);
+        }
+        renderView.performInContext(new Runnable() {
+            @Override
+            public void run() {
+                discardPrediction();
+                if (path == null || activePath == null || shaders == null) {
+                    return;
+                }
+                trackTouchTime(path);
+
+                RectF bounds = getPredictionBounds(path);
+                if (bounds == null) {
+                    return;
+                }
+                copyTextureRegion(getPaintTexture(), getPredictionTexture(), bounds);
+                predictionBounds = bounds;
+
+                GLState.get().bindFramebuffer(getReusableFramebuffer());
+                GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, getPaintTexture(), 0);
+                if (GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) == GLES20.GL_FRAMEBUFFER_COMPLETE) {
+                    GLBackend.get().glViewport(0, 0, (int) size.width, (int) size.height);
+
+                    predictionState.reset();
+                    predictionState.remainder = renderState.remainder;
+                    renderPath(path, predictionState);
+                }
+                GLState.get().bindFramebuffer(0);
+
+                if (delegate != null) {
+                    delegate.contentChanged(bounds);
+                }
+            }
+        });
+    }
+
+    private void discardPrediction() {
+        if (predictionBounds == null) {
+            return;
+        }
+        RectF bounds = predictionBounds;
+        predictionBounds = null;
+        if (paintTexture != 0 && predictionTexture != 0) {
+            copyTextureRegion(predictionTexture, paintTexture, bounds);
+        }
+        if (delegate != null) {
+            delegate.contentChanged(bounds);
+        }
+    }
+
+    private RectF getPredictionBounds(Path path) {
+        // 印章最大会旋转45度，按1.5倍笔刷大小留余量
+        float margin = path.getBaseWeight() * path.getBrush().getScale() * 1.5f + 2.0f;
+        RectF bounds = null;
+        Point[] points = path.getPoints();
+        for (int a = 0; a < points.length; a++) {
+            float x = (float) points[a].x;
+            float y = (float) points[a].y;
+            if (bounds == null) {
+                bounds = new RectF(x, y, x, y);
+            } else {
+                bounds.union(x, y);
+            }
+        }
+        if (bounds == null) {
+            return null;
+        }
+        bounds.inset(-margin, -margin);
+        if (!bounds.intersect(0, 0, size.width, size.height)) {
+            return null;
+        }
+        Utils.RectFIntegral(bounds);
+        return bounds;
+    }
+
+    private void copyTextureRegion(int source, int target, RectF rect) {
+        GLState.get().bindFramebuffer(getReusableFramebuffer());
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, source, 0);
+        if (GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) == GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            int x = (int) rect.left;
+            int y = (int) rect.top;
+            GLState.get().bindTexture(target);
+            GLBackend.get().glCopyTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, x, y, (int) rect.width(), (int) rect.height());
+        }
+        GLState.get().bindFramebuffer(0);
+    }
+
+    private void trackTouchTime(Path path) {
+        // 记录还没显示出来的最早的触摸时间
+        if (pendingTouchTime == 0 && path.getTouchTime() != 0) {
+            pendingTouchTime = path.getTouchTime();
+        }
+    }
+
+    public long takePendingTouchTime() {
+        long time = pendingTouchTime;
+        pendingTouchTime = 0;
+        return time;
+    }
+
     public void commitStroke(final int color) {
+        if (strokeListener != null) {
+            strokeListener.onStrokeCommitted(color);
+        }
         final UUID uuid = UUID.randomUUID();
         renderView.performInContext(new Runnable() {
             @Override
             public void run() {
-                registerUndo(activeStrokeBounds,uuid);
+                discardPrediction();
+
+                final Layer layer = layerForBrush(brush);
+                registerUndo(activeStrokeBounds, uuid, layer);
 
                 beginSuppressingChanges();
 
-                update(null, new Runnable() {
+                update(getLayerTexture(layer), null, new Runnable() {
                     @Override
                     public void run() {
                         if (shaders == null) {
@@ -230,30 +460,39 @@ public class Painting {
                             return;
                         }
 
-                        GLES20.glUseProgram(shader.program);
+                        GLState.get().useProgram(shader.getProgram());
 
-                        GLES20.glUniformMatrix4fv(shader.getUniform("mvpMatrix"), 1, false, FloatBuffer.wrap(projection));
-                        GLES20.glUniform1i(shader.getUniform("mask"), 0);
-                        Shader.SetColorUniform(shader.getUniform("color"), color);
+                        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, projection, 0);
+                        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_MASK), 0);
+                        Shader.SetColorUniform(shader.getUniform(Shader.UNIFORM_COLOR), color);
 
-                        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-                        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getPaintTexture());
+                        GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+                        GLState.get().bindTexture(getPaintTexture());
 
-                        GLES20.glBlendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_SRC_ALPHA, GLES20.GL_ONE );
+                        // 图层是透明底的，alpha按over叠加才能保证图层里是正确的预乘颜色
+                        GLState.get().blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
-                        GLES20.glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
-                        GLES20.glEnableVertexAttribArray(0);
-                        GLES20.glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
-                        GLES20.glEnableVertexAttribArray(1);
+                        GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
+                        GLBackend.get().glEnableVertexAttribArray(0);
+                        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
+                        GLBackend.get().glEnableVertexAttribArray(1);
 
-                        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+                        GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
-                        registerRecover(activeStrokeBounds, uuid);
+                        registerRecover(activeStrokeBounds, uuid, layer);
                     }
                 });
 
                 endSuppressingChanges();
 
+                if (activeStrokeBounds != null) {
+                    layer.includeContent(activeStrokeBounds);
+                    invalidate(layer, activeStrokeBounds);
+                    if (delegate != null) {
+                        delegate.contentChanged(activeStrokeBounds);
+                    }
+                }
+
                 renderState.reset();
 
                 activeStrokeBounds = null;
@@ -262,7 +501,28 @@ public class Painting {
         });
     }
 
-    private void registerUndo(RectF rect, UUID uuid) {
+    public void cancelStroke() {
+        if (strokeListener != null) {
+            strokeListener.onStrokeCancelled();
+        }
+        renderView.performInContext(new Runnable() {
+            @Override
+            public void run() {
+                discardPrediction();
+                RectF bounds = activeStrokeBounds;
+
+                renderState.reset();
+                activeStrokeBounds = null;
+                activePath = null;
+
+                if (bounds != null && delegate != null) {
+                    delegate.contentChanged(bounds);
+                }
+            }
+        });
+    }
+
+    private void registerUndo(RectF rect, UUID uuid, final Layer layer) {
         if (rect == null) {
             return;
         }
@@ -272,8 +532,18 @@ public class Painting {
             return;
         }
 
+        if (layer.isEmpty()) {
+            // 图层在这一笔之前是空的，撤销时直接清空图层，不需要回读像素
+            delegate.requestUndoStore().registerUndo(uuid, new Runnable() {
+                @Override
+                public void run() {
+                    clearLayer(layer);
+                }
+            });
+            return;
+        }
 
-        PaintingData paintingData = getPaintingData(rect, true);
+        PaintingData paintingData = getPaintingData(rect, true, getLayerTexture(layer));
         ByteBuffer data = paintingData.data;
         // 获取这部分paintingData并把它存储下来
 
@@ -281,12 +551,12 @@ public class Painting {
         delegate.requestUndoStore().registerUndo(uuid, new Runnable() {
             @Override
             public void run() {
-                restoreSlice(slice);
+                restoreSlice(slice, layer);
             }
         });
     }
 
-    private void registerRecover(RectF rect, UUID uuid){
+    private void registerRecover(RectF rect, UUID uuid, final Layer layer){
         if (rect == null) {
             return;
         }
@@ -296,25 +566,45 @@ public class Painting {
             return;
         }
 
-        PaintingData recoverPaintingData = getRecoverPaintingData(rect);
+        PaintingData recoverPaintingData = getRecoverPaintingData(rect, getLayerTexture(layer));
         ByteBuffer data2 = recoverPaintingData.data;
         final Slice slice = new Slice(data2, rect, delegate.requestDispatchQueue());
         delegate.requestUndoStore().registerRecover(uuid, new Runnable() {
             @Override
             public void run() {
-                recoverSlice(slice);
+                recoverSlice(slice, layer);
             }
         });
     }
 
-    private void restoreSlice(final Slice slice) {
+    private void clearLayer(final Layer layer) {
         renderView.performInContext(new Runnable() {
             @Override
             public void run() {
-                ByteBuffer buffer = slice.getData();
+                RectF bounds = layer.getContentBounds();
+                layer.resetContent();
+
+                if (layer.getTexture() != 0) {
+                    clearTexture(layer.getTexture());
+                }
+                // 清空的图层不需要检查点
+                checkpointStore.removeLayer(layer);
+                layer.getCheckpointTiles().clear();
+                invalidate(bounds);
+
+                if (!isSuppressingChanges() && delegate != null) {
+                    delegate.contentChanged(bounds);
+                }
+            }
+        });
+    }
 
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
-                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, slice.getX(), slice.getY(), slice.getWidth(), slice.getHeight(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
+    private void restoreSlice(final Slice slice, final Layer layer) {
+        renderView.performInContext(new Runnable() {
+            @Override
+            public void run() {
+                uploadSlice(slice, layer);
+                invalidate(layer, slice.getBounds());
                 if (!isSuppressingChanges() && delegate != null) {
                     delegate.contentChanged(slice.getBounds());
                 }
@@ -325,14 +615,13 @@ public class Painting {
         });
     }
 
-    private void recoverSlice(final Slice slice){
+    private void recoverSlice(final Slice slice, final Layer layer){
         renderView.performInContext(new Runnable() {
             @Override
             public void run() {
-                ByteBuffer buffer = slice.getData();
-
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
-                GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, slice.getX(), slice.getY(), slice.getWidth(), slice.getHeight(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
+                uploadSlice(slice, layer);
+                layer.includeContent(slice.getBounds());
+                invalidate(layer, slice.getBounds());
                 if (!isSuppressingChanges() && delegate != null) {
                     delegate.contentChanged(slice.getBounds());
                 }
@@ -343,52 +632,193 @@ public class Painting {
         });
     }
 
+    private void uploadSlice(Slice slice, Layer layer) {
+        ByteBuffer buffer = slice.getData();
+        if (buffer == null) {
+            return;
+        }
+
+        GLState.get().bindTexture(getLayerTexture(layer));
+        GLBackend.get().glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, slice.getX(), slice.getY(), slice.getWidth(), slice.getHeight(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
+    }
+
     public void setRenderProjection(float[] proj) {
         renderProjection = proj;
     }
 
+    public void setVisibleRect(RectF rect) {
+        visibleRect = rect != null ? new RectF(rect) : null;
+    }
+
+    // 画布铺满屏幕时的缩放比例，小于1时通过代理纹理显示
+    public void setDisplayScale(float scale) {
+        displayScale = scale;
+    }
+
+    public RectF getVisibleRect() {
+        return visibleRect != null ? visibleRect : getBounds();
+    }
+
+    private void fillVisibleBuffers() {
+        // 放大后只画屏幕上能看到的那一块
+        RectF rect = getVisibleRect();
+        if (visibleVertexBuffer == null) {
+            visibleVertexBuffer = ByteBuffer.allocateDirect(8 * 4);
+            visibleVertexBuffer.order(ByteOrder.nativeOrder());
+            visibleTextureBuffer = ByteBuffer.allocateDirect(8 * 4);
+            visibleTextureBuffer.order(ByteOrder.nativeOrder());
+        }
+        visibleVertexBuffer.rewind();
+        visibleVertexBuffer.putFloat(rect.left);
+        visibleVertexBuffer.putFloat(rect.top);
+        visibleVertexBuffer.putFloat(rect.right);
+        visibleVertexBuffer.putFloat(rect.top);
+        visibleVertexBuffer.putFloat(rect.left);
+        visibleVertexBuffer.putFloat(rect.bottom);
+        visibleVertexBuffer.putFloat(rect.right);
+        visibleVertexBuffer.putFloat(rect.bottom);
+        visibleVertexBuffer.rewind();
+
+        visibleTextureBuffer.rewind();
+        visibleTextureBuffer.putFloat(rect.left / size.width);
+        visibleTextureBuffer.putFloat(rect.top / size.height);
+        visibleTextureBuffer.putFloat(rect.right / size.width);
+        visibleTextureBuffer.putFloat(rect.top / size.height);
+        visibleTextureBuffer.putFloat(rect.left / size.width);
+        visibleTextureBuffer.putFloat(rect.bottom / size.height);
+        visibleTextureBuffer.putFloat(rect.right / size.width);
+        visibleTextureBuffer.putFloat(rect.bottom / size.height);
+        visibleTextureBuffer.rewind();
+    }
+
     public void render() {
         // 绘制
         if (shaders == null) {
             return;
         }
 
+        fillVisibleBuffers();
+
         if (activePath != null) {
-            render(getPaintTexture(), activePath.getColor());
+            int index = layers.indexOf(layerForBrush(brush));
+            if (underlayIndex == index && hasContentAbove(index)) {
+                render(getPaintTexture(), activePath.getColor(), underlayTexture);
+                renderLayersAbove(index);
+            } else {
+                render(getPaintTexture(), activePath.getColor(), getDisplayTexture());
+            }
         } else {
             renderBlit();
         }
     }
 
-    private void render(int mask, int color) {
-        Shader shader = shaders.get(brush.isMosaic() ? "blitWithMosaic" : (brush.isLightSaber() ? "blitWithMaskLight" : "blitWithMask"));
+    private boolean hasContentAbove(int index) {
+        for (int a = index + 1; a < layers.size(); a++) {
+            Layer layer = layers.get(a);
+            if (!layer.isEmpty() && layer.isVisible() && layer.getTexture() != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 一笔画的过程中下面的图层不会变，每笔只合成一次
+    private void updateUnderlay(int index) {
+        if (underlayTexture == 0) {
+            underlayTexture = Texture.generateTexture(size);
+            underlayIndex = -1;
+        }
+        if (underlayIndex == index) {
+            return;
+        }
+        Shader backgroundShader = shaders.get("blit");
+        Shader layerShader = shaders.get("nonPremultipliedBlit");
+        if (backgroundShader == null || layerShader == null || bitmapTexture == null) {
+            return;
+        }
+
+        GLState.get().bindFramebuffer(getReusableFramebuffer());
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, underlayTexture, 0);
+        if (GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) == GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            GLBackend.get().glViewport(0, 0, (int) size.width, (int) size.height);
+            drawLayers(backgroundShader, layerShader, bitmapTexture.texture(), index + 1);
+            GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+            underlayIndex = index;
+        }
+        GLState.get().bindFramebuffer(0);
+    }
+
+    // 原图加上前count个图层，画到当前绑定的framebuffer
+    private void drawLayers(Shader backgroundShader, Shader layerShader, int background, int count) {
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ZERO);
+        drawTexture(backgroundShader, background);
+
+        for (int a = 0; a < count; a++) {
+            Layer layer = layers.get(a);
+            if (layer.isEmpty() || !layer.isVisible() || layer.getTexture() == 0) {
+                continue;
+            }
+            layer.getBlendMode().apply();
+            drawTexture(layerShader, layer.getTexture());
+        }
+    }
+
+    private void renderLayersAbove(int index) {
+        Shader shader = shaders.get("nonPremultipliedBlit");
         if (shader == null) {
             return;
         }
 
-        GLES20.glUseProgram(shader.program);
+        GLState.get().useProgram(shader.getProgram());
 
-        GLES20.glUniformMatrix4fv(shader.getUniform("mvpMatrix"), 1, false, FloatBuffer.wrap(renderProjection));
-        GLES20.glUniform1i(shader.getUniform("texture"), 0);
-        GLES20.glUniform1i(shader.getUniform("mask"), 1);
-        Shader.SetColorUniform(shader.getUniform("color"), color);
+        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, renderProjection, 0);
+        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
+        GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, visibleVertexBuffer);
+        GLBackend.get().glEnableVertexAttribArray(0);
+        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, visibleTextureBuffer);
+        GLBackend.get().glEnableVertexAttribArray(1);
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mask);
+        GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+        for (int a = index + 1; a < layers.size(); a++) {
+            Layer layer = layers.get(a);
+            if (layer.isEmpty() || !layer.isVisible() || layer.getTexture() == 0) {
+                continue;
+            }
+            GLState.get().bindTexture(layer.getTexture());
+            layer.getBlendMode().apply();
+            GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        }
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    }
 
-        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    private void render(int mask, int color, int texture) {
+        Shader shader = shaders.get(brush.isMosaic() ? "blitWithMosaic" : (brush.isLightSaber() ? "blitWithMaskLight" : "blitWithMask"));
+        if (shader == null) {
+            return;
+        }
+
+        GLState.get().useProgram(shader.getProgram());
 
-        GLES20.glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
-        GLES20.glEnableVertexAttribArray(0);
-        GLES20.glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
-        GLES20.glEnableVertexAttribArray(1);
+        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, renderProjection, 0);
+        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
+        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_MASK), 1);
+        Shader.SetColorUniform(shader.getUniform(Shader.UNIFORM_COLOR), color);
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+        GLState.get().bindTexture(texture);
 
-        Utils.HasGLError();
+        GLState.get().activeTexture(GLES20.GL_TEXTURE1);
+        GLState.get().bindTexture(mask);
+
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, visibleVertexBuffer);
+        GLBackend.get().glEnableVertexAttribArray(0);
+        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, visibleTextureBuffer);
+        GLBackend.get().glEnableVertexAttribArray(1);
+
+        GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 
     private void renderBlit() {
@@ -397,49 +827,139 @@ public class Painting {
             return;
         }
 
-        GLES20.glUseProgram(shader.program);
+        GLState.get().useProgram(shader.getProgram());
+
+        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, renderProjection, 0);
+        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
 
-        GLES20.glUniformMatrix4fv(shader.getUniform("mvpMatrix"), 1, false, FloatBuffer.wrap(renderProjection));
-        GLES20.glUniform1i(shader.getUniform("texture"), 0);
+        GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+        GLState.get().bindTexture(getDisplayTexture());
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
-        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, visibleVertexBuffer);
+        GLBackend.get().glEnableVertexAttribArray(0);
+        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, visibleTextureBuffer);
+        GLBackend.get().glEnableVertexAttribArray(1);
 
-        GLES20.glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
-        GLES20.glEnableVertexAttribArray(0);
-        GLES20.glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
-        GLES20.glEnableVertexAttribArray(1);
+        GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+
+    public void updateDisplay() {
+        updateComposite(getVisibleRect());
+
+        if (activePath != null && shaders != null) {
+            int index = layers.indexOf(layerForBrush(brush));
+            if (hasContentAbove(index)) {
+                updateUnderlay(index);
+            }
+        }
+
+        displayProxy.setScale(displayScale);
+        if (displayProxy.isActive() && shaders != null) {
+            displayProxy.update(getTexture(), shaders.get("nonPremultipliedBlit"), getReusableFramebuffer(), projection, vertexBuffer, textureBuffer);
+        }
+    }
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    private int getDisplayTexture() {
+        return displayProxy.isActive() ? displayProxy.getTexture() : getTexture();
+    }
 
-        Utils.HasGLError();
+    public void updateComposite() {
+        updateComposite(null);
+    }
+
+    public void updateComposite(RectF region) {
+        // 只重新合成脏掉的瓦片，region不为空时只处理和它相交的瓦片，其余的留到可见时再合成
+        if (shaders == null || bitmapTexture == null || !dirtyTiles.isDirty()) {
+            return;
+        }
+        Shader backgroundShader = shaders.get("blit");
+        Shader layerShader = shaders.get("nonPremultipliedBlit");
+        if (backgroundShader == null || layerShader == null) {
+            return;
+        }
+
+        int background = bitmapTexture.texture();
+        int composite = getTexture();
+
+        GLState.get().bindFramebuffer(getReusableFramebuffer());
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, composite, 0);
+
+        int status = GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        if (status == GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            GLBackend.get().glViewport(0, 0, (int) size.width, (int) size.height);
+            GLBackend.get().glEnable(GLES20.GL_SCISSOR_TEST);
+
+            for (int i = 0; i < dirtyTiles.getTileCount(); i++) {
+                if (!dirtyTiles.isTileDirty(i)) {
+                    continue;
+                }
+                dirtyTiles.getTileRect(i, tileRect);
+                if (region != null && !region.intersects(tileRect.left, tileRect.top, tileRect.right, tileRect.bottom)) {
+                    continue;
+                }
+                dirtyTiles.clearTile(i);
+                displayProxy.invalidate(tileRect);
+                GLBackend.get().glScissor(tileRect.left, tileRect.top, tileRect.width(), tileRect.height());
+
+                drawLayers(backgroundShader, layerShader, background, layers.size());
+            }
+
+            GLBackend.get().glDisable(GLES20.GL_SCISSOR_TEST);
+            GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        }
+        GLState.get().bindFramebuffer(0);
+    }
+
+    private void drawTexture(Shader shader, int texture) {
+        GLState.get().useProgram(shader.getProgram());
+
+        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, projection, 0);
+        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
+
+        GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+        GLState.get().bindTexture(texture);
+
+        GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
+        GLBackend.get().glEnableVertexAttribArray(0);
+        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
+        GLBackend.get().glEnableVertexAttribArray(1);
+
+        GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 
     public PaintingData getPaintingData(RectF rect, boolean undo) {
+        if (bitmapTexture != null && bitmapTexture.finishUpload()) {
+            dirtyTiles.markAllDirty();
+        }
+        updateComposite();
+        return getPaintingData(rect, undo, getTexture());
+    }
+
+    private PaintingData getPaintingData(RectF rect, boolean undo, int source) {
         int minX = (int) rect.left;
         int minY = (int) rect.top;
         int width = (int) rect.width();
         int height = (int) rect.height();
 
-        GLES20.glGenFramebuffers(1, buffers, 0);
+        GLBackend.get().glGenFramebuffers(1, buffers, 0);
         int framebuffer = buffers[0];
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        GLState.get().bindFramebuffer(framebuffer);
 
-        GLES20.glGenTextures(1, buffers, 0);
+        GLBackend.get().glGenTextures(1, buffers, 0);
         int texture = buffers[0];
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        GLState.get().bindTexture(texture);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
 
-        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
 
-        GLES20.glViewport(0, 0, (int) size.width, (int) size.height);
+        GLBackend.get().glViewport(0, 0, (int) size.width, (int) size.height);
 
         if (shaders == null) {
             return null;
@@ -448,43 +968,35 @@ public class Painting {
         if (shader == null) {
             return null;
         }
-        GLES20.glUseProgram(shader.program);
+        GLState.get().useProgram(shader.getProgram());
 
         Matrix translate = new Matrix();
         translate.preTranslate(-minX, -minY);
         float effective[] = GLMatrix.LoadGraphicsMatrix(translate);
         float finalProjection[] = GLMatrix.MultiplyMat4f(projection, effective);
 
-        GLES20.glUniformMatrix4fv(shader.getUniform("mvpMatrix"), 1, false, FloatBuffer.wrap(finalProjection));
-
-        if (undo) {
-            GLES20.glUniform1i(shader.getUniform("texture"), 0);
+        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, finalProjection, 0);
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
-        } else {
-            GLES20.glUniform1i(shader.getUniform("texture"), 0);
+        GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, bitmapTexture.texture());
+        GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+        GLState.get().bindTexture(source);
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
-        }
-        GLES20.glClearColor(0, 0, 0, 0);
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        GLBackend.get().glClearColor(0, 0, 0, 0);
+        GLBackend.get().glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
-        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
-        GLES20.glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
-        GLES20.glEnableVertexAttribArray(0);
-        GLES20.glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
-        GLES20.glEnableVertexAttribArray(1);
+        GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
+        GLBackend.get().glEnableVertexAttribArray(0);
+        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
+        GLBackend.get().glEnableVertexAttribArray(1);
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
         dataBuffer.limit(width * height * 4);
-        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, dataBuffer);
+        GLBackend.get().glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, dataBuffer);
+        recordReadback(width * height * 4);
 
         PaintingData data;
         if (undo) {
@@ -496,38 +1008,36 @@ public class Painting {
             data = new PaintingData(bitmap, null);
         }
 
-        buffers[0] = framebuffer;
-        GLES20.glDeleteFramebuffers(1, buffers, 0);
+        GLState.get().deleteFramebuffer(framebuffer);
 
-        buffers[0] = texture;
-        GLES20.glDeleteTextures(1, buffers, 0);
+        GLState.get().deleteTexture(texture);
 
         return data;
     }
 
-    public PaintingData getRecoverPaintingData(RectF rect){
+    public PaintingData getRecoverPaintingData(RectF rect, int source){
         int minX = (int) rect.left;
         int minY = (int) rect.top;
         int width = (int) rect.width();
         int height = (int) rect.height();
 
-        GLES20.glGenFramebuffers(1, recoverBuffers, 0);
+        GLBackend.get().glGenFramebuffers(1, recoverBuffers, 0);
         int framebuffer = recoverBuffers[0];
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        GLState.get().bindFramebuffer(framebuffer);
 
-        GLES20.glGenTextures(1, recoverBuffers, 0);
+        GLBackend.get().glGenTextures(1, recoverBuffers, 0);
         int texture = recoverBuffers[0];
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        GLState.get().bindTexture(texture);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexParameteri(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
 
-        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
 
-        GLES20.glViewport(0, 0, (int) size.width, (int) size.height);
+        GLBackend.get().glViewport(0, 0, (int) size.width, (int) size.height);
 
         if (shaders == null) {
             return null;
@@ -537,20 +1047,20 @@ public class Painting {
         if (shader == null) {
             return null;
         }
-        GLES20.glUseProgram(shader.program);
+        GLState.get().useProgram(shader.getProgram());
 
         Matrix translate = new Matrix();
         translate.preTranslate(-minX, -minY);
         float effective[] = GLMatrix.LoadGraphicsMatrix(translate);
         float finalProjection[] = GLMatrix.MultiplyMat4f(projection, effective);
 
-        GLES20.glUniformMatrix4fv(shader.getUniform("mvpMatrix"), 1, false, FloatBuffer.wrap(finalProjection));
+        GLBackend.get().glUniformMatrix4fv(shader.getUniform(Shader.UNIFORM_MVP_MATRIX), 1, false, finalProjection, 0);
 
 //        if (undo) {
-            GLES20.glUniform1i(shader.getUniform("texture"), 0);
+            GLBackend.get().glUniform1i(shader.getUniform(Shader.UNIFORM_TEXTURE), 0);
 
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
+            GLState.get().activeTexture(GLES20.GL_TEXTURE0);
+            GLState.get().bindTexture(source);
 //        } else {
 //            GLES20.glUniform1i(shader.getUniform("texture"), 0);
 //
@@ -560,20 +1070,21 @@ public class Painting {
 //            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
 //            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, getTexture());
 //        }
-        GLES20.glClearColor(0, 0, 0, 0);
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        GLBackend.get().glClearColor(0, 0, 0, 0);
+        GLBackend.get().glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
-        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
-        GLES20.glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
-        GLES20.glEnableVertexAttribArray(0);
-        GLES20.glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
-        GLES20.glEnableVertexAttribArray(1);
+        GLBackend.get().glVertexAttribPointer(0, 2, GLES20.GL_FLOAT, false, 8, vertexBuffer);
+        GLBackend.get().glEnableVertexAttribArray(0);
+        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, false, 8, textureBuffer);
+        GLBackend.get().glEnableVertexAttribArray(1);
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
         recoverDataBuffer.limit(width * height * 4);
-        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, recoverDataBuffer);
+        GLBackend.get().glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, recoverDataBuffer);
+        recordReadback(width * height * 4);
 
         PaintingData data;
 //        if (undo) {
@@ -586,11 +1097,9 @@ public class Painting {
             data = new PaintingData(null, recoverDataBuffer);
 //        }
 
-        recoverBuffers[0] = framebuffer;
-        GLES20.glDeleteFramebuffers(1, recoverBuffers, 0);
+        GLState.get().deleteFramebuffer(framebuffer);
 
-        recoverBuffers[0] = texture;
-        GLES20.glDeleteTextures(1, recoverBuffers, 0);
+        GLState.get().deleteTexture(texture);
 
 //        recoverDataBuffer.clear();
 
@@ -616,8 +1125,7 @@ public class Painting {
             @Override
             public void run() {
                 paused = true;
-                PaintingData data = getPaintingData(getBounds(), true);
-                backupSlice = new Slice(data.data, getBounds(), delegate.requestDispatchQueue());
+                checkpoint();
 
                 cleanResources(false);
 
@@ -627,39 +1135,123 @@ public class Painting {
         });
     }
 
+    private void checkpoint() {
+        // 只回读上次检查点之后改动过的瓦片，原图在恢复时会从bitmap重新上传
+        int written = 0;
+        for (int a = 0; a < layers.size(); a++) {
+            Layer layer = layers.get(a);
+            TileGrid tiles = layer.getCheckpointTiles();
+            if (layer.getTexture() == 0 || !tiles.isDirty()) {
+                continue;
+            }
+
+            for (int i = 0; i < tiles.getTileCount(); i++) {
+                if (!tiles.isTileDirty(i)) {
+                    continue;
+                }
+                tiles.getTileRect(i, tileRect);
+                readTexture(layer.getTexture(), tileRect, dataBuffer);
+                checkpointStore.put(layer, i, dataBuffer, new RectF(tileRect), delegate.requestDispatchQueue());
+                written++;
+            }
+            tiles.clear();
+        }
+
+        if (BuildVars.LOGS_ENABLED) {
+            FileLog.d("paint checkpoint wrote " + written + " tiles, " + checkpointStore.getTileCount() + " stored");
+        }
+    }
+
+    private void readTexture(int texture, Rect rect, ByteBuffer target) {
+        GLState.get().bindFramebuffer(getReusableFramebuffer());
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+
+        target.clear();
+        target.limit(rect.width() * rect.height() * 4);
+        if (GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) == GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            GLBackend.get().glReadPixels(rect.left, rect.top, rect.width(), rect.height(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, target);
+            recordReadback(rect.width() * rect.height() * 4);
+        }
+        GLState.get().bindFramebuffer(0);
+    }
+
+    private void recordReadback(int bytes) {
+        if (Metrics.isEnabled()) {
+            Metrics.READBACK_BYTES.add(bytes);
+            Metrics.READBACK_COUNT.increment();
+        }
+    }
+
     public void onResume() {
-        restoreSlice(backupSlice);
-        backupSlice = null;
+        renderView.performInContext(new Runnable() {
+            @Override
+            public void run() {
+                for (int a = 0; a < layers.size(); a++) {
+                    Layer layer = layers.get(a);
+                    SparseArray<Slice> tiles = checkpointStore.getTiles(layer);
+                    if (tiles == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < tiles.size(); i++) {
+                        uploadSlice(tiles.valueAt(i), layer);
+                    }
+                }
+                dirtyTiles.markAllDirty();
+            }
+        });
         paused = false;
     }
 
+    public void discardCheckpoint() {
+        checkpointStore.clear();
+    }
+
     public void cleanResources(boolean recycle) {
         if (reusableFramebuffer != 0) {
-            recoverBuffers[0] = reusableFramebuffer;
-            GLES20.glDeleteFramebuffers(1, recoverBuffers, 0);
-            reusableFramebuffer = 0;
-
-            buffers[0] = reusableFramebuffer;
-            GLES20.glDeleteFramebuffers(1, buffers, 0);
+            GLState.get().deleteFramebuffer(reusableFramebuffer);
             reusableFramebuffer = 0;
         }
 
         bitmapTexture.cleanResources(recycle);
 
-        if (paintTexture != 0) {
-            recoverBuffers[0] = paintTexture;
-            GLES20.glDeleteTextures(1, recoverBuffers, 0);
+        for (int a = 0; a < layers.size(); a++) {
+            layers.get(a).cleanResources();
+        }
+
+        if (compositeTexture != 0) {
+            GLState.get().deleteTexture(compositeTexture);
+            compositeTexture = 0;
+        }
+        if (underlayTexture != 0) {
+            GLState.get().deleteTexture(underlayTexture);
+            underlayTexture = 0;
+        }
+        underlayIndex = -1;
+        dirtyTiles.markAllDirty();
+        displayProxy.cleanResources();
 
-            buffers[0] = paintTexture;
-            GLES20.glDeleteTextures(1, buffers, 0);
+        if (paintTexture != 0) {
+            GLState.get().deleteTexture(paintTexture);
             paintTexture = 0;
         }
 
+        if (predictionTexture != 0) {
+            GLState.get().deleteTexture(predictionTexture);
+            predictionTexture = 0;
+        }
+        predictionBounds = null;
+
         if (brushTexture != null) {
             brushTexture.cleanResources(true);
             brushTexture = null;
         }
 
+        // 图集的bitmap是共用的，只删纹理
+        if (atlasTexture != null) {
+            atlasTexture.cleanResources(false);
+            atlasTexture = null;
+        }
+
         if (shaders != null) {
             for (Shader shader : shaders.values()) {
                 shader.cleanResources();
@@ -671,19 +1263,46 @@ public class Painting {
     private int getReusableFramebuffer() {
         if (reusableFramebuffer == 0) {
             int[] buffers = new int[1];
-            GLES20.glGenFramebuffers(1, buffers, 0);
+            GLBackend.get().glGenFramebuffers(1, buffers, 0);
             reusableFramebuffer = buffers[0];
-
-            Utils.HasGLError();
         }
         return reusableFramebuffer;
     }
 
     private int getTexture() {
-        if (bitmapTexture != null) {
-            return bitmapTexture.texture();
+        // 返回缓存的合成结果，由updateComposite按瓦片更新
+        if (compositeTexture == 0) {
+            compositeTexture = Texture.generateTexture(size);
+            dirtyTiles.markAllDirty();
+        }
+        return compositeTexture;
+    }
+
+    private int getLayerTexture(Layer layer) {
+        int texture = layer.getTexture();
+        if (texture == 0) {
+            texture = Texture.generateTexture(size);
+            layer.setTexture(texture);
+            clearTexture(texture);
+        }
+        return texture;
+    }
+
+    private void clearTexture(int texture) {
+        GLState.get().bindFramebuffer(getReusableFramebuffer());
+        GLBackend.get().glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+        if (GLBackend.get().glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) == GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            GLBackend.get().glClearColor(0, 0, 0, 0);
+            GLBackend.get().glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        }
+        GLState.get().bindFramebuffer(0);
+    }
+
+    private int getPredictionTexture() {
+        if (predictionTexture == 0) {
+            predictionTexture = Texture.generateTexture(size);
         }
-        return 0;
+        return predictionTexture;
     }
 
     private int getPaintTexture() {
@@ -694,6 +1313,7 @@ public class Painting {
     }
 
     public void setupShaders() {
-        shaders = ShaderSet.setup();
+        programCache.prepare();
+        shaders = ShaderSet.setup(programCache);
     }
 }
@@ -10,6 +10,7 @@ public class Path {
     private int color;
     private float baseWeight;
     private Brush brush;
+    private long touchTime;
 
     public Path(Point point) {
         points.add(point);
@@ -44,6 +45,14 @@ public class Path {
         return brush;
     }
 
+    public long getTouchTime() {
+        return touchTime;
+    }
+
+    public void setTouchTime(long time) {
+        touchTime = time;
+    }
+
     public void setup(int color, float baseWeight, Brush brush) {
         this.color = color;
         this.baseWeight = baseWeight;
@@ -7,10 +7,15 @@ import com.google.android.gms.vision.face.Landmark;
 import com.example.photopaint.views.components.Size;
 import com.example.photopaint.views.components.Point;
 
-import java.util.List;
+import java.util.Arrays;
 
 public class PhotoFace {
 
+    // 归一化到0..1的关键点{左眼x, 左眼y, 右眼x, 右眼y, 左嘴角x, 左嘴角y, 右嘴角x, 右嘴角y}，没检测到的点是NaN
+    public static final int LANDMARKS_LENGTH = 8;
+
+    private static final Size UNIT_SIZE = new Size(1, 1);
+
     private float width;
     private float angle;
 
@@ -22,40 +27,44 @@ public class PhotoFace {
     private Point mouthPoint;
     private Point chinPoint;
 
-    public PhotoFace(Face face, Bitmap sourceBitmap, Size targetSize, boolean sideward) {
-        List<Landmark> landmarks = face.getLandmarks();
-
-        Point leftEyePoint = null;
-        Point rightEyePoint = null;
-
-        Point leftMouthPoint = null;
-        Point rightMouthPoint = null;
-
-        for (Landmark landmark : landmarks) {
-            PointF point = landmark.getPosition();
-
+    public static float[] getNormalizedLandmarks(Face face, Bitmap sourceBitmap, boolean sideward) {
+        float[] result = new float[LANDMARKS_LENGTH];
+        Arrays.fill(result, Float.NaN);
+        for (Landmark landmark : face.getLandmarks()) {
+            int index;
             switch (landmark.getType()) {
-                case Landmark.LEFT_EYE: {
-                    leftEyePoint = transposePoint(point, sourceBitmap, targetSize, sideward);
-                }
-                break;
-
-                case Landmark.RIGHT_EYE: {
-                    rightEyePoint = transposePoint(point, sourceBitmap, targetSize, sideward);
-                }
-                break;
-
-                case Landmark.LEFT_MOUTH: {
-                    leftMouthPoint = transposePoint(point, sourceBitmap, targetSize, sideward);
-                }
-                break;
-
-                case Landmark.RIGHT_MOUTH: {
-                    rightMouthPoint = transposePoint(point, sourceBitmap, targetSize, sideward);
-                }
-                break;
+                case Landmark.LEFT_EYE:
+                    index = 0;
+                    break;
+                case Landmark.RIGHT_EYE:
+                    index = 2;
+                    break;
+                case Landmark.LEFT_MOUTH:
+                    index = 4;
+                    break;
+                case Landmark.RIGHT_MOUTH:
+                    index = 6;
+                    break;
+                default:
+                    continue;
             }
+            Point point = transposePoint(landmark.getPosition(), sourceBitmap, UNIT_SIZE, sideward);
+            result[index] = point.x;
+            result[index + 1] = point.y;
         }
+        return result;
+    }
+
+    public PhotoFace(Face face, Bitmap sourceBitmap, Size targetSize, boolean sideward) {
+        this(getNormalizedLandmarks(face, sourceBitmap, sideward), targetSize);
+    }
+
+    public PhotoFace(float[] landmarks, Size targetSize) {
+        Point leftEyePoint = getLandmarkPoint(landmarks, 0, targetSize);
+        Point rightEyePoint = getLandmarkPoint(landmarks, 2, targetSize);
+
+        Point leftMouthPoint = getLandmarkPoint(landmarks, 4, targetSize);
+        Point rightMouthPoint = getLandmarkPoint(landmarks, 6, targetSize);
 
         if (leftEyePoint != null && rightEyePoint != null) {
             eyesCenterPoint = new Point(0.5f * leftEyePoint.x + 0.5f * rightEyePoint.x,
@@ -86,7 +95,15 @@ public class PhotoFace {
         return eyesCenterPoint != null;
     }
 
-    private Point transposePoint(PointF point, Bitmap sourceBitmap, Size targetSize, boolean sideward) {
+    private static Point getLandmarkPoint(float[] landmarks, int index, Size targetSize) {
+        if (Float.isNaN(landmarks[index]) || Float.isNaN(landmarks[index + 1])) {
+            return null;
+        }
+        return new Point(targetSize.width * landmarks[index], targetSize.height * landmarks[index + 1]);
+    }
+
+    // 检测用的是缩小过的图，这里按它自己的宽高换算，和原图的分辨率无关
+    private static Point transposePoint(PointF point, Bitmap sourceBitmap, Size targetSize, boolean sideward) {
         float bitmapW = sideward ? sourceBitmap.getHeight() : sourceBitmap.getWidth();
         float bitmapH = sideward ? sourceBitmap.getWidth() : sourceBitmap.getHeight();
         return new Point(targetSize.width * point.x / bitmapW,
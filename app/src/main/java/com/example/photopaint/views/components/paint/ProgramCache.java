@@ -0,0 +1,183 @@
+package com.example.photopaint.views.components.paint;
+
+import android.annotation.SuppressLint;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import com.example.photopaint.helpers.ApplicationLoader;
+import com.example.photopaint.helpers.BuildVars;
+import com.example.photopaint.helpers.FileLog;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+// 链接好的program二进制缓存到磁盘，文件名由驱动信息、版本号和着色器源码算出来，换驱动或改着色器后自动失效。
+// 只有ES3的context才能用glProgramBinary，其它情况都退回到源码编译
+@SuppressLint("NewApi")
+public class ProgramCache {
+
+    private File directory;
+    private String driverKey;
+    private boolean supported;
+
+    public ProgramCache() {
+        if (ApplicationLoader.applicationContext != null) {
+            directory = new File(ApplicationLoader.applicationContext.getCacheDir(), "shaders");
+        }
+    }
+
+    // 在GL线程上调用，每个context调一次
+    public void prepare() {
+        supported = false;
+        if (directory == null || Build.VERSION.SDK_INT < 18) {
+            return;
+        }
+
+        String version = GLBackend.get().glGetString(GLES20.GL_VERSION);
+        if (version == null || !version.startsWith("OpenGL ES 3")) {
+            return;
+        }
+
+        int[] formats = new int[1];
+        GLBackend.get().glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        if (formats[0] <= 0) {
+            return;
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+
+        driverKey = GLBackend.get().glGetString(GLES20.GL_VENDOR) + "|" + GLBackend.get().glGetString(GLES20.GL_RENDERER) + "|" + version + "|" + BuildVars.BUILD_VERSION;
+        supported = true;
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    public void setRetrievable(int program) {
+        if (supported) {
+            GLBackend.get().glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+    }
+
+    public boolean load(int program, String source) {
+        if (!supported) {
+            return false;
+        }
+        File file = getFile(source);
+        if (file == null || !file.exists()) {
+            return false;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            int format = in.readInt();
+            int length = in.readInt();
+            byte[] data = new byte[length];
+            in.readFully(data);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.put(data);
+            buffer.position(0);
+            GLBackend.get().glProgramBinary(program, format, buffer, length);
+
+            int[] linkStatus = new int[1];
+            GLBackend.get().glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            if (linkStatus[0] == GLES20.GL_TRUE) {
+                return true;
+            }
+        } catch (Exception e) {
+            FileLog.e(e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (Exception ignore) {
+
+                }
+            }
+        }
+
+        // 驱动不认这份二进制，删掉后重新编译
+        file.delete();
+        return false;
+    }
+
+    public void store(int program, String source) {
+        if (!supported) {
+            return;
+        }
+        File file = getFile(source);
+        if (file == null) {
+            return;
+        }
+
+        int[] values = new int[1];
+        GLBackend.get().glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, values, 0);
+        int length = values[0];
+        if (length <= 0) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.order(ByteOrder.nativeOrder());
+        int[] formats = new int[1];
+        GLBackend.get().glGetProgramBinary(program, length, values, 0, formats, 0, buffer);
+        length = values[0];
+        if (length <= 0) {
+            return;
+        }
+
+        byte[] data = new byte[length];
+        buffer.position(0);
+        buffer.get(data);
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(file));
+            out.writeInt(formats[0]);
+            out.writeInt(length);
+            out.write(data);
+        } catch (Exception e) {
+            FileLog.e(e);
+            file.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (Exception ignore) {
+
+                }
+            }
+        }
+    }
+
+    private File getFile(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(driverKey.getBytes("UTF-8"));
+            digest.update(source.getBytes("UTF-8"));
+            byte[] hash = digest.digest();
+
+            StringBuilder name = new StringBuilder();
+            for (int a = 0; a < hash.length; a++) {
+                name.append(String.format("%02x", hash[a] & 0xff));
+            }
+            return new File(directory, name.append(".bin").toString());
+        } catch (Exception e) {
+            FileLog.e(e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.opengl.GLES20;
+import com.example.photopaint.helpers.BinaryLog;
+import com.example.photopaint.helpers.Bitmaps;
+import com.example.photopaint.helpers.BuildVars;
+import com.example.photopaint.helpers.FileLog;
+import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+
+// 原图纹理分几帧上传：先传一张小的预览图马上能显示，全尺寸纹理按水平条带每帧传一段，传完后再换上去。
+// 全尺寸的原图还在后台缩放旋转时，可以先只给一张预览图，原图好了再setBitmap
+public class ProgressiveTexture {
+
+    static final int PREVIEW_SIZE = 256;
+    // 每帧最多上传这么多字节
+    private static final int BAND_BYTES = 2 * 1024 * 1024;
+
+    private Bitmap bitmap;
+    private Bitmap preview;
+    private int previewTexture;
+    private int texture;
+    private int uploadedRows;
+    private int bandHeight;
+    private Bitmap bandBitmap;
+    private Canvas bandCanvas;
+    private long startTime;
+    // 传完过一次以后，onResume重建context时直接整张上传，不再从预览图开始分段传
+    private boolean uploadedOnce;
+
+    public ProgressiveTexture(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    // preview已经是缩放旋转好的小图，由这个对象负责回收
+    public ProgressiveTexture(Bitmap bitmap, Bitmap preview) {
+        this.bitmap = bitmap;
+        this.preview = preview;
+    }
+
+    public boolean hasBitmap() {
+        return bitmap != null;
+    }
+
+    public void setBitmap(Bitmap value) {
+        if (bitmap == null) {
+            bitmap = value;
+        }
+    }
+
+    public boolean isComplete() {
+        return bitmap != null && texture != 0 && uploadedRows >= bitmap.getHeight();
+    }
+
+    public boolean hasPendingBands() {
+        return bitmap != null && previewTexture != 0 && !bitmap.isRecycled() && !isComplete();
+    }
+
+    // 全尺寸纹理传完之前返回预览纹理，两者都按整张画布采样，调用方不用区分
+    public int texture() {
+        if (bitmap == null) {
+            if (previewTexture == 0 && preview != null && !preview.isRecycled()) {
+                startTime = System.currentTimeMillis();
+                previewTexture = new Texture(preview).texture();
+            }
+            return previewTexture;
+        }
+        if (bitmap.isRecycled()) {
+            return 0;
+        }
+        if (isComplete()) {
+            return texture;
+        }
+        if (uploadedOnce && texture == 0) {
+            texture = new Texture(bitmap).texture();
+            uploadedRows = bitmap.getHeight();
+            return texture;
+        }
+        if (previewTexture == 0) {
+            startTime = System.currentTimeMillis();
+            previewTexture = createPreviewTexture();
+            if (previewTexture == 0) {
+                // 预览图做不出来就一次性传完
+                finishUpload();
+                return texture;
+            }
+        }
+        return previewTexture;
+    }
+
+    // 上传下一段，全部传完的那一次返回true
+    public boolean uploadNextBand() {
+        if (bitmap == null || bitmap.isRecycled() || isComplete()) {
+            return false;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (texture == 0) {
+            texture = Texture.generateTexture(new Size(width, height));
+            uploadedRows = 0;
+            bandHeight = Math.max(1, Math.min(height, BAND_BYTES / (width * 4)));
+        }
+
+        int rows = Math.min(bandHeight, height - uploadedRows);
+        // 只有最后一段可能矮一些，这时换一张图，Canvas一直用同一个
+        if (bandBitmap == null || bandBitmap.getHeight() != rows) {
+            Bitmap previous = bandBitmap;
+            bandBitmap = Bitmap.createBitmap(width, rows, Bitmap.Config.ARGB_8888);
+            if (bandCanvas == null) {
+                bandCanvas = new Canvas(bandBitmap);
+            } else {
+                bandCanvas.setBitmap(bandBitmap);
+            }
+            if (previous != null) {
+                previous.recycle();
+            }
+        }
+        bandBitmap.eraseColor(0);
+        bandCanvas.drawBitmap(bitmap, 0, -uploadedRows, null);
+
+        GLState.get().bindTexture(texture);
+        GLBackend.get().texSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, uploadedRows, bandBitmap);
+        uploadedRows += rows;
+
+        if (!isComplete()) {
+            return false;
+        }
+
+        releaseBand();
+        releasePreview();
+        GLState.get().deleteTexture(previewTexture);
+        previewTexture = 0;
+        uploadedOnce = true;
+        if (BuildVars.LOGS_ENABLED) {
+            BinaryLog.d("background texture {}x{} uploaded in {}ms", width, height, System.currentTimeMillis() - startTime);
+        }
+        return true;
+    }
+
+    // 导出等需要全尺寸结果时，把剩下的一次传完
+    public boolean finishUpload() {
+        boolean changed = false;
+        while (bitmap != null && !bitmap.isRecycled() && !isComplete()) {
+            changed = uploadNextBand();
+        }
+        return changed;
+    }
+
+    private int createPreviewTexture() {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float scale = PREVIEW_SIZE / (float) Math.max(width, height);
+        if (scale >= 1.0f) {
+            return 0;
+        }
+        Bitmap preview = null;
+        try {
+            preview = Bitmaps.createScaledBitmap(bitmap, Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+        } catch (Throwable e) {
+            FileLog.e(e);
+        }
+        if (preview == null) {
+            return 0;
+        }
+
+        int result = new Texture(preview).texture();
+        if (preview != bitmap) {
+            preview.recycle();
+        }
+        return result;
+    }
+
+    private void releasePreview() {
+        if (preview != null) {
+            preview.recycle();
+            preview = null;
+        }
+    }
+
+    private void releaseBand() {
+        if (bandCanvas != null) {
+            try {
+                bandCanvas.setBitmap(null);
+            } catch (Exception ignore) {
+
+            }
+            bandCanvas = null;
+        }
+        if (bandBitmap != null) {
+            bandBitmap.recycle();
+            bandBitmap = null;
+        }
+    }
+
+    public void cleanResources(boolean recycleBitmap) {
+        GLState.get().deleteTexture(previewTexture);
+        previewTexture = 0;
+        GLState.get().deleteTexture(texture);
+        texture = 0;
+        uploadedRows = 0;
+        releaseBand();
+
+        if (recycleBitmap) {
+            releasePreview();
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.graphics.Matrix;
 import android.graphics.PointF;
 import android.graphics.RectF;
 import android.opengl.GLES20;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -238,36 +239,36 @@ public class Render {
 
         vertexData.position(0);
         FloatBuffer coordData = vertexData.slice();
-        GLES20.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, vertexDataSize, coordData);
-        GLES20.glEnableVertexAttribArray(0);
+        GLBackend.get().glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, vertexDataSize, coordData);
+        GLBackend.get().glEnableVertexAttribArray(0);
 
         vertexData.position(3);
         FloatBuffer texData = vertexData.slice();
-        GLES20.glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, true, vertexDataSize, texData);
-        GLES20.glEnableVertexAttribArray(1);
+        GLBackend.get().glVertexAttribPointer(1, 2, GLES20.GL_FLOAT, true, vertexDataSize, texData);
+        GLBackend.get().glEnableVertexAttribArray(1);
 
         vertexData.position(5);
         FloatBuffer alphaData = vertexData.slice();
-        GLES20.glVertexAttribPointer(2, 1, GLES20.GL_FLOAT, true, vertexDataSize, alphaData);
-        GLES20.glEnableVertexAttribArray(2);
+        GLBackend.get().glVertexAttribPointer(2, 1, GLES20.GL_FLOAT, true, vertexDataSize, alphaData);
+        GLBackend.get().glEnableVertexAttribArray(2);
 
         vertexData.position(6);
         FloatBuffer redData = vertexData.slice();
-        GLES20.glVertexAttribPointer(3, 1, GLES20.GL_FLOAT, true, vertexDataSize, redData);
-        GLES20.glEnableVertexAttribArray(3);
+        GLBackend.get().glVertexAttribPointer(3, 1, GLES20.GL_FLOAT, true, vertexDataSize, redData);
+        GLBackend.get().glEnableVertexAttribArray(3);
 
         vertexData.position(7);
         FloatBuffer greenData = vertexData.slice();
-        GLES20.glVertexAttribPointer(4, 1, GLES20.GL_FLOAT, true, vertexDataSize, greenData);
-        GLES20.glEnableVertexAttribArray(4);
+        GLBackend.get().glVertexAttribPointer(4, 1, GLES20.GL_FLOAT, true, vertexDataSize, greenData);
+        GLBackend.get().glEnableVertexAttribArray(4);
 
         vertexData.position(8);
         FloatBuffer blueData = vertexData.slice();
-        GLES20.glVertexAttribPointer(5, 1, GLES20.GL_FLOAT, true, vertexDataSize, blueData);
-        GLES20.glEnableVertexAttribArray(5);
+        GLBackend.get().glVertexAttribPointer(5, 1, GLES20.GL_FLOAT, true, vertexDataSize, blueData);
+        GLBackend.get().glEnableVertexAttribArray(5);
 
 
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, n);
+        GLBackend.get().glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, n);
 
         return dataBounds;
     }
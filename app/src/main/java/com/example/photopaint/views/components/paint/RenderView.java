@@ -8,14 +8,24 @@ import android.graphics.SurfaceTexture;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.TextureView;
 import android.view.View;
 
+import com.example.photopaint.helpers.BinaryLog;
+import com.example.photopaint.helpers.Bitmaps;
 import com.example.photopaint.helpers.BuildVars;
 import com.example.photopaint.helpers.DispatchQueue;
 import com.example.photopaint.helpers.FileLog;
+import com.example.photopaint.helpers.TileExecutor;
+import com.example.photopaint.helpers.Utilities;
 import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.gl.DebugGL;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+import com.example.photopaint.views.components.paint.metrics.Metrics;
+import com.example.photopaint.views.components.paint.replay.TouchRecorder;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -23,7 +33,9 @@ import javax.microedition.khronos.egl.EGLContext;
 import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.egl.EGLSurface;
 
+import java.util.ArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class RenderView extends TextureView {
 
@@ -31,6 +43,7 @@ public class RenderView extends TextureView {
         void onBeganDrawing();
         void onFinishedDrawing(boolean moved);
         boolean shouldDraw();
+        void onViewportChanged(Viewport viewport);
     }
 
     private RenderViewDelegate delegate;
@@ -38,25 +51,56 @@ public class RenderView extends TextureView {
     private DispatchQueue queue;
 
     private Painting painting;
-    private CanvasInternal internal;
+    private volatile CanvasInternal internal;
     private Input input;
-    private Bitmap bitmap;
-    private boolean transformedBitmap;
+    private Viewport viewport;
+    private ScaleGestureDetector scaleGestureDetector;
+    private boolean gesturing;
+    private float lastFocusX;
+    private float lastFocusY;
+    private Matrix transformMatrix = new Matrix();
+    // 视口变换在GL线程上只保留最后一次
+    private final Object transformKey = new Object();
+    private LatencyStats touchLatency = new LatencyStats();
+    private volatile Bitmap bitmap;
+    private volatile boolean transformedBitmap;
     private int orientation;
+    // 原图的缩放旋转在后台线程做，和EGL、着色器的初始化同时进行。在它完成之前GL线程用原图做的预览图显示第一帧，
+    // 取色也直接从原图上按对应位置取；只有导出这类要全尺寸结果的操作才等它
+    private final CountDownLatch bitmapLatch = new CountDownLatch(1);
+    private final Bitmap sourceBitmap;
+    private final int sourceOrientation;
+    private Matrix sourceInverse;
+    private long createTime;
+    private boolean startupLogged;
+    private long bitmapPrepareTime;
 
     private float weight;
+    private float brushSize;
     private int color;
     private Brush brush;
+    private TouchRecorder recorder;
 
     private boolean shuttingDown;
 
     public RenderView(Context context, Painting paint, Bitmap b, int rotation) {
         super(context);
 
-        bitmap = b;
-        orientation = rotation;
+        createTime = SystemClock.elapsedRealtime();
+        bitmap = sourceBitmap = b;
+        orientation = sourceOrientation = rotation;
         painting = paint;
         painting.setRenderView(this);
+        prepareBitmap();
+
+        viewport = new Viewport(painting.getSize());
+        scaleGestureDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                viewport.zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
 
         setSurfaceTextureListener(new SurfaceTextureListener() {
             @Override
@@ -152,17 +196,89 @@ public class RenderView extends TextureView {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if (event.getPointerCount() > 1) {
-            return false;
+        // 第一帧画出来就可以画了，背景还是预览图时笔画照常画在图层上
+        if (internal == null || !internal.initialized || !internal.ready)
+            return true;
+
+        if (recorder != null) {
+            recorder.onTouchEvent(event);
         }
 
-        if (internal == null || !internal.initialized || !internal.ready)
+        // 两指缩放和平移画布，手势开始后直到全部手指抬起都不再画
+        if (event.getPointerCount() > 1 || gesturing) {
+            processGesture(event);
             return true;
+        }
 
         input.process(event);
         return true;
     }
 
+    private void processGesture(MotionEvent event) {
+        if (!gesturing) {
+            gesturing = true;
+            input.cancel();
+        }
+
+        scaleGestureDetector.onTouchEvent(event);
+
+        int action = event.getActionMasked();
+        int skipIndex = action == MotionEvent.ACTION_POINTER_UP ? event.getActionIndex() : -1;
+        int count = 0;
+        float focusX = 0;
+        float focusY = 0;
+        for (int a = 0; a < event.getPointerCount(); a++) {
+            if (a == skipIndex) {
+                continue;
+            }
+            focusX += event.getX(a);
+            focusY += event.getY(a);
+            count++;
+        }
+        if (count > 0) {
+            focusX /= count;
+            focusY /= count;
+        }
+
+        switch (action) {
+            case MotionEvent.ACTION_MOVE: {
+                viewport.pan(focusX - lastFocusX, focusY - lastFocusY);
+                updateTransform();
+                internal.requestRender();
+            }
+            break;
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+                gesturing = false;
+            }
+            break;
+        }
+
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+    }
+
+    public LatencyStats getTouchLatency() {
+        return touchLatency;
+    }
+
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    public void resetViewport() {
+        setViewport(1.0f, 0, 0);
+    }
+
+    public void setViewport(float zoom, float translationX, float translationY) {
+        viewport.set(zoom, translationX, translationY);
+        if (internal != null) {
+            updateTransform();
+            internal.requestRender();
+        }
+    }
+
     public boolean isMosaic(){
         return this.brush.isMosaic();
     }
@@ -172,12 +288,85 @@ public class RenderView extends TextureView {
     }
 
     private int getPixelColor(int x, int y){
-        if(x >= 0 && y >= 0 && x < bitmap.getWidth() && y < bitmap.getHeight()) {
-            return bitmap.getPixel(x, y);
+        Bitmap source = bitmap;
+        if (bitmapLatch.getCount() != 0 && sourceInverse != null) {
+            // 原图还在缩放旋转，换算到原图上的位置
+            float[] point = new float[]{x + 0.5f, y + 0.5f};
+            sourceInverse.mapPoints(point);
+            source = sourceBitmap;
+            x = (int) Math.floor(point[0]);
+            y = (int) Math.floor(point[1]);
+        }
+        if(x >= 0 && y >= 0 && x < source.getWidth() && y < source.getHeight()) {
+            return source.getPixel(x, y);
         }
         return 0;
     }
 
+    private boolean isSideways(int rotation) {
+        return rotation % 360 == 90 || rotation % 360 == 270;
+    }
+
+    private void prepareBitmap() {
+        if (bitmap == null || bitmap.isRecycled()) {
+            bitmapLatch.countDown();
+            return;
+        }
+        // 和checkBitmap里的缩放旋转一致，结果平移到左上角
+        float scale = painting.getSize().width / (isSideways(orientation) ? bitmap.getHeight() : bitmap.getWidth());
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postRotate(orientation);
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        Matrix inverse = new Matrix();
+        if (matrix.invert(inverse)) {
+            sourceInverse = inverse;
+        }
+
+        Utilities.stageQueue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                long time = SystemClock.elapsedRealtime();
+                try {
+                    checkBitmap();
+                } catch (Throwable e) {
+                    FileLog.e(e);
+                } finally {
+                    bitmapPrepareTime = SystemClock.elapsedRealtime() - time;
+                    bitmapLatch.countDown();
+                }
+                // 让GL线程在下一帧换上全尺寸的原图
+                CanvasInternal canvasInternal = internal;
+                if (canvasInternal != null) {
+                    canvasInternal.requestRender();
+                }
+            }
+        });
+    }
+
+    private Bitmap createBitmap(Bitmap bitmap, float scale) {
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postRotate(orientation);
+        Bitmap result = Bitmaps.createTransformedBitmap(bitmap, matrix, true, TileExecutor.getDefault());
+        return result != null ? result : bitmap;
+    }
+
+    private void checkBitmap() {
+        Size paintingSize = painting.getSize();
+
+        if (bitmap.getWidth() != paintingSize.width || bitmap.getHeight() != paintingSize.height || orientation != 0) {
+            float bitmapWidth = isSideways(orientation) ? bitmap.getHeight() : bitmap.getWidth();
+
+            float scale = paintingSize.width / bitmapWidth;
+            bitmap = createBitmap(bitmap, scale);
+            orientation = 0;
+            transformedBitmap = true;
+        }
+    }
+
     public void setUndoStore(UndoStore store) {
         undoStore = store;
     }
@@ -199,12 +388,32 @@ public class RenderView extends TextureView {
         return 8.0f / 2048.0f * paintingWidth + (90.0f / 2048.0f * paintingWidth) * size;
     }
 
+    public TouchRecorder getRecorder() {
+        return recorder;
+    }
+
+    public void setRecorder(TouchRecorder value) {
+        recorder = value;
+        if (recorder != null) {
+            // 先记下当前的状态，回放时从这里开始
+            if (brush != null) {
+                recorder.onBrushChanged(brush);
+            }
+            recorder.onColorChanged(color);
+            recorder.onSizeChanged(brushSize);
+            recorder.onViewportChanged(viewport, getWidth(), getHeight());
+        }
+    }
+
     public int getCurrentColor() {
         return color;
     }
 
     public void setColor(int value) {
         color = value;
+        if (recorder != null) {
+            recorder.onColorChanged(value);
+        }
     }
 
     public float getCurrentWeight() {
@@ -212,7 +421,11 @@ public class RenderView extends TextureView {
     }
 
     public void setBrushSize(float size) {
+        brushSize = size;
         weight = brushWeightForSize(size);
+        if (recorder != null) {
+            recorder.onSizeChanged(size);
+        }
     }
 
     public Brush getCurrentBrush() {
@@ -222,28 +435,40 @@ public class RenderView extends TextureView {
     public void setBrush(Brush value) {
         // 给painting对象设置画笔
         painting.setBrush(brush = value);
+        if (recorder != null) {
+            recorder.onBrushChanged(value);
+        }
     }
 
     private void updateTransform() {
-        Matrix matrix = new Matrix();
-
-        float scale = painting != null ? getWidth() / painting.getSize().width : 1.0f;
-        if (scale <= 0) {
-            scale = 1.0f;
-        }
+        viewport.setViewSize(getWidth(), getHeight());
+        viewport.getMatrix(transformMatrix);
 
-        Size paintingSize = getPainting().getSize();
+        input.setMatrix(transformMatrix);
 
-        matrix.preTranslate(getWidth() / 2.0f, getHeight() / 2.0f);
-        matrix.preScale(scale, -scale);
-        matrix.preTranslate(-paintingSize.width / 2.0f, -paintingSize.height / 2.0f);
+        float proj[] = GLMatrix.LoadOrtho(0.0f, internal.bufferWidth, 0.0f, internal.bufferHeight, -1.0f, 1.0f);
+        float effectiveProjection[] = GLMatrix.LoadGraphicsMatrix(transformMatrix);
+        final float finalProjection[] = GLMatrix.MultiplyMat4f(proj, effectiveProjection);
+        final RectF visibleRect = new RectF();
+        viewport.getVisibleRect(visibleRect);
+        final float displayScale = viewport.isZoomed() ? 1.0f : viewport.getScale();
 
-        input.setMatrix(matrix);
+        // painting的投影和可见区域只在GL线程上读写，高优先级保证排在之后请求的绘制前面，连续拖动时只保留最新的
+        internal.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                painting.setRenderProjection(finalProjection);
+                painting.setVisibleRect(visibleRect);
+                painting.setDisplayScale(displayScale);
+            }
+        }, DispatchQueue.PRIORITY_HIGH, transformKey);
 
-        float proj[] = GLMatrix.LoadOrtho(0.0f, internal.bufferWidth, 0.0f, internal.bufferHeight, -1.0f, 1.0f);
-        float effectiveProjection[] = GLMatrix.LoadGraphicsMatrix(matrix);
-        float finalProjection[] = GLMatrix.MultiplyMat4f(proj, effectiveProjection);
-        painting.setRenderProjection(finalProjection);
+        if (delegate != null) {
+            delegate.onViewportChanged(viewport);
+        }
+        if (recorder != null) {
+            recorder.onViewportChanged(viewport, getWidth(), getHeight());
+        }
     }
 
     public boolean shouldDraw() {
@@ -257,6 +482,9 @@ public class RenderView extends TextureView {
     }
 
     public void onFinishedDrawing(boolean moved) {
+        if (BuildVars.LOGS_ENABLED && moved) {
+            BinaryLog.d("touch latency frames={} avg={f}ms max={}ms last={}ms", touchLatency.getCount(), BinaryLog.bits(touchLatency.getAverage()), touchLatency.getMax(), touchLatency.getLast());
+        }
         if (delegate != null) {
             delegate.onFinishedDrawing(moved);
         }
@@ -269,7 +497,10 @@ public class RenderView extends TextureView {
             performInContext(new Runnable() {
                 @Override
                 public void run() {
+                    // 缩放旋转好的原图还没交给painting时也要由它回收
+                    internal.attachBitmap(false);
                     painting.cleanResources(transformedBitmap);
+                    painting.discardCheckpoint();
                     internal.shutdown();
                     internal = null;
                 }
@@ -282,6 +513,7 @@ public class RenderView extends TextureView {
     private class CanvasInternal extends DispatchQueue {
         private final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
         private final int EGL_OPENGL_ES2_BIT = 4;
+        private final int EGL_OPENGL_ES3_BIT_KHR = 0x40;
         private SurfaceTexture surfaceTexture;
         private EGL10 egl10;
         private EGLDisplay eglDisplay;
@@ -289,13 +521,23 @@ public class RenderView extends TextureView {
         private EGLContext eglContext;
         private EGLSurface eglSurface;
         private boolean initialized;
-        private boolean ready;
+        private volatile boolean ready;
 
         private int bufferWidth;
         private int bufferHeight;
 
         private long lastRenderCallTime;
         private Runnable scheduledRunnable;
+        // 只有这个线程会切换EGL context，成功切过一次之后就不用每次再查询了
+        private boolean contextCurrent;
+        private long initTime;
+        private long bitmapWaitTime;
+        private boolean bitmapAttached;
+        private boolean firstFrameDrawn;
+
+        // performInContext提交的命令攒成一批，在GL线程上一次切好context后按顺序执行
+        private final Object commandLock = new Object();
+        private CommandBatch openBatch;
 
         public CanvasInternal(SurfaceTexture surface) {
             super("CanvasInternal");
@@ -308,35 +550,16 @@ public class RenderView extends TextureView {
                 return;
             }
 
+            initTime = SystemClock.elapsedRealtime();
             initialized = initGL();
             super.run();
         }
 
-        private boolean initGL() {
-            egl10 = (EGL10) EGLContext.getEGL();
-
-            eglDisplay = egl10.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
-            if (eglDisplay == EGL10.EGL_NO_DISPLAY) {
-                if (BuildVars.LOGS_ENABLED) {
-                    FileLog.e("eglGetDisplay failed " + GLUtils.getEGLErrorString(egl10.eglGetError()));
-                }
-                finish();
-                return false;
-            }
-
-            int[] version = new int[2];
-            if (!egl10.eglInitialize(eglDisplay, version)) {
-                if (BuildVars.LOGS_ENABLED) {
-                    FileLog.e("eglInitialize failed " + GLUtils.getEGLErrorString(egl10.eglGetError()));
-                }
-                finish();
-                return false;
-            }
-
+        private boolean createContext(int renderableType, int clientVersion) {
             int[] configsCount = new int[1];
             EGLConfig[] configs = new EGLConfig[1];
             int[] configSpec = new int[]{
-                    EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                    EGL10.EGL_RENDERABLE_TYPE, renderableType,
                     EGL10.EGL_RED_SIZE, 8,
                     EGL10.EGL_GREEN_SIZE, 8,
                     EGL10.EGL_BLUE_SIZE, 8,
@@ -349,24 +572,52 @@ public class RenderView extends TextureView {
                 if (BuildVars.LOGS_ENABLED) {
                     FileLog.e("eglChooseConfig failed " + GLUtils.getEGLErrorString(egl10.eglGetError()));
                 }
-                finish();
                 return false;
             } else if (configsCount[0] > 0) {
                 eglConfig = configs[0];
             } else {
                 if (BuildVars.LOGS_ENABLED) {
-                    FileLog.e("eglConfig not initialized");
+                    FileLog.e("eglConfig not initialized for client version " + clientVersion);
                 }
-                finish();
                 return false;
             }
 
-            int[] attrib_list = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
+            int[] attrib_list = {EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL10.EGL_NONE};
             eglContext = egl10.eglCreateContext(eglDisplay, eglConfig, EGL10.EGL_NO_CONTEXT, attrib_list);
-            if (eglContext == null) {
+            if (eglContext == null || eglContext == EGL10.EGL_NO_CONTEXT) {
                 if (BuildVars.LOGS_ENABLED) {
                     FileLog.e("eglCreateContext failed " + GLUtils.getEGLErrorString(egl10.eglGetError()));
                 }
+                eglContext = null;
+                eglConfig = null;
+                return false;
+            }
+            return true;
+        }
+
+        private boolean initGL() {
+            egl10 = GLBackend.get().getEGL();
+
+            eglDisplay = egl10.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+            if (eglDisplay == EGL10.EGL_NO_DISPLAY) {
+                if (BuildVars.LOGS_ENABLED) {
+                    FileLog.e("eglGetDisplay failed " + GLUtils.getEGLErrorString(egl10.eglGetError()));
+                }
+                finish();
+                return false;
+            }
+
+            int[] version = new int[2];
+            if (!egl10.eglInitialize(eglDisplay, version)) {
+                if (BuildVars.LOGS_ENABLED) {
+                    FileLog.e("eglInitialize failed " + GLUtils.getEGLErrorString(egl10.eglGetError()));
+                }
+                finish();
+                return false;
+            }
+
+            // 先试ES3，可以用program二进制缓存；不支持时退回ES2
+            if (!createContext(EGL_OPENGL_ES3_BIT_KHR, 3) && !createContext(EGL_OPENGL_ES2_BIT, 2)) {
                 finish();
                 return false;
             }
@@ -392,57 +643,159 @@ public class RenderView extends TextureView {
                 finish();
                 return false;
             }
+            contextCurrent = true;
+
+            // 新的context，之前记住的绑定状态都不作数了
+            GLState.get().reset();
 
-            GLES20.glEnable(GLES20.GL_BLEND);
-            GLES20.glDisable(GLES20.GL_DITHER);
-            GLES20.glDisable(GLES20.GL_STENCIL_TEST);
-            GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+            GLBackend.get().glEnable(GLES20.GL_BLEND);
+            GLBackend.get().glDisable(GLES20.GL_DITHER);
+            GLBackend.get().glDisable(GLES20.GL_STENCIL_TEST);
+            GLBackend.get().glDisable(GLES20.GL_DEPTH_TEST);
 
             painting.setupShaders();
-            checkBitmap();
-            // 把原图传到painting对象，由painting对象创建纹理
-            painting.setBitmap(bitmap);
 
-            Utils.HasGLError();
+            // 原图还没缩放旋转好时不等它，先拿原图做一张预览图显示第一帧，全尺寸的好了以后在绘制时换上
+            if (!attachBitmap(false)) {
+                Bitmap preview = createPreview();
+                if (preview != null) {
+                    painting.setPreview(preview);
+                } else {
+                    attachBitmap(true);
+                }
+            }
 
             return true;
         }
 
-        private Bitmap createBitmap(Bitmap bitmap, float scale) {
-            Matrix matrix = new Matrix();
-            matrix.setScale(scale, scale);
-            matrix.postRotate(orientation);
-            return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        // 把缩放旋转好的原图传到painting对象，由painting对象创建纹理；wait为false时原图还没好就直接返回
+        private boolean attachBitmap(boolean wait) {
+            if (bitmapAttached) {
+                return true;
+            }
+            if (bitmapLatch.getCount() != 0) {
+                if (!wait) {
+                    return false;
+                }
+                long waitTime = SystemClock.elapsedRealtime();
+                try {
+                    bitmapLatch.await();
+                } catch (InterruptedException e) {
+                    FileLog.e(e);
+                }
+                bitmapWaitTime += SystemClock.elapsedRealtime() - waitTime;
+            }
+            bitmapAttached = true;
+            boolean first = !painting.hasBitmap();
+            painting.setBitmap(bitmap);
+            if (BuildVars.LOGS_ENABLED && first) {
+                BinaryLog.d("paint bitmap attached {}ms after gl init, prepared in {}ms, gl waited {}ms", SystemClock.elapsedRealtime() - initTime, bitmapPrepareTime, bitmapWaitTime);
+            }
+            return true;
         }
 
-        private void checkBitmap() {
-            Size paintingSize = painting.getSize();
-
-            if (bitmap.getWidth() != paintingSize.width || bitmap.getHeight() != paintingSize.height || orientation != 0) {
-                float bitmapWidth = bitmap.getWidth();
-                if (orientation % 360 == 90 || orientation % 360 == 270)
-                    bitmapWidth = bitmap.getHeight();
-
-                float scale = paintingSize.width / bitmapWidth;
-                bitmap = createBitmap(bitmap, scale);
-                orientation = 0;
-                transformedBitmap = true;
+        private Bitmap createPreview() {
+            if (sourceBitmap == null || sourceBitmap.isRecycled()) {
+                return null;
+            }
+            int width = sourceBitmap.getWidth();
+            int height = sourceBitmap.getHeight();
+            float scale = Math.min(1.0f, ProgressiveTexture.PREVIEW_SIZE / (float) Math.max(width, height));
+            Matrix matrix = new Matrix();
+            matrix.setScale(scale, scale);
+            matrix.postRotate(sourceOrientation);
+            Bitmap preview = null;
+            try {
+                preview = Bitmaps.createBitmap(sourceBitmap, 0, 0, width, height, matrix, true);
+            } catch (Throwable e) {
+                FileLog.e(e);
             }
+            // 原图本身就很小时可能直接返回原图，这种情况直接等全尺寸的
+            return preview != sourceBitmap ? preview : null;
         }
 
         private boolean setCurrentContext() {
             if (!initialized) {
                 return false;
             }
+            if (contextCurrent) {
+                return true;
+            }
 
             if (!eglContext.equals(egl10.eglGetCurrentContext()) || !eglSurface.equals(egl10.eglGetCurrentSurface(EGL10.EGL_DRAW))) {
                 if (!egl10.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
                     return false;
                 }
             }
+            contextCurrent = true;
             return true;
         }
 
+        private boolean isCurrent() {
+            return internal == CanvasInternal.this && initialized;
+        }
+
+        private class CommandBatch implements Runnable {
+
+            private final ArrayList<Runnable> commands = new ArrayList<>();
+
+            @Override
+            public void run() {
+                synchronized (commandLock) {
+                    if (openBatch == this) {
+                        openBatch = null;
+                    }
+                }
+                boolean execute = isCurrent() && setCurrentContext();
+                for (int a = 0; a < commands.size(); a++) {
+                    Runnable command = commands.get(a);
+                    // 前面的命令可能已经把这个context关掉了（Painting.onPause），后面的不能再在死掉的context里重建资源
+                    execute = execute && isCurrent();
+                    if (execute) {
+                        command.run();
+                    } else if (command instanceof SyncCommand) {
+                        // 不执行也要放行等待的线程
+                        ((SyncCommand) command).cancel();
+                    }
+                }
+            }
+        }
+
+        public void enqueueCommand(Runnable command) {
+            CommandBatch batch = null;
+            synchronized (commandLock) {
+                if (openBatch == null) {
+                    openBatch = batch = new CommandBatch();
+                }
+                openBatch.commands.add(command);
+            }
+            if (batch != null) {
+                onTaskPosted();
+                postRunnable(batch, PRIORITY_NORMAL, null);
+            }
+        }
+
+        // 绘制以外的任务排进来以后，后面的命令要进新的一批，不能跑到这个任务前面去
+        @Override
+        public void postRunnable(Runnable runnable, int priority, Object key) {
+            if (priority != PRIORITY_HIGH && !(runnable instanceof CommandBatch)) {
+                synchronized (commandLock) {
+                    openBatch = null;
+                }
+            }
+            super.postRunnable(runnable, priority, key);
+        }
+
+        // 等之前提交的命令都执行完，在GL线程上调用时直接返回
+        public boolean fence(long timeout) {
+            if (Thread.currentThread() == this) {
+                return true;
+            }
+            SyncCommand command = new SyncCommand(null);
+            enqueueCommand(command);
+            return command.await(timeout);
+        }
+
         private Runnable drawRunnable = new Runnable() {
             @Override
             public void run() {
@@ -452,27 +805,66 @@ public class RenderView extends TextureView {
                 }
 
                 setCurrentContext();
+                attachBitmap(false);
+
+                long frameStart = Metrics.isEnabled() ? System.nanoTime() : 0;
 
-                GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
-                GLES20.glViewport(0, 0, bufferWidth, bufferHeight);
+                painting.updateDisplay();
 
-                GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
-                GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+                GLState.get().bindFramebuffer(0);
+                GLBackend.get().glViewport(0, 0, bufferWidth, bufferHeight);
+
+                GLBackend.get().glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+                GLBackend.get().glClear(GLES20.GL_COLOR_BUFFER_BIT);
 
                 painting.render();
 
-                GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+                GLState.get().blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
-                egl10.eglSwapBuffers(eglDisplay, eglSurface);
+                GLBackend.get().eglSwapBuffers(egl10, eglDisplay, eglSurface);
 
-                if (!ready) {
-                    queue.postRunnable(new Runnable() {
-                        @Override
-                        public void run() {
-                            ready = true;
+                if (frameStart != 0) {
+                    Metrics.FRAME_TIME.record((System.nanoTime() - frameStart) / 1000);
+                }
+
+                GLState glState = GLState.get();
+                glState.endFrame();
+                if (BuildVars.LOGS_ENABLED && glState.getFrames() % 120 == 0) {
+                    FileLog.d("gl state " + glState);
+                    if (BuildVars.DEBUG_GL && GLBackend.get() instanceof DebugGL) {
+                        FileLog.d(((DebugGL) GLBackend.get()).dumpStats());
+                    }
+                }
+
+                long touchTime = painting.takePendingTouchTime();
+                if (touchTime != 0) {
+                    long latency = SystemClock.uptimeMillis() - touchTime;
+                    touchLatency.add(latency);
+                    if (Metrics.isEnabled()) {
+                        Metrics.TOUCH_LATENCY.record(latency);
+                    }
+                }
+
+                if (painting.uploadBackground()) {
+                    requestRender();
+                }
+
+                // 每次重建context都会走到这里，打开编辑器的耗时只记第一次，之后记从initGL开始的恢复耗时
+                if (!firstFrameDrawn) {
+                    firstFrameDrawn = true;
+                    if (BuildVars.LOGS_ENABLED) {
+                        long now = SystemClock.elapsedRealtime();
+                        if (!startupLogged) {
+                            startupLogged = true;
+                            BinaryLog.d("paint first frame in {}ms, {}ms after gl init, full bitmap attached {}", now - createTime, now - initTime, bitmapAttached ? 1 : 0);
+                        } else {
+                            BinaryLog.d("paint context restored, first frame {}ms after gl init", now - initTime);
                         }
-                    }, 200);
+                    }
                 }
+
+                // 第一帧上屏以后就接受触摸
+                ready = true;
             }
         };
 
@@ -481,15 +873,35 @@ public class RenderView extends TextureView {
             bufferHeight = height;
         }
 
+        // 还没画的帧只保留一个。和命令用同一个优先级，画的时候之前提交的命令都已经执行完，
+        // 投递时会结束当前这批命令，之后提交的进下一批
         public void requestRender() {
-            postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    drawRunnable.run();
-                }
-            });
+            onTaskPosted();
+            postRunnable(drawRunnable, PRIORITY_NORMAL, drawRunnable);
+        }
+
+        void onTaskPosted() {
+            if (Metrics.isEnabled()) {
+                Metrics.GL_QUEUE_DEPTH.record(getPendingCount());
+            }
+        }
+
+        @Override
+        protected void onTaskCompleted(int priority, long waitTime, long runTime) {
+            if (Metrics.isEnabled()) {
+                Metrics.GL_TASK_WAIT.record(waitTime);
+                Metrics.GL_TASK_RUN.record(runTime);
+            }
+        }
+
+        @Override
+        protected void onTaskCoalesced(int priority) {
+            if (Metrics.isEnabled()) {
+                Metrics.GL_TASKS_COALESCED.increment();
+            }
         }
 
+        // 只在GL线程上调用，scheduledRunnable不加锁
         public void scheduleRedraw() {
             if (scheduledRunnable != null) {
                 cancelRunnable(scheduledRunnable);
@@ -508,6 +920,7 @@ public class RenderView extends TextureView {
         }
 
         public void finish() {
+            contextCurrent = false;
             if (eglSurface != null) {
                 egl10.eglMakeCurrent(eglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
                 egl10.eglDestroySurface(eglDisplay, eglSurface);
@@ -540,22 +953,58 @@ public class RenderView extends TextureView {
             if (!initialized) {
                 return null;
             }
-            final CountDownLatch countDownLatch = new CountDownLatch(1);
             final Bitmap object[] = new Bitmap[1];
+            SyncCommand command = new SyncCommand(new Runnable() {
+                @Override
+                public void run() {
+                    // 导出要全尺寸的原图，只有这里会等后台的缩放旋转
+                    attachBitmap(true);
+                    Painting.PaintingData data = painting.getPaintingData(new RectF(0, 0, painting.getSize().width, painting.getSize().height), false);
+                    object[0] = data.bitmap;
+                }
+            });
+            enqueueCommand(command);
+            command.await(0);
+            return object[0];
+        }
+    }
+
+    // 在GL线程上执行action，调用线程等它结束；命令被丢弃时也会返回
+    private static class SyncCommand implements Runnable {
+
+        private final Runnable action;
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        SyncCommand(Runnable action) {
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
             try {
-                postRunnable(new Runnable() {
-                    @Override
-                    public void run() {
-                        Painting.PaintingData data = painting.getPaintingData(new RectF(0, 0, painting.getSize().width, painting.getSize().height), false);
-                        object[0] = data.bitmap;
-                        countDownLatch.countDown();
-                    }
-                });
-                countDownLatch.await();
+                if (action != null) {
+                    action.run();
+                }
+            } finally {
+                latch.countDown();
+            }
+        }
+
+        void cancel() {
+            latch.countDown();
+        }
+
+        boolean await(long timeout) {
+            try {
+                if (timeout <= 0) {
+                    latch.await();
+                    return true;
+                }
+                return latch.await(timeout, TimeUnit.MILLISECONDS);
             } catch (Exception e) {
                 FileLog.e(e);
             }
-            return object[0];
+            return false;
         }
     }
 
@@ -568,16 +1017,12 @@ public class RenderView extends TextureView {
             return;
         }
 
-        internal.postRunnable(new Runnable() {
-            @Override
-            public void run() {
-                if (internal == null || !internal.initialized) {
-                    return;
-                }
+        internal.enqueueCommand(action);
+    }
 
-                internal.setCurrentContext();
-                action.run();
-            }
-        });
+    // 等到之前performInContext提交的命令都在GL线程上执行完，超时或者没有GL线程时返回false
+    public boolean fence(long timeout) {
+        CanvasInternal canvasInternal = internal;
+        return canvasInternal != null && canvasInternal.fence(timeout);
     }
 }
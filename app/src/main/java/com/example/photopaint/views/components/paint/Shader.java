@@ -4,22 +4,70 @@ import android.graphics.Color;
 import android.opengl.GLES20;
 import com.example.photopaint.helpers.BuildVars;
 import com.example.photopaint.helpers.FileLog;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Shader {
 
+    // 常用uniform的固定槽位，链接后就查好位置，绘制时按下标取，不用再查表
+    public static final int UNIFORM_MVP_MATRIX = 0;
+    public static final int UNIFORM_TEXTURE = 1;
+    public static final int UNIFORM_MASK = 2;
+    public static final int UNIFORM_COLOR = 3;
+    public static final int UNIFORM_STAMP_RECT = 4;
+    private static final String[] UNIFORM_NAMES = new String[]{"mvpMatrix", "texture", "mask", "color", "stampRect"};
+
     protected int program;
     private int vertexShader;
     private int fragmentShader;
 
     protected Map<String, Integer> uniformsMap = new HashMap<>();
+    private int[] uniformSlots = new int[UNIFORM_NAMES.length];
+
+    private String vertexSource;
+    private String fragmentSource;
+    private String[] attributes;
+    private String[] uniforms;
+    private ProgramCache cache;
+    private boolean failed;
 
     public Shader(String vertexShader, String fragmentShader, String attributes[], String uniforms[]) {
-        this.program = GLES20.glCreateProgram();
+        this(vertexShader, fragmentShader, attributes, uniforms, null);
+        getProgram();
+    }
 
-        CompilationResult vResult = compileShader(GLES20.GL_VERTEX_SHADER, vertexShader);
+    // 只记下源码，第一次用到时才编译链接
+    public Shader(String vertexShader, String fragmentShader, String attributes[], String uniforms[], ProgramCache programCache) {
+        vertexSource = vertexShader;
+        fragmentSource = fragmentShader;
+        this.attributes = attributes;
+        this.uniforms = uniforms;
+        cache = programCache;
+    }
+
+    public int getProgram() {
+        if (program == 0 && !failed) {
+            link();
+        }
+        return program;
+    }
+
+    private void link() {
+        program = GLBackend.get().glCreateProgram();
+
+        String cacheKey = null;
+        if (cache != null && cache.isSupported()) {
+            cacheKey = vertexSource + "\n" + fragmentSource + "\n" + Arrays.toString(attributes);
+            if (cache.load(program, cacheKey)) {
+                loadUniforms();
+                return;
+            }
+        }
+
+        CompilationResult vResult = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource);
         if (vResult.status == GLES20.GL_FALSE) {
             if (BuildVars.LOGS_ENABLED) {
                 FileLog.e("Vertex shader compilation failed");
@@ -28,7 +76,7 @@ public class Shader {
             return;
         }
 
-        CompilationResult fResult = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);
+        CompilationResult fResult = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
         if (fResult.status == GLES20.GL_FALSE) {
             if (BuildVars.LOGS_ENABLED) {
                 FileLog.e("Fragment shader compilation failed");
@@ -37,11 +85,15 @@ public class Shader {
             return;
         }
 
-        GLES20.glAttachShader(program, vResult.shader);
-        GLES20.glAttachShader(program, fResult.shader);
+        GLBackend.get().glAttachShader(program, vResult.shader);
+        GLBackend.get().glAttachShader(program, fResult.shader);
 
         for (int i = 0; i < attributes.length; i++) {
-            GLES20.glBindAttribLocation(program, i, attributes[i]);
+            GLBackend.get().glBindAttribLocation(program, i, attributes[i]);
+        }
+
+        if (cacheKey != null) {
+            cache.setRetrievable(program);
         }
 
         if (linkProgram(program) == GLES20.GL_FALSE) {
@@ -49,24 +101,39 @@ public class Shader {
             return;
         }
 
-        for (String uniform : uniforms) {
-            uniformsMap.put(uniform, GLES20.glGetUniformLocation(program, uniform));
-        }
+        loadUniforms();
 
         if (vResult.shader != 0) {
-            GLES20.glDeleteShader(vResult.shader);
+            GLBackend.get().glDeleteShader(vResult.shader);
         }
 
         if (fResult.shader != 0) {
-            GLES20.glDeleteShader(fResult.shader);
+            GLBackend.get().glDeleteShader(fResult.shader);
+        }
+
+        if (cacheKey != null) {
+            cache.store(program, cacheKey);
+        }
+    }
+
+    private void loadUniforms() {
+        for (String uniform : uniforms) {
+            uniformsMap.put(uniform, GLBackend.get().glGetUniformLocation(program, uniform));
+        }
+        for (int a = 0; a < UNIFORM_NAMES.length; a++) {
+            Integer location = uniformsMap.get(UNIFORM_NAMES[a]);
+            uniformSlots[a] = location != null ? location : -1;
         }
     }
 
     public void cleanResources() {
         if (program != 0) {
-            GLES20.glDeleteProgram(vertexShader);
+            GLState.get().onProgramDeleted(program);
+            GLBackend.get().glDeleteProgram(program);
             program = 0;
         }
+        uniformsMap.clear();
+        failed = false;
     }
 
     private class CompilationResult {
@@ -79,20 +146,29 @@ public class Shader {
         }
     }
 
+    public int getUniform(int slot) {
+        if (program == 0) {
+            getProgram();
+        }
+        return uniformSlots[slot];
+    }
+
     public int getUniform(String key) {
-        return uniformsMap.get(key);
+        getProgram();
+        Integer location = uniformsMap.get(key);
+        return location != null ? location : -1;
     }
 
     private CompilationResult compileShader(int type, String shaderCode) {
-        int shader = GLES20.glCreateShader(type);
-        GLES20.glShaderSource(shader, shaderCode);
-        GLES20.glCompileShader(shader);
+        int shader = GLBackend.get().glCreateShader(type);
+        GLBackend.get().glShaderSource(shader, shaderCode);
+        GLBackend.get().glCompileShader(shader);
 
         int[] compileStatus = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+        GLBackend.get().glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
         if (compileStatus[0] == GLES20.GL_FALSE) {
             if (BuildVars.LOGS_ENABLED) {
-                FileLog.e(GLES20.glGetShaderInfoLog(shader));
+                FileLog.e(GLBackend.get().glGetShaderInfoLog(shader));
             }
         }
 
@@ -100,13 +176,13 @@ public class Shader {
     }
 
     private int linkProgram(int program) {
-        GLES20.glLinkProgram(program);
+        GLBackend.get().glLinkProgram(program);
 
         int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        GLBackend.get().glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
         if (linkStatus[0] == GLES20.GL_FALSE) {
             if (BuildVars.LOGS_ENABLED) {
-                FileLog.e(GLES20.glGetProgramInfoLog(program));
+                FileLog.e(GLBackend.get().glGetProgramInfoLog(program));
             }
         }
 
@@ -115,16 +191,19 @@ public class Shader {
 
     private void destroyShader(int vertexShader, int fragmentShader, int program) {
         if (vertexShader != 0) {
-            GLES20.glDeleteShader(vertexShader);
+            GLBackend.get().glDeleteShader(vertexShader);
         }
 
         if (fragmentShader != 0) {
-            GLES20.glDeleteShader(fragmentShader);
+            GLBackend.get().glDeleteShader(fragmentShader);
         }
 
         if (program != 0) {
-            GLES20.glDeleteProgram(vertexShader);
+            GLState.get().onProgramDeleted(program);
+            GLBackend.get().glDeleteProgram(program);
         }
+        this.program = 0;
+        failed = true;
     }
 
     public static void SetColorUniform(int location, int color) {
@@ -133,6 +212,6 @@ public class Shader {
         float b = Color.blue(color) / 255.0f;
         float a = Color.alpha(color) / 255.0f;
 
-        GLES20.glUniform4f(location, r, g, b, a);
+        GLBackend.get().glUniform4f(location, r, g, b, a);
     }
 }
@@ -18,6 +18,7 @@ public class ShaderSet {
     private static final String PAINT_BRUSH_VSH = "" +
             "precision highp float; " +
             "uniform mat4 mvpMatrix; " +
+            "uniform vec4 stampRect; " +
             "attribute vec4 inPosition; " +
             "attribute vec2 inTexcoord; " +
             "attribute float alpha; " +
@@ -32,7 +33,7 @@ public class ShaderSet {
             "varying float varDepth; " +
             "void main (void) {" +
             " gl_Position = mvpMatrix * inPosition;" +
-            " varTexcoord = inTexcoord;" +
+            " varTexcoord = stampRect.xy + inTexcoord * stampRect.zw;" +
             " varIntensity = alpha;" +
             " varRed = inRed;" +
             " varGreen = inGreen;" +
@@ -190,14 +191,14 @@ public class ShaderSet {
         shader.put(VERTEX, PAINT_BRUSH_VSH);
         shader.put(FRAGMENT, PAINT_BRUSH_FSH);
         shader.put(ATTRIBUTES, new String[]{"inPosition", "inTexcoord", "alpha"});
-        shader.put(UNIFORMS, new String[]{"mvpMatrix", "texture"});
+        shader.put(UNIFORMS, new String[]{"mvpMatrix", "texture", "stampRect"});
         result.put("brush", Collections.unmodifiableMap(shader));
 
         shader = new HashMap<>();
         shader.put(VERTEX, PAINT_BRUSH_VSH);
         shader.put(FRAGMENT, PAINT_BRUSHLIGHT_FSH);
         shader.put(ATTRIBUTES, new String[]{"inPosition", "inTexcoord", "alpha"});
-        shader.put(UNIFORMS, new String[]{"mvpMatrix", "texture"});
+        shader.put(UNIFORMS, new String[]{"mvpMatrix", "texture", "stampRect"});
         result.put("brushLight", Collections.unmodifiableMap(shader));
 
         shader = new HashMap<>();
@@ -246,7 +247,7 @@ public class ShaderSet {
         shader.put(VERTEX, PAINT_BRUSH_VSH);
         shader.put(FRAGMENT, PAINT_MOSAICBRUSH_FSH);
         shader.put(ATTRIBUTES, new String[]{"inPosition", "inTexcoord", "alpha"});
-        shader.put(UNIFORMS, new String[]{"mvpMatrix", "texture"});
+        shader.put(UNIFORMS, new String[]{"mvpMatrix", "texture", "stampRect"});
         result.put("mosaicBrush", Collections.unmodifiableMap(shader));
 
         shader = new HashMap<>();
@@ -266,7 +267,8 @@ public class ShaderSet {
         return Collections.unmodifiableMap(result);
     }
 
-    public static Map<String, Shader> setup() {
+    // 着色器在第一次使用时才编译，cache不为空时优先从磁盘加载program二进制
+    public static Map<String, Shader> setup(ProgramCache cache) {
         Map<String, Shader> result = new HashMap<>();
 
         for (Map.Entry<String, Map<String, Object>> entry : AVAILBALBE_SHADERS.entrySet()) {
@@ -277,7 +279,7 @@ public class ShaderSet {
             String[] attributes = (String[]) value.get(ATTRIBUTES);
             String[] uniforms = (String[]) value.get(UNIFORMS);
 
-            Shader shader = new Shader(vertex, fragment, attributes, uniforms);
+            Shader shader = new Shader(vertex, fragment, attributes, uniforms, cache);
             result.put(entry.getKey(), shader);
         }
 
@@ -4,6 +4,7 @@ import android.graphics.RectF;
 import com.example.photopaint.helpers.ApplicationLoader;
 import com.example.photopaint.helpers.DispatchQueue;
 import com.example.photopaint.helpers.FileLog;
+import com.example.photopaint.views.components.paint.metrics.Metrics;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -16,6 +17,8 @@ import java.util.zip.Inflater;
 public class Slice {
     private RectF bounds;
     private File file;
+    // 还没压缩落盘的数据，压缩完之前getData()直接返回它
+    private ByteBuffer pendingData;
 
     public Slice(final ByteBuffer data, RectF rect, DispatchQueue queue) {
         bounds = rect;
@@ -30,17 +33,53 @@ public class Slice {
         if (file == null)
             return;
 
-        storeData(data);
+        if (queue == null) {
+            storeData(file, data);
+            return;
+        }
+
+        // data是GL线程复用的缓冲区，先拷一份，压缩放到低优先级任务里，不和绘制抢时间
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        pendingData = ByteBuffer.wrap(copy);
+        queue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                // 压缩不拿锁，撤销时getData()可以直接返回pendingData；写完再在锁里换掉
+                ByteBuffer data;
+                File target;
+                synchronized (Slice.this) {
+                    data = pendingData;
+                    target = file;
+                }
+                if (data == null || target == null) {
+                    return;
+                }
+                boolean stored = storeData(target, data);
+                synchronized (Slice.this) {
+                    if (file == target) {
+                        if (stored) {
+                            pendingData = null;
+                        }
+                    } else {
+                        // 压缩期间已经cleanResources了，写出来的文件没人要
+                        target.delete();
+                    }
+                }
+            }
+        }, DispatchQueue.PRIORITY_LOW, null);
     }
 
-    public void cleanResources() {
+    public synchronized void cleanResources() {
+        pendingData = null;
         if (file != null) {
             file.delete();
             file = null;
         }
     }
 
-    private void storeData(ByteBuffer data) {
+    private static boolean storeData(File file, ByteBuffer data) {
+        long time = Metrics.isEnabled() ? System.nanoTime() : 0;
         try {
             final byte[] input = data.array();
             FileOutputStream fos = new FileOutputStream(file);
@@ -59,10 +98,19 @@ public class Slice {
             fos.close();
         } catch (Exception e) {
             FileLog.e(e);
+            return false;
+        }
+        if (time != 0) {
+            Metrics.SLICE_COMPRESS_TIME.record((System.nanoTime() - time) / 1000);
         }
+        return true;
     }
 
-    public ByteBuffer getData() {
+    public synchronized ByteBuffer getData() {
+        if (pendingData != null) {
+            return pendingData.duplicate();
+        }
+        long time = Metrics.isEnabled() ? System.nanoTime() : 0;
         try {
             byte[] input = new byte[1024];
             byte[] output = new byte[1024];
@@ -95,6 +143,10 @@ public class Slice {
             bos.close();
             fin.close();
 
+            if (time != 0) {
+                Metrics.SLICE_DECOMPRESS_TIME.record((System.nanoTime() - time) / 1000);
+            }
+
             return result;
         } catch (Exception e) {
             FileLog.e(e);
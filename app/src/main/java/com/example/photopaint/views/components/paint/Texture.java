@@ -2,8 +2,8 @@ package com.example.photopaint.views.components.paint;
 
 import android.graphics.Bitmap;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
 
 public class Texture {
 
@@ -19,8 +19,7 @@ public class Texture {
             return;
         }
 
-        int[] textures = new int[]{texture};
-        GLES20.glDeleteTextures(1, textures, 0);
+        GLState.get().deleteTexture(texture);
         texture = 0;
 
         if (recycleBitmap) {
@@ -42,48 +41,46 @@ public class Texture {
         }
 
         int[] textures = new int[1];
-        GLES20.glGenTextures(1, textures, 0);
+        GLBackend.get().glGenTextures(1, textures, 0);
         texture = textures[0];
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLState.get().bindTexture(texture);
 
         boolean mipMappable = false; //isPOT(bitmap.getWidth()) && isPOT(bitmap.getHeight());
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, mipMappable ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, mipMappable ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
 
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        GLBackend.get().texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 
         if (mipMappable) {
-            GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+            GLBackend.get().glGenerateMipmap(GLES20.GL_TEXTURE_2D);
         }
 
-        Utils.HasGLError();
-
         return texture;
     }
 
     public static int generateTexture(Size size) {
         int texture;
         int[] textures = new int[1];
-        GLES20.glGenTextures(1, textures, 0);
+        GLBackend.get().glGenTextures(1, textures, 0);
         texture = textures[0];
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLState.get().bindTexture(texture);
 
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLBackend.get().glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
 
         int width = (int) size.width;
         int height = (int) size.height;
         int format = GLES20.GL_RGBA;
         int type = GLES20.GL_UNSIGNED_BYTE;
 
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, type, null);
+        GLBackend.get().glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, type, null);
 
         return texture;
     }
@@ -0,0 +1,98 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import com.example.photopaint.views.components.Size;
+
+public class TileGrid {
+
+    public static final int TILE_SIZE = 256;
+
+    private int width;
+    private int height;
+    private int columns;
+    private int rows;
+    private boolean[] dirty;
+    private int dirtyCount;
+
+    public TileGrid(Size size) {
+        width = (int) size.width;
+        height = (int) size.height;
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        dirty = new boolean[columns * rows];
+
+        markAllDirty();
+    }
+
+    public int getTileCount() {
+        return dirty.length;
+    }
+
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    public boolean isDirty() {
+        return dirtyCount > 0;
+    }
+
+    public boolean isTileDirty(int index) {
+        return dirty[index];
+    }
+
+    public void markDirty(RectF rect) {
+        if (rect == null) {
+            return;
+        }
+
+        int minColumn = Math.max(0, (int) Math.floor(rect.left) / TILE_SIZE);
+        int minRow = Math.max(0, (int) Math.floor(rect.top) / TILE_SIZE);
+        int maxColumn = Math.min(columns - 1, (int) Math.ceil(rect.right) / TILE_SIZE);
+        int maxRow = Math.min(rows - 1, (int) Math.ceil(rect.bottom) / TILE_SIZE);
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                markTileDirty(row * columns + column);
+            }
+        }
+    }
+
+    public void markTileDirty(int index) {
+        if (!dirty[index]) {
+            dirty[index] = true;
+            dirtyCount++;
+        }
+    }
+
+    public void clearTile(int index) {
+        if (dirty[index]) {
+            dirty[index] = false;
+            dirtyCount--;
+        }
+    }
+
+    public void markAllDirty() {
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] = true;
+        }
+        dirtyCount = dirty.length;
+    }
+
+    public void clear() {
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] = false;
+        }
+        dirtyCount = 0;
+    }
+
+    public void getTileRect(int index, Rect out) {
+        int column = index % columns;
+        int row = index / columns;
+
+        out.left = column * TILE_SIZE;
+        out.top = row * TILE_SIZE;
+        out.right = Math.min(width, out.left + TILE_SIZE);
+        out.bottom = Math.min(height, out.top + TILE_SIZE);
+    }
+}
@@ -1,19 +1,9 @@
 package com.example.photopaint.views.components.paint;
 
 import android.graphics.RectF;
-import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.util.Log;
 
 public class Utils {
 
-    public static void HasGLError() {
-        int error = GLES20.glGetError();
-        if (error != 0) {
-            Log.d("Paint", GLUtils.getEGLErrorString(error));
-        }
-    }
-
     public static void RectFIntegral(RectF rect) {
         rect.left = (int) Math.floor(rect.left);
         rect.top = (int) Math.floor(rect.top);
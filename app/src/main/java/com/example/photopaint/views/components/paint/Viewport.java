@@ -0,0 +1,120 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import com.example.photopaint.views.components.Size;
+
+// 画布的缩放和平移，zoom为1时画布正好铺满view的宽度；坐标都是view里从上往下的像素坐标
+public class Viewport {
+
+    public static final float MAX_ZOOM = 8.0f;
+
+    private Size paintingSize;
+    private float viewWidth;
+    private float viewHeight;
+    private float fitScale = 1.0f;
+    private float zoom = 1.0f;
+    private float translationX;
+    private float translationY;
+
+    public Viewport(Size size) {
+        paintingSize = size;
+    }
+
+    public void setViewSize(float width, float height) {
+        viewWidth = width;
+        viewHeight = height;
+        fitScale = paintingSize.width > 0 ? width / paintingSize.width : 1.0f;
+        if (fitScale <= 0) {
+            fitScale = 1.0f;
+        }
+        clampTranslation();
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
+    public boolean isZoomed() {
+        return zoom > 1.0f;
+    }
+
+    // painting坐标到view坐标的总缩放
+    public float getScale() {
+        return fitScale * zoom;
+    }
+
+    public float getOffsetX() {
+        return viewWidth / 2.0f + translationX - getScale() * paintingSize.width / 2.0f;
+    }
+
+    public float getOffsetY() {
+        return viewHeight / 2.0f + translationY - getScale() * paintingSize.height / 2.0f;
+    }
+
+    public void zoom(float factor, float focusX, float focusY) {
+        float value = Math.max(1.0f, Math.min(MAX_ZOOM, zoom * factor));
+        float f = value / zoom;
+        zoom = value;
+
+        // 保持焦点下面的画布位置不动
+        float centerX = viewWidth / 2.0f + translationX;
+        float centerY = viewHeight / 2.0f + translationY;
+        translationX = focusX - (focusX - centerX) * f - viewWidth / 2.0f;
+        translationY = focusY - (focusY - centerY) * f - viewHeight / 2.0f;
+        clampTranslation();
+    }
+
+    public void pan(float dx, float dy) {
+        translationX += dx;
+        translationY += dy;
+        clampTranslation();
+    }
+
+    public float getTranslationX() {
+        return translationX;
+    }
+
+    public float getTranslationY() {
+        return translationY;
+    }
+
+    public void set(float zoom, float translationX, float translationY) {
+        this.zoom = Math.max(1.0f, Math.min(MAX_ZOOM, zoom));
+        this.translationX = translationX;
+        this.translationY = translationY;
+        clampTranslation();
+    }
+
+    public void reset() {
+        zoom = 1.0f;
+        translationX = 0;
+        translationY = 0;
+    }
+
+    private void clampTranslation() {
+        float maxX = Math.max(0, (paintingSize.width * getScale() - viewWidth) / 2.0f);
+        float maxY = Math.max(0, (paintingSize.height * getScale() - viewHeight) / 2.0f);
+        translationX = Math.max(-maxX, Math.min(maxX, translationX));
+        translationY = Math.max(-maxY, Math.min(maxY, translationY));
+    }
+
+    // GL用的矩阵，y轴朝上
+    public void getMatrix(Matrix out) {
+        float scale = getScale();
+        out.reset();
+        out.preTranslate(viewWidth / 2.0f + translationX, viewHeight / 2.0f - translationY);
+        out.preScale(scale, -scale);
+        out.preTranslate(-paintingSize.width / 2.0f, -paintingSize.height / 2.0f);
+    }
+
+    public void getVisibleRect(RectF out) {
+        float scale = getScale();
+        float offsetX = getOffsetX();
+        float offsetY = getOffsetY();
+        out.set(-offsetX / scale, -offsetY / scale, (viewWidth - offsetX) / scale, (viewHeight - offsetY) / scale);
+        if (!out.intersect(0, 0, paintingSize.width, paintingSize.height)) {
+            out.set(0, 0, 0, 0);
+        }
+    }
+}
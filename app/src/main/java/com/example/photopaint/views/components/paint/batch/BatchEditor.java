@@ -0,0 +1,143 @@
+package com.example.photopaint.views.components.paint.batch;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import com.example.photopaint.helpers.BuildVars;
+import com.example.photopaint.helpers.FileLog;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 在工作线程池里把同一份EditScript应用到一批图片上，process会阻塞直到全部完成
+public class BatchEditor {
+
+    public interface Source {
+        int getCount();
+        Bitmap load(int index) throws Exception;
+    }
+
+    public interface Sink {
+        void onImageRendered(int index, Bitmap result) throws Exception;
+    }
+
+    public static class Stats {
+        public int processed;
+        public int failed;
+        public long elapsedMs;
+
+        public float getImagesPerSecond() {
+            return elapsedMs > 0 ? processed * 1000.0f / elapsedMs : 0.0f;
+        }
+
+        @Override
+        public String toString() {
+            return "processed=" + processed + " failed=" + failed + " time=" + elapsedMs + "ms " + String.format(Locale.US, "%.2f", getImagesPerSecond()) + " images/sec";
+        }
+    }
+
+    private int parallelism;
+
+    public BatchEditor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchEditor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public Stats process(final EditScript script, final Source source, final Sink sink) throws InterruptedException {
+        final int count = source.getCount();
+        final Stats stats = new Stats();
+        if (count == 0) {
+            return stats;
+        }
+
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        int workers = Math.min(parallelism, count);
+        final CountDownLatch latch = new CountDownLatch(workers);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "batchEditor" + counter.getAndIncrement());
+            }
+        });
+
+        long startTime = SystemClock.elapsedRealtime();
+        for (int a = 0; a < workers; a++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SoftwareRenderer renderer = new SoftwareRenderer();
+                    try {
+                        int index;
+                        while ((index = nextIndex.getAndIncrement()) < count) {
+                            Bitmap input = null;
+                            Bitmap output = null;
+                            try {
+                                input = source.load(index);
+                                if (input != null) {
+                                    output = renderer.render(script, input);
+                                }
+                                if (output == null) {
+                                    failed.incrementAndGet();
+                                    continue;
+                                }
+                                sink.onImageRendered(index, output);
+                                processed.incrementAndGet();
+                            } catch (Throwable e) {
+                                failed.incrementAndGet();
+                                FileLog.e(e);
+                            } finally {
+                                if (input != null && input != output) {
+                                    input.recycle();
+                                }
+                            }
+                        }
+                    } finally {
+                        renderer.cleanResources();
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        try {
+            latch.await();
+        } finally {
+            stats.processed = processed.get();
+            stats.failed = failed.get();
+            stats.elapsedMs = SystemClock.elapsedRealtime() - startTime;
+            if (BuildVars.LOGS_ENABLED) {
+                FileLog.d("batch edit " + stats);
+            }
+        }
+        return stats;
+    }
+
+    public static Source fromBitmaps(final List<Bitmap> bitmaps) {
+        return new Source() {
+            @Override
+            public int getCount() {
+                return bitmaps.size();
+            }
+
+            @Override
+            public Bitmap load(int index) {
+                // 调用方持有这些bitmap，这里复制一份避免被回收
+                Bitmap bitmap = bitmaps.get(index);
+                return bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            }
+        };
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.photopaint.views.components.paint.batch;
+
+import com.example.photopaint.views.components.paint.Brush;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class EditScript implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum BrushType {
+        RADIAL,
+        ELLIPTICAL,
+        NEON,
+        MOSAIC;
+
+        public Brush createBrush() {
+            switch (this) {
+                case ELLIPTICAL:
+                    return new Brush.Elliptical();
+                case NEON:
+                    return new Brush.Neon();
+                case MOSAIC:
+                    return new Brush.Mosaic();
+                default:
+                    return new Brush.Radial();
+            }
+        }
+
+        public static BrushType fromBrush(Brush brush) {
+            if (brush instanceof Brush.Mosaic) {
+                return MOSAIC;
+            } else if (brush instanceof Brush.Neon) {
+                return NEON;
+            } else if (brush instanceof Brush.Elliptical) {
+                return ELLIPTICAL;
+            }
+            return RADIAL;
+        }
+    }
+
+    public static class Stroke implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public BrushType brush;
+        public int color;
+        public float weight;
+        // x0, y0, x1, y1 ... 坐标相对于脚本的参考画布尺寸
+        public float[] points;
+
+        public Stroke(BrushType brush, int color, float weight, float[] points) {
+            this.brush = brush;
+            this.color = color;
+            this.weight = weight;
+            this.points = points;
+        }
+
+        public int getPointsCount() {
+            return points != null ? points.length / 2 : 0;
+        }
+    }
+
+    public static abstract class Entity implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public float x;
+        public float y;
+        public float scale = 1.0f;
+        public float rotation;
+    }
+
+    public static class TextEntity extends Entity {
+
+        private static final long serialVersionUID = 1L;
+
+        public String text;
+        public int color;
+        public float fontSize;
+        public boolean stroke;
+
+        public TextEntity(String text, int color, float fontSize, boolean stroke) {
+            this.text = text;
+            this.color = color;
+            this.fontSize = fontSize;
+            this.stroke = stroke;
+        }
+    }
+
+    public static class StickerEntity extends Entity {
+
+        private static final long serialVersionUID = 1L;
+
+        public String path;
+        public float width;
+        public float height;
+        public boolean mirrored;
+
+        public StickerEntity(String path, float width, float height) {
+            this.path = path;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private float width;
+    private float height;
+    private ArrayList<Stroke> strokes = new ArrayList<>();
+    private ArrayList<Entity> entities = new ArrayList<>();
+
+    public EditScript(float width, float height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public EditScript addStroke(Stroke stroke) {
+        strokes.add(stroke);
+        return this;
+    }
+
+    public EditScript addEntity(Entity entity) {
+        entities.add(entity);
+        return this;
+    }
+
+    public List<Stroke> getStrokes() {
+        return Collections.unmodifiableList(strokes);
+    }
+
+    public List<Entity> getEntities() {
+        return Collections.unmodifiableList(entities);
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.photopaint.views.components.paint.batch;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.util.SparseArray;
+import com.example.photopaint.views.components.paint.Brush;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 不依赖GL的渲染器，尽量复刻Render里的印章算法；不是线程安全的，每个线程用自己的实例
+public class SoftwareRenderer {
+
+    private Bitmap mask;
+    private Canvas maskCanvas;
+    private Paint stampPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Paint compositePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private RectF stampRect = new RectF();
+
+    // 马赛克每段取一个颜色，同一段的印章共用滤镜；照片里颜色很多，缓存满了就清空
+    private static final int MAX_CACHED_FILTERS = 256;
+    private SparseArray<PorterDuffColorFilter> mosaicFilters = new SparseArray<>();
+    private SparseArray<PorterDuffColorFilter> strokeFilters = new SparseArray<>();
+
+    private Map<EditScript.BrushType, Bitmap> stamps = new HashMap<>();
+    private Map<String, Bitmap> stickers = new HashMap<>();
+
+    public Bitmap render(EditScript script, Bitmap source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        Bitmap result = source.copy(Bitmap.Config.ARGB_8888, true);
+        if (result == null) {
+            return null;
+        }
+        Canvas canvas = new Canvas(result);
+
+        float scaleX = width / script.getWidth();
+        float scaleY = height / script.getHeight();
+
+        List<EditScript.Stroke> strokes = script.getStrokes();
+        if (!strokes.isEmpty()) {
+            prepareMask(width, height);
+            // 和Painting的图层顺序一致：先画普通笔画，马赛克笔画统一盖在上面
+            for (int a = 0; a < strokes.size(); a++) {
+                if (strokes.get(a).brush != EditScript.BrushType.MOSAIC) {
+                    renderStroke(canvas, source, strokes.get(a), scaleX, scaleY);
+                }
+            }
+            for (int a = 0; a < strokes.size(); a++) {
+                if (strokes.get(a).brush == EditScript.BrushType.MOSAIC) {
+                    renderStroke(canvas, source, strokes.get(a), scaleX, scaleY);
+                }
+            }
+        }
+
+        List<EditScript.Entity> entities = script.getEntities();
+        for (int a = 0; a < entities.size(); a++) {
+            EditScript.Entity entity = entities.get(a);
+            canvas.save();
+            canvas.translate(entity.x * scaleX, entity.y * scaleY);
+            canvas.rotate(entity.rotation);
+            canvas.scale(entity.scale * scaleX, entity.scale * scaleY);
+            if (entity instanceof EditScript.TextEntity) {
+                renderText(canvas, (EditScript.TextEntity) entity);
+            } else if (entity instanceof EditScript.StickerEntity) {
+                renderSticker(canvas, (EditScript.StickerEntity) entity);
+            }
+            canvas.restore();
+        }
+
+        try {
+            canvas.setBitmap(null);
+        } catch (Exception ignore) {
+
+        }
+        return result;
+    }
+
+    public void cleanResources() {
+        if (mask != null) {
+            mask.recycle();
+            mask = null;
+            maskCanvas = null;
+        }
+        mosaicFilters.clear();
+        strokeFilters.clear();
+        for (Bitmap bitmap : stamps.values()) {
+            bitmap.recycle();
+        }
+        stamps.clear();
+        for (Bitmap bitmap : stickers.values()) {
+            bitmap.recycle();
+        }
+        stickers.clear();
+    }
+
+    private void prepareMask(int width, int height) {
+        if (mask != null && mask.getWidth() == width && mask.getHeight() == height) {
+            return;
+        }
+        if (mask != null) {
+            mask.recycle();
+        }
+        mask = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        maskCanvas = new Canvas(mask);
+    }
+
+    private void renderStroke(Canvas canvas, Bitmap source, EditScript.Stroke stroke, float scaleX, float scaleY) {
+        int count = stroke.getPointsCount();
+        if (count == 0) {
+            return;
+        }
+
+        Brush brush = stroke.brush.createBrush();
+        Bitmap stamp = getStamp(stroke.brush, brush);
+        if (stamp == null) {
+            return;
+        }
+        boolean mosaic = brush.isMosaic();
+
+        float size = stroke.weight * Math.min(scaleX, scaleY) * brush.getScale();
+        float step = Math.max(1.0f, brush.getSpacing() * size);
+        float alpha = brush.getAlpha();
+        float boldenedAlpha = Math.min(1.0f, alpha * 1.15f);
+
+        mask.eraseColor(Color.TRANSPARENT);
+
+        float[] points = stroke.points;
+        if (count == 1) {
+            float x = points[0] * scaleX;
+            float y = points[1] * scaleY;
+            stamp(stamp, x, y, size, Math.abs(brush.getAngle()) > 0.0f ? brush.getAngle() : 0.0f, alpha, mosaic, mosaic ? sampleColor(source, x, y) : 0);
+        } else {
+            // 和Render.PaintSegment一致：按间距步进，首尾加重
+            double remainder = 0;
+            for (int i = 0; i < count - 1; i++) {
+                float x1 = points[i * 2] * scaleX;
+                float y1 = points[i * 2 + 1] * scaleY;
+                float x2 = points[i * 2 + 2] * scaleX;
+                float y2 = points[i * 2 + 3] * scaleY;
+
+                float dx = x2 - x1;
+                float dy = y2 - y1;
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                float angle = Math.abs(brush.getAngle()) > 0.0f ? brush.getAngle() : (float) Math.atan2(dy, dx);
+                int color = mosaic ? sampleColor(source, x1, y1) : 0;
+
+                double f = remainder;
+                for (; f <= distance; f += step) {
+                    float t = distance > 0 ? (float) (f / distance) : 0.0f;
+                    stamp(stamp, x1 + dx * t, y1 + dy * t, size, angle, i == 0 && f == remainder ? boldenedAlpha : alpha, mosaic, color);
+                }
+                if (i == count - 2) {
+                    stamp(stamp, x2, y2, size, angle, boldenedAlpha, mosaic, color);
+                }
+                remainder = f - distance;
+            }
+        }
+
+        if (mosaic) {
+            compositePaint.setColorFilter(null);
+        } else {
+            compositePaint.setColorFilter(getFilter(strokeFilters, stroke.color, PorterDuff.Mode.SRC_IN));
+        }
+        canvas.drawBitmap(mask, 0, 0, compositePaint);
+    }
+
+    // 马赛克印章乘上取样颜色；取样到透明色时也要乘，和GL里一样印不出东西
+    private void stamp(Bitmap stamp, float x, float y, float size, float angle, float alpha, boolean tinted, int mosaicColor) {
+        stampPaint.setAlpha((int) (alpha * 255));
+        stampPaint.setColorFilter(tinted ? getFilter(mosaicFilters, mosaicColor, PorterDuff.Mode.MULTIPLY) : null);
+
+        stampRect.set(x - size, y - size, x + size, y + size);
+        maskCanvas.save();
+        maskCanvas.rotate((float) Math.toDegrees(angle), x, y);
+        maskCanvas.drawBitmap(stamp, null, stampRect, stampPaint);
+        maskCanvas.restore();
+    }
+
+    private PorterDuffColorFilter getFilter(SparseArray<PorterDuffColorFilter> cache, int color, PorterDuff.Mode mode) {
+        PorterDuffColorFilter filter = cache.get(color);
+        if (filter == null) {
+            if (cache.size() >= MAX_CACHED_FILTERS) {
+                cache.clear();
+            }
+            filter = new PorterDuffColorFilter(color, mode);
+            cache.put(color, filter);
+        }
+        return filter;
+    }
+
+    private int sampleColor(Bitmap source, float x, float y) {
+        int px = (int) x;
+        int py = (int) y;
+        if (px >= 0 && py >= 0 && px < source.getWidth() && py < source.getHeight()) {
+            return source.getPixel(px, py);
+        }
+        return 0;
+    }
+
+    private Bitmap getStamp(EditScript.BrushType type, Brush brush) {
+        Bitmap stamp = stamps.get(type);
+        if (stamp != null) {
+            return stamp;
+        }
+        Bitmap decoded = brush.getStamp();
+        if (decoded == null) {
+            return null;
+        }
+
+        // GL里画刷着色器把印章的r通道当作透明度，这里转成alpha通道
+        int width = decoded.getWidth();
+        int height = decoded.getHeight();
+        int[] pixels = new int[width * height];
+        decoded.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (!brush.isMosaic()) {
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = Color.argb(Color.red(pixels[i]), 255, 255, 255);
+            }
+        }
+        stamp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        stamp.setPixels(pixels, 0, width, 0, 0, width, height);
+        decoded.recycle();
+
+        stamps.put(type, stamp);
+        return stamp;
+    }
+
+    private void renderText(Canvas canvas, EditScript.TextEntity entity) {
+        if (entity.text == null) {
+            return;
+        }
+        textPaint.setTextSize(entity.fontSize);
+        textPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+
+        String[] lines = entity.text.split("\n");
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        float lineHeight = metrics.descent - metrics.ascent;
+        float y = -lineHeight * lines.length / 2.0f - metrics.ascent;
+
+        for (int a = 0; a < lines.length; a++) {
+            // 和TextPaintView一致：描边模式下文字是白色，描边用选中的颜色
+            if (entity.stroke) {
+                textPaint.setStyle(Paint.Style.STROKE);
+                textPaint.setStrokeWidth(entity.fontSize / 12.0f);
+                textPaint.setColor(entity.color);
+                textPaint.clearShadowLayer();
+                canvas.drawText(lines[a], 0, y, textPaint);
+
+                textPaint.setStyle(Paint.Style.FILL);
+                textPaint.setColor(0xffffffff);
+            } else {
+                textPaint.setStyle(Paint.Style.FILL);
+                textPaint.setColor(entity.color);
+                textPaint.setShadowLayer(8, 0, 2, 0xaa000000);
+            }
+            canvas.drawText(lines[a], 0, y, textPaint);
+            y += lineHeight;
+        }
+    }
+
+    private void renderSticker(Canvas canvas, EditScript.StickerEntity entity) {
+        Bitmap sticker = stickers.get(entity.path);
+        if (sticker == null && entity.path != null) {
+            sticker = BitmapFactory.decodeFile(entity.path);
+            if (sticker == null) {
+                return;
+            }
+            stickers.put(entity.path, sticker);
+        }
+        if (sticker == null) {
+            return;
+        }
+
+        if (entity.mirrored) {
+            canvas.scale(-1.0f, 1.0f);
+        }
+        stampRect.set(-entity.width / 2.0f, -entity.height / 2.0f, entity.width / 2.0f, entity.height / 2.0f);
+        canvas.drawBitmap(sticker, null, stampRect, bitmapPaint);
+    }
+}
@@ -0,0 +1,638 @@
+package com.example.photopaint.views.components.paint.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import com.example.photopaint.helpers.FileLog;
+
+import java.nio.Buffer;
+import java.util.Locale;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+// 调试用的GL包装：每个调用后查glGetError，统计次数和CPU耗时，并记住最近的调用。
+// 出错时把最近的调用打到日志里。只在BuildVars.DEBUG_GL打开时由GLBackend装上，release包里不会用到
+public class DebugGL implements GLApi {
+
+    private static final int HISTORY_SIZE = 64;
+    private static final int MAX_ARGS = 4;
+
+    private static final int CALL_ACTIVE_TEXTURE = 0;
+    private static final int CALL_ATTACH_SHADER = 1;
+    private static final int CALL_BIND_ATTRIB_LOCATION = 2;
+    private static final int CALL_BIND_FRAMEBUFFER = 3;
+    private static final int CALL_BIND_TEXTURE = 4;
+    private static final int CALL_BLEND_FUNC = 5;
+    private static final int CALL_BLEND_FUNC_SEPARATE = 6;
+    private static final int CALL_CHECK_FRAMEBUFFER_STATUS = 7;
+    private static final int CALL_CLEAR = 8;
+    private static final int CALL_CLEAR_COLOR = 9;
+    private static final int CALL_COMPILE_SHADER = 10;
+    private static final int CALL_COPY_TEX_SUB_IMAGE_2D = 11;
+    private static final int CALL_CREATE_PROGRAM = 12;
+    private static final int CALL_CREATE_SHADER = 13;
+    private static final int CALL_DELETE_FRAMEBUFFERS = 14;
+    private static final int CALL_DELETE_PROGRAM = 15;
+    private static final int CALL_DELETE_SHADER = 16;
+    private static final int CALL_DELETE_TEXTURES = 17;
+    private static final int CALL_DISABLE = 18;
+    private static final int CALL_DRAW_ARRAYS = 19;
+    private static final int CALL_ENABLE = 20;
+    private static final int CALL_ENABLE_VERTEX_ATTRIB_ARRAY = 21;
+    private static final int CALL_FRAMEBUFFER_TEXTURE_2D = 22;
+    private static final int CALL_GENERATE_MIPMAP = 23;
+    private static final int CALL_GEN_FRAMEBUFFERS = 24;
+    private static final int CALL_GEN_TEXTURES = 25;
+    private static final int CALL_GET_INTEGERV = 26;
+    private static final int CALL_GET_PROGRAMIV = 27;
+    private static final int CALL_GET_PROGRAM_INFO_LOG = 28;
+    private static final int CALL_GET_SHADERIV = 29;
+    private static final int CALL_GET_SHADER_INFO_LOG = 30;
+    private static final int CALL_GET_STRING = 31;
+    private static final int CALL_GET_UNIFORM_LOCATION = 32;
+    private static final int CALL_LINK_PROGRAM = 33;
+    private static final int CALL_READ_PIXELS = 34;
+    private static final int CALL_SCISSOR = 35;
+    private static final int CALL_SHADER_SOURCE = 36;
+    private static final int CALL_TEX_IMAGE_2D = 37;
+    private static final int CALL_BITMAP_TEX_IMAGE_2D = 38;
+    private static final int CALL_TEX_PARAMETERI = 39;
+    private static final int CALL_TEX_SUB_IMAGE_2D = 40;
+    private static final int CALL_UNIFORM1I = 41;
+    private static final int CALL_UNIFORM4F = 42;
+    private static final int CALL_UNIFORM_MATRIX4FV = 43;
+    private static final int CALL_USE_PROGRAM = 44;
+    private static final int CALL_VERTEX_ATTRIB_POINTER = 45;
+    private static final int CALL_VIEWPORT = 46;
+    private static final int CALL_GET_PROGRAM_BINARY = 47;
+    private static final int CALL_PROGRAM_BINARY = 48;
+    private static final int CALL_PROGRAM_PARAMETERI = 49;
+    private static final int CALL_EGL_SWAP_BUFFERS = 50;
+    private static final int CALL_BITMAP_TEX_SUB_IMAGE_2D = 51;
+
+    private static final String[] CALL_NAMES = new String[]{
+            "glActiveTexture",
+            "glAttachShader",
+            "glBindAttribLocation",
+            "glBindFramebuffer",
+            "glBindTexture",
+            "glBlendFunc",
+            "glBlendFuncSeparate",
+            "glCheckFramebufferStatus",
+            "glClear",
+            "glClearColor",
+            "glCompileShader",
+            "glCopyTexSubImage2D",
+            "glCreateProgram",
+            "glCreateShader",
+            "glDeleteFramebuffers",
+            "glDeleteProgram",
+            "glDeleteShader",
+            "glDeleteTextures",
+            "glDisable",
+            "glDrawArrays",
+            "glEnable",
+            "glEnableVertexAttribArray",
+            "glFramebufferTexture2D",
+            "glGenerateMipmap",
+            "glGenFramebuffers",
+            "glGenTextures",
+            "glGetIntegerv",
+            "glGetProgramiv",
+            "glGetProgramInfoLog",
+            "glGetShaderiv",
+            "glGetShaderInfoLog",
+            "glGetString",
+            "glGetUniformLocation",
+            "glLinkProgram",
+            "glReadPixels",
+            "glScissor",
+            "glShaderSource",
+            "glTexImage2D",
+            "texImage2D",
+            "glTexParameteri",
+            "glTexSubImage2D",
+            "glUniform1i",
+            "glUniform4f",
+            "glUniformMatrix4fv",
+            "glUseProgram",
+            "glVertexAttribPointer",
+            "glViewport",
+            "glGetProgramBinary",
+            "glProgramBinary",
+            "glProgramParameteri",
+            "eglSwapBuffers",
+            "texSubImage2D"
+    };
+
+    private final GLApi delegate;
+
+    private int[] historyCalls = new int[HISTORY_SIZE];
+    private float[] historyArgs = new float[HISTORY_SIZE * MAX_ARGS];
+    private int[] historyArgCount = new int[HISTORY_SIZE];
+    private long[] historyStart = new long[HISTORY_SIZE];
+    private int historyPosition;
+    private int historyCount;
+
+    private int[] callCounts = new int[CALL_NAMES.length];
+    private long[] callTimes = new long[CALL_NAMES.length];
+    private long[] callMaxTimes = new long[CALL_NAMES.length];
+    private int errorCount;
+    // 检查时从驱动取走的错误码，留给调用方自己的glGetError
+    private int pendingError = GLES20.GL_NO_ERROR;
+
+    public DebugGL(GLApi delegate) {
+        this.delegate = delegate;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    private int begin(int call) {
+        int slot = historyPosition;
+        historyPosition = (historyPosition + 1) % HISTORY_SIZE;
+        historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+        historyCalls[slot] = call;
+        historyArgCount[slot] = 0;
+        historyStart[slot] = System.nanoTime();
+        return slot;
+    }
+
+    private int begin(int call, float a) {
+        int slot = begin(call);
+        historyArgs[slot * MAX_ARGS] = a;
+        historyArgCount[slot] = 1;
+        return slot;
+    }
+
+    private int begin(int call, float a, float b) {
+        int slot = begin(call, a);
+        historyArgs[slot * MAX_ARGS + 1] = b;
+        historyArgCount[slot] = 2;
+        return slot;
+    }
+
+    private int begin(int call, float a, float b, float c) {
+        int slot = begin(call, a, b);
+        historyArgs[slot * MAX_ARGS + 2] = c;
+        historyArgCount[slot] = 3;
+        return slot;
+    }
+
+    private int begin(int call, float a, float b, float c, float d) {
+        int slot = begin(call, a, b, c);
+        historyArgs[slot * MAX_ARGS + 3] = d;
+        historyArgCount[slot] = 4;
+        return slot;
+    }
+
+    // 驱动大多是异步的，这里量到的只是调用在CPU上的耗时
+    private void end(int slot) {
+        int call = historyCalls[slot];
+        long time = System.nanoTime() - historyStart[slot];
+        callCounts[call]++;
+        callTimes[call] += time;
+        if (time > callMaxTimes[call]) {
+            callMaxTimes[call] = time;
+        }
+
+        int error = delegate.glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            pendingError = error;
+            errorCount++;
+            FileLog.e("GL error " + GLUtils.getEGLErrorString(error) + " (0x" + Integer.toHexString(error) + ") after " + CALL_NAMES[call] + "\n" + dumpHistory());
+        }
+    }
+
+    // 最近的调用，旧的在前
+    public String dumpHistory() {
+        StringBuilder builder = new StringBuilder();
+        int start = (historyPosition - historyCount + HISTORY_SIZE) % HISTORY_SIZE;
+        for (int a = 0; a < historyCount; a++) {
+            int slot = (start + a) % HISTORY_SIZE;
+            builder.append(CALL_NAMES[historyCalls[slot]]).append('(');
+            for (int b = 0; b < historyArgCount[slot]; b++) {
+                if (b > 0) {
+                    builder.append(", ");
+                }
+                float value = historyArgs[slot * MAX_ARGS + b];
+                if (value == (int) value) {
+                    builder.append((int) value);
+                } else {
+                    builder.append(value);
+                }
+            }
+            builder.append(")\n");
+        }
+        return builder.toString();
+    }
+
+    // 每种调用的次数、总耗时和最大耗时
+    public String dumpStats() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("gl errors=").append(errorCount).append('\n');
+        for (int a = 0; a < CALL_NAMES.length; a++) {
+            if (callCounts[a] == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.US, "%s count=%d total=%.3fms max=%.3fms\n", CALL_NAMES[a], callCounts[a], callTimes[a] / 1000000.0f, callMaxTimes[a] / 1000000.0f));
+        }
+        return builder.toString();
+    }
+
+    public void resetStats() {
+        for (int a = 0; a < CALL_NAMES.length; a++) {
+            callCounts[a] = 0;
+            callTimes[a] = 0;
+            callMaxTimes[a] = 0;
+        }
+        errorCount = 0;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        int slot = begin(CALL_ACTIVE_TEXTURE, texture);
+        delegate.glActiveTexture(texture);
+        end(slot);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        int slot = begin(CALL_ATTACH_SHADER, program, shader);
+        delegate.glAttachShader(program, shader);
+        end(slot);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name) {
+        int slot = begin(CALL_BIND_ATTRIB_LOCATION, program, index);
+        delegate.glBindAttribLocation(program, index, name);
+        end(slot);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        int slot = begin(CALL_BIND_FRAMEBUFFER, target, framebuffer);
+        delegate.glBindFramebuffer(target, framebuffer);
+        end(slot);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        int slot = begin(CALL_BIND_TEXTURE, target, texture);
+        delegate.glBindTexture(target, texture);
+        end(slot);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        int slot = begin(CALL_BLEND_FUNC, sfactor, dfactor);
+        delegate.glBlendFunc(sfactor, dfactor);
+        end(slot);
+    }
+
+    @Override
+    public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+        int slot = begin(CALL_BLEND_FUNC_SEPARATE, srcRGB, dstRGB, srcAlpha, dstAlpha);
+        delegate.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+        end(slot);
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        int slot = begin(CALL_CHECK_FRAMEBUFFER_STATUS, target);
+        int result = delegate.glCheckFramebufferStatus(target);
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public void glClear(int mask) {
+        int slot = begin(CALL_CLEAR, mask);
+        delegate.glClear(mask);
+        end(slot);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        int slot = begin(CALL_CLEAR_COLOR, red, green, blue, alpha);
+        delegate.glClearColor(red, green, blue, alpha);
+        end(slot);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        int slot = begin(CALL_COMPILE_SHADER, shader);
+        delegate.glCompileShader(shader);
+        end(slot);
+    }
+
+    @Override
+    public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+        int slot = begin(CALL_COPY_TEX_SUB_IMAGE_2D, target, level, xoffset, yoffset);
+        delegate.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height);
+        end(slot);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        int slot = begin(CALL_CREATE_PROGRAM);
+        int result = delegate.glCreateProgram();
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        int slot = begin(CALL_CREATE_SHADER, type);
+        int result = delegate.glCreateShader(type);
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        int slot = begin(CALL_DELETE_FRAMEBUFFERS, n, offset);
+        delegate.glDeleteFramebuffers(n, framebuffers, offset);
+        end(slot);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        int slot = begin(CALL_DELETE_PROGRAM, program);
+        delegate.glDeleteProgram(program);
+        end(slot);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        int slot = begin(CALL_DELETE_SHADER, shader);
+        delegate.glDeleteShader(shader);
+        end(slot);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        int slot = begin(CALL_DELETE_TEXTURES, n, offset);
+        delegate.glDeleteTextures(n, textures, offset);
+        end(slot);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        int slot = begin(CALL_DISABLE, cap);
+        delegate.glDisable(cap);
+        end(slot);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        int slot = begin(CALL_DRAW_ARRAYS, mode, first, count);
+        delegate.glDrawArrays(mode, first, count);
+        end(slot);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        int slot = begin(CALL_ENABLE, cap);
+        delegate.glEnable(cap);
+        end(slot);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        int slot = begin(CALL_ENABLE_VERTEX_ATTRIB_ARRAY, index);
+        delegate.glEnableVertexAttribArray(index);
+        end(slot);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        int slot = begin(CALL_FRAMEBUFFER_TEXTURE_2D, target, attachment, textarget, texture);
+        delegate.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+        end(slot);
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+        int slot = begin(CALL_GENERATE_MIPMAP, target);
+        delegate.glGenerateMipmap(target);
+        end(slot);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        int slot = begin(CALL_GEN_FRAMEBUFFERS, n, offset);
+        delegate.glGenFramebuffers(n, framebuffers, offset);
+        end(slot);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        int slot = begin(CALL_GEN_TEXTURES, n, offset);
+        delegate.glGenTextures(n, textures, offset);
+        end(slot);
+    }
+
+    @Override
+    public int glGetError() {
+        int error = pendingError;
+        pendingError = GLES20.GL_NO_ERROR;
+        return error != GLES20.GL_NO_ERROR ? error : delegate.glGetError();
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        int slot = begin(CALL_GET_INTEGERV, pname, offset);
+        delegate.glGetIntegerv(pname, params, offset);
+        end(slot);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        int slot = begin(CALL_GET_PROGRAMIV, program, pname, offset);
+        delegate.glGetProgramiv(program, pname, params, offset);
+        end(slot);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        int slot = begin(CALL_GET_PROGRAM_INFO_LOG, program);
+        String result = delegate.glGetProgramInfoLog(program);
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        int slot = begin(CALL_GET_SHADERIV, shader, pname, offset);
+        delegate.glGetShaderiv(shader, pname, params, offset);
+        end(slot);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        int slot = begin(CALL_GET_SHADER_INFO_LOG, shader);
+        String result = delegate.glGetShaderInfoLog(shader);
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        int slot = begin(CALL_GET_STRING, name);
+        String result = delegate.glGetString(name);
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        int slot = begin(CALL_GET_UNIFORM_LOCATION, program);
+        int result = delegate.glGetUniformLocation(program, name);
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        int slot = begin(CALL_LINK_PROGRAM, program);
+        delegate.glLinkProgram(program);
+        end(slot);
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+        int slot = begin(CALL_READ_PIXELS, x, y, width, height);
+        delegate.glReadPixels(x, y, width, height, format, type, pixels);
+        end(slot);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        int slot = begin(CALL_SCISSOR, x, y, width, height);
+        delegate.glScissor(x, y, width, height);
+        end(slot);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        int slot = begin(CALL_SHADER_SOURCE, shader);
+        delegate.glShaderSource(shader, string);
+        end(slot);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+        int slot = begin(CALL_TEX_IMAGE_2D, target, level, internalformat, width);
+        delegate.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+        end(slot);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        int slot = begin(CALL_BITMAP_TEX_IMAGE_2D, target, level, border);
+        delegate.texImage2D(target, level, bitmap, border);
+        end(slot);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        int slot = begin(CALL_TEX_PARAMETERI, target, pname, param);
+        delegate.glTexParameteri(target, pname, param);
+        end(slot);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+        int slot = begin(CALL_TEX_SUB_IMAGE_2D, target, level, xoffset, yoffset);
+        delegate.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+        end(slot);
+    }
+
+    @Override
+    public void texSubImage2D(int target, int level, int xoffset, int yoffset, Bitmap bitmap) {
+        int slot = begin(CALL_BITMAP_TEX_SUB_IMAGE_2D, target, level, xoffset, yoffset);
+        delegate.texSubImage2D(target, level, xoffset, yoffset, bitmap);
+        end(slot);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        int slot = begin(CALL_UNIFORM1I, location, x);
+        delegate.glUniform1i(location, x);
+        end(slot);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        int slot = begin(CALL_UNIFORM4F, location, x, y, z);
+        delegate.glUniform4f(location, x, y, z, w);
+        end(slot);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        int slot = begin(CALL_UNIFORM_MATRIX4FV, location, count, (transpose ? 1 : 0), offset);
+        delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+        end(slot);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        int slot = begin(CALL_USE_PROGRAM, program);
+        delegate.glUseProgram(program);
+        end(slot);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        int slot = begin(CALL_VERTEX_ATTRIB_POINTER, index, size, type, (normalized ? 1 : 0));
+        delegate.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+        end(slot);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        int slot = begin(CALL_VIEWPORT, x, y, width, height);
+        delegate.glViewport(x, y, width, height);
+        end(slot);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        int slot = begin(CALL_GET_PROGRAM_BINARY, program, bufSize, lengthOffset, binaryFormatOffset);
+        delegate.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+        end(slot);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        int slot = begin(CALL_PROGRAM_BINARY, program, binaryFormat, length);
+        delegate.glProgramBinary(program, binaryFormat, binary, length);
+        end(slot);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        int slot = begin(CALL_PROGRAM_PARAMETERI, program, pname, value);
+        delegate.glProgramParameteri(program, pname, value);
+        end(slot);
+    }
+
+    @Override
+    public boolean eglSwapBuffers(EGL10 egl, EGLDisplay display, EGLSurface surface) {
+        int slot = begin(CALL_EGL_SWAP_BUFFERS);
+        boolean result = delegate.eglSwapBuffers(egl, display, surface);
+        end(slot);
+        return result;
+    }
+
+    @Override
+    public EGL10 getEGL() {
+        return delegate.getEGL();
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.photopaint.views.components.paint.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+// 什么都不画的实现，给JVM上的单测用：对象id递增分配，编译、链接和framebuffer检查都当作成功，
+// 读像素不改缓冲区。没有EGL，CanvasInternal不能跑在它上面，直接驱动Painting即可
+public class FakeGL implements GLApi {
+
+    private int nextId = 1;
+    private int nextUniform = 0;
+
+    @Override
+    public void glActiveTexture(int texture) {
+
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name) {
+
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+
+    }
+
+    @Override
+    public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        return GLES20.GL_FRAMEBUFFER_COMPLETE;
+    }
+
+    @Override
+    public void glClear(int mask) {
+
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+
+    }
+
+    @Override
+    public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return nextId++;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return nextId++;
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+
+    }
+
+    @Override
+    public void glDisable(int cap) {
+
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+
+    }
+
+    @Override
+    public void glEnable(int cap) {
+
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        for (int a = 0; a < n; a++) {
+            framebuffers[offset + a] = nextId++;
+        }
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        for (int a = 0; a < n; a++) {
+            textures[offset + a] = nextId++;
+        }
+    }
+
+    @Override
+    public int glGetError() {
+        return GLES20.GL_NO_ERROR;
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        params[offset] = 0;
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        params[offset] = pname == GLES20.GL_LINK_STATUS ? GLES20.GL_TRUE : 0;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        params[offset] = pname == GLES20.GL_COMPILE_STATUS ? GLES20.GL_TRUE : 0;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return "";
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return name == GLES20.GL_VERSION ? "OpenGL ES 2.0 fake" : "fake";
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return nextUniform++;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+
+    }
+
+    @Override
+    public void texSubImage2D(int target, int level, int xoffset, int yoffset, Bitmap bitmap) {
+
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        length[lengthOffset] = 0;
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+
+    }
+
+    // 没有EGL，CanvasInternal跑在这上面时直接报错，免得后面在空指针上才失败
+    @Override
+    public EGL10 getEGL() {
+        throw new UnsupportedOperationException("FakeGL has no EGL");
+    }
+
+    @Override
+    public boolean eglSwapBuffers(EGL10 egl, EGLDisplay display, EGLSurface surface) {
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.photopaint.views.components.paint.gl;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+// 绘图引擎用到的GL/EGL调用，方法名和参数跟GLES20一致。
+// 通过GLBackend替换实现：真机用AndroidGL，统计开销用RecordingGL，JVM单测用FakeGL
+public interface GLApi {
+
+    void glActiveTexture(int texture);
+
+    void glAttachShader(int program, int shader);
+
+    void glBindAttribLocation(int program, int index, String name);
+
+    void glBindFramebuffer(int target, int framebuffer);
+
+    void glBindTexture(int target, int texture);
+
+    void glBlendFunc(int sfactor, int dfactor);
+
+    void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha);
+
+    int glCheckFramebufferStatus(int target);
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glCompileShader(int shader);
+
+    void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height);
+
+    int glCreateProgram();
+
+    int glCreateShader(int type);
+
+    void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glDeleteProgram(int program);
+
+    void glDeleteShader(int shader);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glDisable(int cap);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glEnable(int cap);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+
+    void glGenerateMipmap(int target);
+
+    void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    int glGetError();
+
+    void glGetIntegerv(int pname, int[] params, int offset);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetProgramInfoLog(int program);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    String glGetString(int name);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glLinkProgram(int program);
+
+    void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels);
+
+    void glScissor(int x, int y, int width, int height);
+
+    void glShaderSource(int shader, String string);
+
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels);
+
+    // GLUtils.texImage2D
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels);
+
+    // GLUtils.texSubImage2D
+    void texSubImage2D(int target, int level, int xoffset, int yoffset, Bitmap bitmap);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    void glUseProgram(int program);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+    void glViewport(int x, int y, int width, int height);
+
+    // GLES30，只在ES3的context上调用
+    void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary);
+
+    void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+    void glProgramParameteri(int program, int pname, int value);
+
+    // EGL10本身就是接口，由后端提供；交换缓冲单独走这里，方便按帧统计
+    EGL10 getEGL();
+
+    boolean eglSwapBuffers(EGL10 egl, EGLDisplay display, EGLSurface surface);
+}
@@ -0,0 +1,28 @@
+package com.example.photopaint.views.components.paint.gl;
+
+import com.example.photopaint.helpers.BuildVars;
+
+// 当前使用的GL实现，默认是真机实现，debug包里外面再包一层DebugGL。要在创建RenderView/Painting之前替换
+public class GLBackend {
+
+    private static volatile GLApi current = createDefault();
+
+    public static GLApi get() {
+        return current;
+    }
+
+    public static void set(GLApi api) {
+        current = api != null ? api : createDefault();
+    }
+
+    public static void reset() {
+        current = createDefault();
+    }
+
+    private static GLApi createDefault() {
+        if (BuildVars.DEBUG_GL) {
+            return new DebugGL(new AndroidGL());
+        }
+        return new AndroidGL();
+    }
+}
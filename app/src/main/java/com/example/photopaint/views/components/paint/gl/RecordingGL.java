@@ -0,0 +1,495 @@
+package com.example.photopaint.views.components.paint.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+// 包在别的实现外面，按帧记下调用次数和传给GL的数据量，eglSwapBuffers算一帧结束。
+// 没有窗口时（比如单测里直接驱动Painting）用endFrame()手动分帧
+public class RecordingGL implements GLApi {
+
+    private static final int MAX_FRAMES = 120;
+    private static final int MAX_ATTRIBUTES = 8;
+
+    public static class Command {
+        public final String name;
+        public final int payloadBytes;
+
+        Command(String name, int payloadBytes) {
+            this.name = name;
+            this.payloadBytes = payloadBytes;
+        }
+
+        @Override
+        public String toString() {
+            return payloadBytes > 0 ? name + " " + payloadBytes + "b" : name;
+        }
+    }
+
+    public static class Frame {
+        public int index;
+        public int calls;
+        public int drawCalls;
+        // 上传给GL的字节数：纹理、uniform、着色器源码和顶点数据
+        public long payloadBytes;
+        // glReadPixels读回来的字节数
+        public long readBytes;
+        public Map<String, Integer> counts = new HashMap<>();
+        // 只有setCaptureCommands(true)时才记每条命令
+        public List<Command> commands;
+
+        @Override
+        public String toString() {
+            return "frame " + index + " calls=" + calls + " draws=" + drawCalls + " payload=" + payloadBytes + "b read=" + readBytes + "b";
+        }
+    }
+
+    private final GLApi delegate;
+    private boolean captureCommands;
+    private Frame frame;
+    private ArrayList<Frame> frames = new ArrayList<>();
+    private int frameIndex;
+
+    private int[] attributeBytes = new int[MAX_ATTRIBUTES];
+    private boolean[] attributeEnabled = new boolean[MAX_ATTRIBUTES];
+
+    public RecordingGL(GLApi delegate) {
+        this.delegate = delegate;
+        frame = newFrame();
+    }
+
+    public synchronized void setCaptureCommands(boolean value) {
+        captureCommands = value;
+        if (captureCommands && frame.commands == null) {
+            frame.commands = new ArrayList<>();
+        }
+    }
+
+    public synchronized Frame getCurrentFrame() {
+        return frame;
+    }
+
+    // 最近结束的帧，最多MAX_FRAMES个
+    public synchronized List<Frame> getFrames() {
+        return Collections.unmodifiableList(new ArrayList<>(frames));
+    }
+
+    public synchronized Frame endFrame() {
+        Frame finished = frame;
+        frames.add(finished);
+        if (frames.size() > MAX_FRAMES) {
+            frames.remove(0);
+        }
+        frame = newFrame();
+        return finished;
+    }
+
+    public synchronized void clear() {
+        frames.clear();
+        frameIndex = 0;
+        frame = newFrame();
+    }
+
+    private Frame newFrame() {
+        Frame result = new Frame();
+        result.index = frameIndex++;
+        if (captureCommands) {
+            result.commands = new ArrayList<>();
+        }
+        return result;
+    }
+
+    private synchronized void record(String name, int payloadBytes) {
+        frame.calls++;
+        frame.payloadBytes += payloadBytes;
+        Integer count = frame.counts.get(name);
+        frame.counts.put(name, count != null ? count + 1 : 1);
+        if (frame.commands != null) {
+            frame.commands.add(new Command(name, payloadBytes));
+        }
+    }
+
+    private synchronized void readBack(int bytes) {
+        frame.readBytes += bytes;
+    }
+
+    private synchronized void draw() {
+        frame.drawCalls++;
+    }
+
+    // 顶点数据在glDrawArrays时才真正读取，按启用的属性算每个顶点的字节数
+    private void setAttribute(int index, int size, int type) {
+        if (index < MAX_ATTRIBUTES) {
+            attributeBytes[index] = size * (type == GLES20.GL_FLOAT ? 4 : 1);
+        }
+    }
+
+    private void enableAttribute(int index) {
+        if (index < MAX_ATTRIBUTES) {
+            attributeEnabled[index] = true;
+        }
+    }
+
+    private int getVertexBytes() {
+        int bytes = 0;
+        for (int a = 0; a < MAX_ATTRIBUTES; a++) {
+            if (attributeEnabled[a]) {
+                bytes += attributeBytes[a];
+            }
+        }
+        return bytes;
+    }
+
+    private static int bytes(Buffer buffer) {
+        if (buffer == null) {
+            return 0;
+        }
+        if (buffer instanceof ByteBuffer) {
+            return buffer.remaining();
+        } else if (buffer instanceof ShortBuffer) {
+            return buffer.remaining() * 2;
+        }
+        return buffer.remaining() * 4;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        record("glActiveTexture", 0);
+        delegate.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        record("glAttachShader", 0);
+        delegate.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name) {
+        record("glBindAttribLocation", 0);
+        delegate.glBindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        record("glBindFramebuffer", 0);
+        delegate.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        record("glBindTexture", 0);
+        delegate.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        record("glBlendFunc", 0);
+        delegate.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glBlendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+        record("glBlendFuncSeparate", 0);
+        delegate.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        record("glCheckFramebufferStatus", 0);
+        return delegate.glCheckFramebufferStatus(target);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        record("glClear", 0);
+        delegate.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        record("glClearColor", 0);
+        delegate.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        record("glCompileShader", 0);
+        delegate.glCompileShader(shader);
+    }
+
+    @Override
+    public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+        record("glCopyTexSubImage2D", 0);
+        delegate.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        record("glCreateProgram", 0);
+        return delegate.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        record("glCreateShader", 0);
+        return delegate.glCreateShader(type);
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        record("glDeleteFramebuffers", 0);
+        delegate.glDeleteFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        record("glDeleteProgram", 0);
+        delegate.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        record("glDeleteShader", 0);
+        delegate.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        record("glDeleteTextures", 0);
+        delegate.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        record("glDisable", 0);
+        delegate.glDisable(cap);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        record("glDrawArrays", count * getVertexBytes());
+        draw();
+        delegate.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        record("glEnable", 0);
+        delegate.glEnable(cap);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        record("glEnableVertexAttribArray", 0);
+        enableAttribute(index);
+        delegate.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        record("glFramebufferTexture2D", 0);
+        delegate.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+        record("glGenerateMipmap", 0);
+        delegate.glGenerateMipmap(target);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        record("glGenFramebuffers", 0);
+        delegate.glGenFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        record("glGenTextures", 0);
+        delegate.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public int glGetError() {
+        record("glGetError", 0);
+        return delegate.glGetError();
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        record("glGetIntegerv", 0);
+        delegate.glGetIntegerv(pname, params, offset);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        record("glGetProgramiv", 0);
+        delegate.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        record("glGetProgramInfoLog", 0);
+        return delegate.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        record("glGetShaderiv", 0);
+        delegate.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        record("glGetShaderInfoLog", 0);
+        return delegate.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        record("glGetString", 0);
+        return delegate.glGetString(name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        record("glGetUniformLocation", 0);
+        return delegate.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        record("glLinkProgram", 0);
+        delegate.glLinkProgram(program);
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+        record("glReadPixels", 0);
+        readBack(width * height * 4);
+        delegate.glReadPixels(x, y, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        record("glScissor", 0);
+        delegate.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        record("glShaderSource", string != null ? string.length() : 0);
+        delegate.glShaderSource(shader, string);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+        record("glTexImage2D", bytes(pixels));
+        delegate.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        record("texImage2D", bitmap != null ? bitmap.getRowBytes() * bitmap.getHeight() : 0);
+        delegate.texImage2D(target, level, bitmap, border);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        record("glTexParameteri", 0);
+        delegate.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+        record("glTexSubImage2D", bytes(pixels));
+        delegate.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void texSubImage2D(int target, int level, int xoffset, int yoffset, Bitmap bitmap) {
+        record("texSubImage2D", bitmap != null ? bitmap.getRowBytes() * bitmap.getHeight() : 0);
+        delegate.texSubImage2D(target, level, xoffset, yoffset, bitmap);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        record("glUniform1i", 4);
+        delegate.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        record("glUniform4f", 16);
+        delegate.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        record("glUniformMatrix4fv", count * 64);
+        delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        record("glUseProgram", 0);
+        delegate.glUseProgram(program);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr) {
+        record("glVertexAttribPointer", 0);
+        setAttribute(index, size, type);
+        delegate.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        record("glViewport", 0);
+        delegate.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        record("glGetProgramBinary", 0);
+        delegate.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        record("glProgramBinary", length);
+        delegate.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        record("glProgramParameteri", 0);
+        delegate.glProgramParameteri(program, pname, value);
+    }
+
+    @Override
+    public EGL10 getEGL() {
+        return delegate.getEGL();
+    }
+
+    @Override
+    public boolean eglSwapBuffers(EGL10 egl, EGLDisplay display, EGLSurface surface) {
+        record("eglSwapBuffers", 0);
+        boolean result = delegate.eglSwapBuffers(egl, display, surface);
+        endFrame();
+        return result;
+    }
+}
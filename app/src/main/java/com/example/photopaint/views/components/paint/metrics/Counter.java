@@ -0,0 +1,40 @@
+package com.example.photopaint.views.components.paint.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// 只增不减的计数，任何线程都可以写
+public class Counter {
+
+    private final String name;
+    private final String unit;
+    private final AtomicLong value = new AtomicLong();
+
+    public Counter(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    public void reset() {
+        value.set(0);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.photopaint.views.components.paint.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 固定分桶的直方图，bounds是每个桶的上界（含），最后多一个桶放超出的值。写入不加锁
+public class Histogram {
+
+    public static class Snapshot {
+        public final String name;
+        public final String unit;
+        public final long[] bounds;
+        public final long[] counts;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        Snapshot(String name, String unit, long[] bounds, long[] counts, long count, long sum, long max) {
+            this.name = name;
+            this.unit = unit;
+            this.bounds = bounds;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public float getAverage() {
+            return count > 0 ? (float) sum / count : 0.0f;
+        }
+
+        // 按桶估算的分位数，返回所在桶的上界；落在最后一个桶时返回最大值
+        public long getPercentile(float percentile) {
+            long total = 0;
+            for (int a = 0; a < counts.length; a++) {
+                total += counts[a];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int a = 0; a < counts.length; a++) {
+                seen += counts[a];
+                if (seen >= target) {
+                    return a < bounds.length ? Math.min(bounds[a], max) : max;
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s n=%d avg=%.1f p50=%d p95=%d max=%d %s", name, count, getAverage(), getPercentile(0.5f), getPercentile(0.95f), max, unit);
+        }
+    }
+
+    private final String name;
+    private final String unit;
+    private final long[] bounds;
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(String name, String unit, long[] bounds) {
+        this.name = name;
+        this.unit = unit;
+        this.bounds = bounds;
+        counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long value) {
+        int index = 0;
+        while (index < bounds.length && value > bounds[index]) {
+            index++;
+        }
+        counts.incrementAndGet(index);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] values = new long[counts.length()];
+        for (int a = 0; a < values.length; a++) {
+            values[a] = counts.get(a);
+        }
+        return new Snapshot(name, unit, bounds, values, count.get(), sum.get(), max.get());
+    }
+
+    public void reset() {
+        for (int a = 0; a < counts.length(); a++) {
+            counts.set(a, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
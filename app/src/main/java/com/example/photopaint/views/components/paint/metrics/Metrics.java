@@ -0,0 +1,139 @@
+package com.example.photopaint.views.components.paint.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 绘图引擎的性能指标。默认关闭，调用方先判断isEnabled()再取时间和记录，关闭时只多一次volatile读
+public class Metrics {
+
+    private static volatile boolean enabled;
+
+    private static final List<Counter> counters = new CopyOnWriteArrayList<>();
+    private static final List<Histogram> histograms = new CopyOnWriteArrayList<>();
+
+    // 一帧从开始绘制到eglSwapBuffers返回
+    public static final Histogram FRAME_TIME = histogram("frame_time", "us", new long[]{1000, 2000, 4000, 8000, 12000, 16000, 24000, 33000, 50000, 100000});
+    // 触摸事件到这一段笔画上屏
+    public static final Histogram TOUCH_LATENCY = histogram("touch_latency", "ms", new long[]{8, 16, 24, 33, 50, 66, 100, 150, 250});
+    // 往GL线程投递任务时队列里还没执行的任务数
+    public static final Histogram GL_QUEUE_DEPTH = histogram("gl_queue_depth", "tasks", new long[]{0, 1, 2, 3, 4, 6, 8, 12, 16, 32});
+    // GL线程上每个任务从投递到开始执行、以及执行本身的耗时
+    public static final Histogram GL_TASK_WAIT = histogram("gl_task_wait", "us", new long[]{100, 500, 1000, 2000, 4000, 8000, 16000, 33000, 100000});
+    public static final Histogram GL_TASK_RUN = histogram("gl_task_run", "us", new long[]{100, 500, 1000, 2000, 4000, 8000, 16000, 33000, 100000});
+    public static final Histogram SLICE_COMPRESS_TIME = histogram("slice_compress", "us", new long[]{500, 1000, 2000, 5000, 10000, 20000, 50000, 100000});
+    public static final Histogram SLICE_DECOMPRESS_TIME = histogram("slice_decompress", "us", new long[]{500, 1000, 2000, 5000, 10000, 20000, 50000, 100000});
+    // getPaintingData从GPU读回的字节数
+    public static final Counter READBACK_BYTES = counter("readback_bytes", "bytes");
+    public static final Counter READBACK_COUNT = counter("readback_count", "calls");
+    // GL线程上还没执行就被同key的新任务替换掉的任务，比如合并掉的重绘
+    public static final Counter GL_TASKS_COALESCED = counter("gl_tasks_coalesced", "tasks");
+
+    public static class Snapshot {
+        public final long time;
+        public final List<Histogram.Snapshot> histograms;
+        public final List<Counter> counters;
+        public final long[] counterValues;
+
+        Snapshot(long time, List<Histogram.Snapshot> histograms, List<Counter> counters, long[] counterValues) {
+            this.time = time;
+            this.histograms = histograms;
+            this.counters = counters;
+            this.counterValues = counterValues;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (int a = 0; a < histograms.size(); a++) {
+                builder.append(histograms.get(a)).append('\n');
+            }
+            for (int a = 0; a < counters.size(); a++) {
+                Counter counter = counters.get(a);
+                builder.append(counter.getName()).append('=').append(counterValues[a]).append(' ').append(counter.getUnit()).append('\n');
+            }
+            return builder.toString();
+        }
+
+        // 导出给外部脚本用，分桶用上界作key，超出最后一个上界的记为"inf"
+        public String toJson() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("{\"time\":").append(time).append(",\"histograms\":{");
+            for (int a = 0; a < histograms.size(); a++) {
+                Histogram.Snapshot histogram = histograms.get(a);
+                if (a > 0) {
+                    builder.append(',');
+                }
+                builder.append('"').append(histogram.name).append("\":{");
+                builder.append("\"unit\":\"").append(histogram.unit).append('"');
+                builder.append(",\"count\":").append(histogram.count);
+                builder.append(",\"sum\":").append(histogram.sum);
+                builder.append(",\"max\":").append(histogram.max);
+                builder.append(",\"buckets\":{");
+                for (int b = 0; b < histogram.counts.length; b++) {
+                    if (b > 0) {
+                        builder.append(',');
+                    }
+                    builder.append('"').append(b < histogram.bounds.length ? String.valueOf(histogram.bounds[b]) : "inf").append("\":").append(histogram.counts[b]);
+                }
+                builder.append("}}");
+            }
+            builder.append("},\"counters\":{");
+            for (int a = 0; a < counters.size(); a++) {
+                if (a > 0) {
+                    builder.append(',');
+                }
+                builder.append('"').append(counters.get(a).getName()).append("\":").append(counterValues[a]);
+            }
+            builder.append("}}");
+            return builder.toString();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static Histogram histogram(String name, String unit, long[] bounds) {
+        Histogram histogram = new Histogram(name, unit, bounds);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    public static Counter counter(String name, String unit) {
+        Counter counter = new Counter(name, unit);
+        counters.add(counter);
+        return counter;
+    }
+
+    public static Snapshot snapshot() {
+        List<Histogram.Snapshot> histogramSnapshots = new ArrayList<>(histograms.size());
+        for (Histogram histogram : histograms) {
+            histogramSnapshots.add(histogram.snapshot());
+        }
+        List<Counter> counterList = new ArrayList<>(counters);
+        long[] values = new long[counterList.size()];
+        for (int a = 0; a < values.length; a++) {
+            values[a] = counterList.get(a).get();
+        }
+        return new Snapshot(System.currentTimeMillis(), histogramSnapshots, counterList, values);
+    }
+
+    public static void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (Counter counter : counters) {
+            counter.reset();
+        }
+    }
+
+    static String formatShort(Histogram.Snapshot snapshot) {
+        return String.format(Locale.US, "%s p50=%d p95=%d max=%d%s", snapshot.name, snapshot.getPercentile(0.5f), snapshot.getPercentile(0.95f), snapshot.max, snapshot.unit);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.photopaint.views.components.paint.metrics;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.View;
+import com.example.photopaint.helpers.AndroidUtilities;
+
+import java.util.List;
+
+// 调试用的指标浮层，每半秒刷新一次；Metrics关闭时不画也不刷新
+public class MetricsOverlayView extends View {
+
+    private static final long UPDATE_INTERVAL = 500;
+
+    private Paint textPaint;
+    private Paint backgroundPaint;
+    private String[] lines = new String[0];
+
+    private Runnable updateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            update();
+            if (Metrics.isEnabled()) {
+                postDelayed(this, UPDATE_INTERVAL);
+            }
+        }
+    };
+
+    public MetricsOverlayView(Context context) {
+        super(context);
+
+        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(0xffffffff);
+        textPaint.setTextSize(AndroidUtilities.dp(10));
+
+        backgroundPaint = new Paint();
+        backgroundPaint.setColor(0x99000000);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        removeCallbacks(updateRunnable);
+        updateRunnable.run();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(updateRunnable);
+    }
+
+    // 打开Metrics之后调用一次重新开始刷新
+    public void restart() {
+        removeCallbacks(updateRunnable);
+        updateRunnable.run();
+    }
+
+    private void update() {
+        if (!Metrics.isEnabled()) {
+            lines = new String[0];
+            invalidate();
+            return;
+        }
+        Metrics.Snapshot snapshot = Metrics.snapshot();
+        List<Histogram.Snapshot> histograms = snapshot.histograms;
+        String[] result = new String[histograms.size() + snapshot.counters.size()];
+        int index = 0;
+        for (int a = 0; a < histograms.size(); a++) {
+            result[index++] = Metrics.formatShort(histograms.get(a));
+        }
+        for (int a = 0; a < snapshot.counters.size(); a++) {
+            result[index++] = snapshot.counters.get(a).getName() + "=" + snapshot.counterValues[a];
+        }
+        lines = result;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (lines.length == 0) {
+            return;
+        }
+        float lineHeight = textPaint.getFontSpacing();
+        float width = 0;
+        for (int a = 0; a < lines.length; a++) {
+            width = Math.max(width, textPaint.measureText(lines[a]));
+        }
+        float padding = AndroidUtilities.dp(4);
+        float descent = textPaint.getFontMetrics().descent;
+        canvas.drawRect(0, 0, width + padding * 2, lineHeight * lines.length + padding * 2, backgroundPaint);
+        for (int a = 0; a < lines.length; a++) {
+            canvas.drawText(lines[a], padding, padding + lineHeight * (a + 1) - descent, textPaint);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.photopaint.views.components.paint.replay;
+
+import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.Painting;
+import com.example.photopaint.views.components.paint.Path;
+import com.example.photopaint.views.components.paint.Point;
+import com.example.photopaint.views.components.paint.batch.EditScript;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// 回放时挂在Painting上，记下Input真正交出来的笔画（平滑、按时间过滤、切段和预测都已经做过），
+// 一份转成EditScript给软件渲染器，一份算进校验和
+public class StrokeCapture implements Painting.StrokeListener {
+
+    private static final byte TYPE_PATH = 1;
+    private static final byte TYPE_PREDICTION = 2;
+    private static final byte TYPE_COMMIT = 3;
+    private static final byte TYPE_CANCEL = 4;
+
+    private EditScript script;
+    private CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(64);
+
+    private float[] points = new float[256];
+    private int pointsCount;
+    private EditScript.BrushType brush;
+    private float weight;
+
+    private int paths;
+    private int predictions;
+
+    public StrokeCapture(Size size) {
+        script = new EditScript(size.width, size.height);
+    }
+
+    public EditScript getScript() {
+        return script;
+    }
+
+    public long getChecksum() {
+        return crc.getValue();
+    }
+
+    public int getPathsCount() {
+        return paths;
+    }
+
+    public int getPredictionsCount() {
+        return predictions;
+    }
+
+    @Override
+    public void onStrokePainted(Path path, boolean clearBuffer) {
+        paths++;
+        update(TYPE_PATH, path);
+
+        if (pointsCount == 0) {
+            brush = EditScript.BrushType.fromBrush(path.getBrush());
+            weight = path.getBaseWeight();
+        }
+        // 相邻两段首尾是同一个点，拼成一条折线时去掉重复的
+        Point[] pathPoints = path.getPoints();
+        for (int a = 0; a < pathPoints.length; a++) {
+            float x = (float) pathPoints[a].x;
+            float y = (float) pathPoints[a].y;
+            if (pointsCount > 0 && points[pointsCount * 2 - 2] == x && points[pointsCount * 2 - 1] == y) {
+                continue;
+            }
+            if (pointsCount * 2 + 2 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+            points[pointsCount * 2] = x;
+            points[pointsCount * 2 + 1] = y;
+            pointsCount++;
+        }
+    }
+
+    // 预测的点最后会被真实的点替换，不进脚本，只算进校验和
+    @Override
+    public void onPredictionPainted(Path path) {
+        if (path == null) {
+            return;
+        }
+        predictions++;
+        update(TYPE_PREDICTION, path);
+    }
+
+    @Override
+    public void onStrokeCommitted(int color) {
+        buffer.clear();
+        buffer.put(TYPE_COMMIT).putInt(color);
+        crc.update(buffer.array(), 0, buffer.position());
+
+        if (pointsCount > 0) {
+            script.addStroke(new EditScript.Stroke(brush, color, weight, Arrays.copyOf(points, pointsCount * 2)));
+        }
+        pointsCount = 0;
+    }
+
+    @Override
+    public void onStrokeCancelled() {
+        buffer.clear();
+        buffer.put(TYPE_CANCEL);
+        crc.update(buffer.array(), 0, buffer.position());
+
+        pointsCount = 0;
+    }
+
+    // remainder是GL线程异步回填的，和回放快慢有关，不算进去
+    private void update(byte type, Path path) {
+        buffer.clear();
+        buffer.put(type).putInt(path.getColor()).putFloat(path.getBaseWeight()).put((byte) EditScript.BrushType.fromBrush(path.getBrush()).ordinal());
+        crc.update(buffer.array(), 0, buffer.position());
+
+        Point[] pathPoints = path.getPoints();
+        for (int a = 0; a < pathPoints.length; a++) {
+            Point point = pathPoints[a];
+            buffer.clear();
+            buffer.putDouble(point.x).putDouble(point.y).putDouble(point.z).put((byte) (point.edge ? 1 : 0)).putInt(point.mosaicColor);
+            crc.update(buffer.array(), 0, buffer.position());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.photopaint.views.components.paint.replay;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.Brush;
+import com.example.photopaint.views.components.paint.Viewport;
+import com.example.photopaint.views.components.paint.batch.EditScript;
+
+import java.io.File;
+import java.io.IOException;
+
+// 挂到RenderView上记录用户的绘制过程，只在UI线程调用
+public class TouchRecorder {
+
+    private TouchSession session;
+    private long startTime;
+
+    public TouchRecorder(Size paintingSize) {
+        session = new TouchSession(paintingSize.width, paintingSize.height);
+        startTime = SystemClock.uptimeMillis();
+    }
+
+    public TouchSession getSession() {
+        return session;
+    }
+
+    public void save(File file) throws IOException {
+        session.save(file);
+    }
+
+    private int relativeTime(long time) {
+        return (int) (time - startTime);
+    }
+
+    public void onTouchEvent(MotionEvent event) {
+        int pointerCount = event.getPointerCount();
+        int sampleCount = event.getHistorySize() + 1;
+
+        TouchSession.Event record = new TouchSession.Event();
+        record.time = relativeTime(event.getEventTime());
+        record.action = event.getActionMasked();
+        record.actionIndex = event.getActionIndex();
+        record.downTime = relativeTime(event.getDownTime());
+        record.pointerIds = new int[pointerCount];
+        record.sampleTimes = new int[sampleCount];
+        record.coords = new float[sampleCount * pointerCount * 2];
+
+        for (int p = 0; p < pointerCount; p++) {
+            record.pointerIds[p] = event.getPointerId(p);
+        }
+
+        int index = 0;
+        for (int h = 0; h < sampleCount - 1; h++) {
+            record.sampleTimes[h] = relativeTime(event.getHistoricalEventTime(h));
+            for (int p = 0; p < pointerCount; p++) {
+                record.coords[index++] = event.getHistoricalX(p, h);
+                record.coords[index++] = event.getHistoricalY(p, h);
+            }
+        }
+        record.sampleTimes[sampleCount - 1] = record.time;
+        for (int p = 0; p < pointerCount; p++) {
+            record.coords[index++] = event.getX(p);
+            record.coords[index++] = event.getY(p);
+        }
+
+        session.add(record);
+    }
+
+    public void onBrushChanged(Brush brush) {
+        TouchSession.BrushChange record = new TouchSession.BrushChange();
+        record.time = relativeTime(SystemClock.uptimeMillis());
+        record.brush = EditScript.BrushType.fromBrush(brush);
+        session.add(record);
+    }
+
+    public void onColorChanged(int color) {
+        TouchSession.ColorChange record = new TouchSession.ColorChange();
+        record.time = relativeTime(SystemClock.uptimeMillis());
+        record.color = color;
+        session.add(record);
+    }
+
+    public void onSizeChanged(float size) {
+        TouchSession.SizeChange record = new TouchSession.SizeChange();
+        record.time = relativeTime(SystemClock.uptimeMillis());
+        record.size = size;
+        session.add(record);
+    }
+
+    public void onViewportChanged(Viewport viewport, float viewWidth, float viewHeight) {
+        TouchSession.ViewportChange record = new TouchSession.ViewportChange();
+        record.time = relativeTime(SystemClock.uptimeMillis());
+        record.viewWidth = viewWidth;
+        record.viewHeight = viewHeight;
+        record.zoom = viewport.getZoom();
+        record.translationX = viewport.getTranslationX();
+        record.translationY = viewport.getTranslationY();
+        session.add(record);
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.photopaint.views.components.paint.replay;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import com.example.photopaint.helpers.AndroidUtilities;
+import com.example.photopaint.helpers.BuildVars;
+import com.example.photopaint.helpers.FileLog;
+import com.example.photopaint.views.components.paint.RenderView;
+import com.example.photopaint.views.components.paint.batch.EditScript;
+import com.example.photopaint.views.components.paint.batch.SoftwareRenderer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+// 把录下来的TouchSession重新喂给RenderView，走和真实触摸一样的Input -> Painting流程
+public class TouchReplayer {
+
+    public interface Callback {
+        void onReplayFinished(Report report);
+    }
+
+    public static class Report {
+        public float speed;
+        public int events;
+        public int samples;
+        public int strokes;
+        public long recordedDurationMs;
+        public long replayDurationMs;
+        public long inputTimeNs;
+        public long maxInputTimeNs;
+        public String touchLatency;
+        public int paths;
+        public int predictions;
+        // Input输出的笔画流的CRC32，覆盖平滑、切段和预测
+        public long pathsChecksum;
+        public EditScript script;
+
+        @Override
+        public String toString() {
+            return "speed=" + speed + " events=" + events + " samples=" + samples + " strokes=" + strokes
+                    + " recorded=" + recordedDurationMs + "ms replay=" + replayDurationMs + "ms"
+                    + " input avg=" + String.format(Locale.US, "%.3f", events > 0 ? inputTimeNs / 1000000.0f / events : 0.0f) + "ms max=" + String.format(Locale.US, "%.3f", maxInputTimeNs / 1000000.0f) + "ms"
+                    + " latency " + touchLatency
+                    + " paths=" + paths + " predictions=" + predictions + " checksum=" + Long.toHexString(pathsChecksum);
+        }
+    }
+
+    private RenderView renderView;
+    private Handler handler = new Handler(Looper.getMainLooper());
+
+    private List<TouchSession.Record> records;
+    private int index;
+    private float speed;
+    private long startTime;
+    private TouchRecorder savedRecorder;
+    private StrokeCapture capture;
+    private Report report;
+    private Callback callback;
+    private boolean running;
+
+    private MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[0];
+    private MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[0];
+
+    private Runnable stepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!running) {
+                return;
+            }
+            dispatch(records.get(index));
+            index++;
+            scheduleNext();
+        }
+    };
+
+    public TouchReplayer(RenderView view) {
+        renderView = view;
+    }
+
+    // speed为1按原来的节奏回放，大于1加速，小于等于0尽快回放；事件里的时间戳保持录制时的间隔，保证笔画一致
+    public void replay(TouchSession session, float speed, Callback callback) {
+        cancel();
+
+        this.records = session.getRecords();
+        this.speed = speed;
+        this.callback = callback;
+        index = 0;
+        running = true;
+
+        report = new Report();
+        report.speed = speed;
+        report.recordedDurationMs = session.getDuration();
+
+        // 回放时不要把事件再录进去
+        savedRecorder = renderView.getRecorder();
+        renderView.setRecorder(null);
+        renderView.getTouchLatency().reset();
+
+        capture = new StrokeCapture(renderView.getPainting().getSize());
+        renderView.getPainting().setStrokeListener(capture);
+
+        // 第一个视口状态直接套用，后面的变化由回放的手势自己产生
+        for (int a = 0; a < records.size(); a++) {
+            TouchSession.Record record = records.get(a);
+            if (record instanceof TouchSession.ViewportChange) {
+                TouchSession.ViewportChange change = (TouchSession.ViewportChange) record;
+                renderView.setViewport(change.zoom, change.translationX, change.translationY);
+                break;
+            }
+        }
+
+        startTime = SystemClock.uptimeMillis();
+        scheduleNext();
+    }
+
+    public void cancel() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        handler.removeCallbacks(stepRunnable);
+        renderView.setRecorder(savedRecorder);
+        savedRecorder = null;
+        renderView.getPainting().setStrokeListener(null);
+        capture = null;
+    }
+
+    private void scheduleNext() {
+        if (index >= records.size()) {
+            finish();
+            return;
+        }
+        long delay = 0;
+        if (speed > 0) {
+            delay = Math.max(0, startTime + (long) (records.get(index).time / speed) - SystemClock.uptimeMillis());
+        }
+        handler.postDelayed(stepRunnable, delay);
+    }
+
+    private void finish() {
+        running = false;
+        renderView.setRecorder(savedRecorder);
+        savedRecorder = null;
+        renderView.getPainting().setStrokeListener(null);
+
+        report.paths = capture.getPathsCount();
+        report.predictions = capture.getPredictionsCount();
+        report.pathsChecksum = capture.getChecksum();
+        report.script = capture.getScript();
+        capture = null;
+
+        // 等GL线程把回放产生的绘制都做完再出报告
+        final Report result = report;
+        final Callback resultCallback = callback;
+        renderView.performInContext(new Runnable() {
+            @Override
+            public void run() {
+                AndroidUtilities.runOnUIThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        result.replayDurationMs = SystemClock.uptimeMillis() - startTime;
+                        result.touchLatency = renderView.getTouchLatency().toString();
+                        if (BuildVars.LOGS_ENABLED) {
+                            FileLog.d("touch replay " + result);
+                        }
+                        if (resultCallback != null) {
+                            resultCallback.onReplayFinished(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void dispatch(TouchSession.Record record) {
+        if (record instanceof TouchSession.Event) {
+            dispatchEvent((TouchSession.Event) record);
+        } else if (record instanceof TouchSession.BrushChange) {
+            renderView.setBrush(((TouchSession.BrushChange) record).brush.createBrush());
+        } else if (record instanceof TouchSession.ColorChange) {
+            renderView.setColor(((TouchSession.ColorChange) record).color);
+        } else if (record instanceof TouchSession.SizeChange) {
+            renderView.setBrushSize(((TouchSession.SizeChange) record).size);
+        }
+    }
+
+    private void dispatchEvent(TouchSession.Event event) {
+        int pointerCount = event.getPointerCount();
+        if (properties.length < pointerCount) {
+            properties = Arrays.copyOf(properties, pointerCount);
+            coords = Arrays.copyOf(coords, pointerCount);
+            for (int p = 0; p < pointerCount; p++) {
+                if (properties[p] == null) {
+                    properties[p] = new MotionEvent.PointerProperties();
+                    coords[p] = new MotionEvent.PointerCoords();
+                }
+            }
+        }
+        for (int p = 0; p < pointerCount; p++) {
+            properties[p].id = event.pointerIds[p];
+        }
+
+        int action = event.action | (event.actionIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+        fillCoords(event, 0);
+        MotionEvent motionEvent = MotionEvent.obtain(startTime + event.downTime, startTime + event.sampleTimes[0], action, pointerCount, properties, coords, 0, 0, 1.0f, 1.0f, 0, 0, 0, 0);
+        for (int s = 1; s < event.getSampleCount(); s++) {
+            fillCoords(event, s);
+            motionEvent.addBatch(startTime + event.sampleTimes[s], coords, 0);
+        }
+
+        long time = System.nanoTime();
+        renderView.onTouchEvent(motionEvent);
+        time = System.nanoTime() - time;
+        motionEvent.recycle();
+
+        report.events++;
+        report.samples += event.getSampleCount();
+        report.inputTimeNs += time;
+        report.maxInputTimeNs = Math.max(report.maxInputTimeNs, time);
+        if (event.action == MotionEvent.ACTION_UP && pointerCount == 1) {
+            report.strokes++;
+        }
+    }
+
+    private void fillCoords(TouchSession.Event event, int sample) {
+        for (int p = 0; p < event.getPointerCount(); p++) {
+            coords[p].x = event.getX(sample, p);
+            coords[p].y = event.getY(sample, p);
+            coords[p].pressure = 1.0f;
+            coords[p].size = 1.0f;
+        }
+    }
+
+    // 用软件渲染器把回放时Input交出来的笔画画到背景上，结果和GPU无关，可以用来比较校验和
+    public static Bitmap renderSoftware(EditScript script, Bitmap background) {
+        SoftwareRenderer renderer = new SoftwareRenderer();
+        try {
+            return renderer.render(script, background);
+        } finally {
+            renderer.cleanResources();
+        }
+    }
+
+    public static long checksum(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] row = new int[width];
+        ByteBuffer buffer = ByteBuffer.allocate(width * 4);
+
+        CRC32 crc = new CRC32();
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            buffer.clear();
+            buffer.asIntBuffer().put(row);
+            crc.update(buffer.array(), 0, width * 4);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.photopaint.views.components.paint.replay;
+
+import com.example.photopaint.views.components.paint.batch.EditScript;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 录下来的一次绘制过程：触摸事件和画笔、颜色、粗细、视口的变化，时间都是相对录制开始的毫秒数
+public class TouchSession {
+
+    private static final int MAGIC = 0x50505453;
+    private static final int VERSION = 1;
+
+    private static final int TYPE_END = 0;
+    private static final int TYPE_EVENT = 1;
+    private static final int TYPE_BRUSH = 2;
+    private static final int TYPE_COLOR = 3;
+    private static final int TYPE_SIZE = 4;
+    private static final int TYPE_VIEWPORT = 5;
+
+    public static abstract class Record {
+        public int time;
+    }
+
+    public static class Event extends Record {
+        public int action;
+        public int actionIndex;
+        public int downTime;
+        public int[] pointerIds;
+        // 每个采样点的时间，最后一个是事件本身，前面的是历史采样
+        public int[] sampleTimes;
+        // 按采样点、触点排列：x, y, x, y ...
+        public float[] coords;
+
+        public int getPointerCount() {
+            return pointerIds.length;
+        }
+
+        public int getSampleCount() {
+            return sampleTimes.length;
+        }
+
+        public float getX(int sample, int pointer) {
+            return coords[(sample * pointerIds.length + pointer) * 2];
+        }
+
+        public float getY(int sample, int pointer) {
+            return coords[(sample * pointerIds.length + pointer) * 2 + 1];
+        }
+    }
+
+    public static class BrushChange extends Record {
+        public EditScript.BrushType brush;
+    }
+
+    public static class ColorChange extends Record {
+        public int color;
+    }
+
+    public static class SizeChange extends Record {
+        public float size;
+    }
+
+    public static class ViewportChange extends Record {
+        public float viewWidth;
+        public float viewHeight;
+        public float zoom;
+        public float translationX;
+        public float translationY;
+    }
+
+    private float width;
+    private float height;
+    private ArrayList<Record> records = new ArrayList<>();
+
+    public TouchSession(float width, float height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public void add(Record record) {
+        records.add(record);
+    }
+
+    public List<Record> getRecords() {
+        return Collections.unmodifiableList(records);
+    }
+
+    public int getDuration() {
+        return records.isEmpty() ? 0 : records.get(records.size() - 1).time;
+    }
+
+    public void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeFloat(width);
+            out.writeFloat(height);
+
+            for (int a = 0; a < records.size(); a++) {
+                Record record = records.get(a);
+                if (record instanceof Event) {
+                    Event event = (Event) record;
+                    out.writeByte(TYPE_EVENT);
+                    out.writeInt(event.time);
+                    out.writeByte(event.action);
+                    out.writeByte(event.actionIndex);
+                    out.writeInt(event.downTime);
+                    out.writeByte(event.pointerIds.length);
+                    for (int i = 0; i < event.pointerIds.length; i++) {
+                        out.writeByte(event.pointerIds[i]);
+                    }
+                    out.writeShort(event.sampleTimes.length);
+                    for (int i = 0; i < event.sampleTimes.length; i++) {
+                        out.writeInt(event.sampleTimes[i]);
+                    }
+                    for (int i = 0; i < event.coords.length; i++) {
+                        out.writeFloat(event.coords[i]);
+                    }
+                } else if (record instanceof BrushChange) {
+                    out.writeByte(TYPE_BRUSH);
+                    out.writeInt(record.time);
+                    out.writeByte(((BrushChange) record).brush.ordinal());
+                } else if (record instanceof ColorChange) {
+                    out.writeByte(TYPE_COLOR);
+                    out.writeInt(record.time);
+                    out.writeInt(((ColorChange) record).color);
+                } else if (record instanceof SizeChange) {
+                    out.writeByte(TYPE_SIZE);
+                    out.writeInt(record.time);
+                    out.writeFloat(((SizeChange) record).size);
+                } else if (record instanceof ViewportChange) {
+                    ViewportChange viewport = (ViewportChange) record;
+                    out.writeByte(TYPE_VIEWPORT);
+                    out.writeInt(viewport.time);
+                    out.writeFloat(viewport.viewWidth);
+                    out.writeFloat(viewport.viewHeight);
+                    out.writeFloat(viewport.zoom);
+                    out.writeFloat(viewport.translationX);
+                    out.writeFloat(viewport.translationY);
+                }
+            }
+            out.writeByte(TYPE_END);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static TouchSession load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a touch session file");
+            }
+            int version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("unsupported touch session version " + version);
+            }
+            TouchSession session = new TouchSession(in.readFloat(), in.readFloat());
+
+            EditScript.BrushType[] brushTypes = EditScript.BrushType.values();
+            while (true) {
+                int type = in.readByte();
+                if (type == TYPE_END) {
+                    break;
+                }
+                int time = in.readInt();
+                Record record;
+                switch (type) {
+                    case TYPE_EVENT: {
+                        Event event = new Event();
+                        event.action = in.readByte();
+                        event.actionIndex = in.readByte();
+                        event.downTime = in.readInt();
+                        event.pointerIds = new int[in.readByte()];
+                        for (int i = 0; i < event.pointerIds.length; i++) {
+                            event.pointerIds[i] = in.readByte();
+                        }
+                        event.sampleTimes = new int[in.readShort()];
+                        for (int i = 0; i < event.sampleTimes.length; i++) {
+                            event.sampleTimes[i] = in.readInt();
+                        }
+                        event.coords = new float[event.sampleTimes.length * event.pointerIds.length * 2];
+                        for (int i = 0; i < event.coords.length; i++) {
+                            event.coords[i] = in.readFloat();
+                        }
+                        record = event;
+                    }
+                    break;
+
+                    case TYPE_BRUSH: {
+                        BrushChange change = new BrushChange();
+                        change.brush = brushTypes[in.readByte()];
+                        record = change;
+                    }
+                    break;
+
+                    case TYPE_COLOR: {
+                        ColorChange change = new ColorChange();
+                        change.color = in.readInt();
+                        record = change;
+                    }
+                    break;
+
+                    case TYPE_SIZE: {
+                        SizeChange change = new SizeChange();
+                        change.size = in.readFloat();
+                        record = change;
+                    }
+                    break;
+
+                    case TYPE_VIEWPORT: {
+                        ViewportChange change = new ViewportChange();
+                        change.viewWidth = in.readFloat();
+                        change.viewHeight = in.readFloat();
+                        change.zoom = in.readFloat();
+                        change.translationX = in.readFloat();
+                        change.translationY = in.readFloat();
+                        record = change;
+                    }
+                    break;
+
+                    default:
+                        throw new IOException("unknown record type " + type);
+                }
+                record.time = time;
+                session.add(record);
+            }
+            return session;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.photopaint.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// BinaryLog写出的文件交给BinaryLogDecoder还原，比对文本
+public class BinaryLogTest {
+
+    private File file;
+    private File dictionary;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("binary", ".blog");
+        dictionary = new File(file.getPath() + BinaryLog.DICTIONARY_SUFFIX);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        dictionary.delete();
+    }
+
+    private String[] decode() throws Exception {
+        BinaryLogDecoder decoder = new BinaryLogDecoder();
+        decoder.readDictionary(dictionary);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        decoder.decode(file, out);
+        out.close();
+        String text = bytes.toString("UTF-8");
+        return text.isEmpty() ? new String[0] : text.split("\\r?\\n");
+    }
+
+    // 去掉行首的时间，时间按本地时区格式化
+    private static String body(String line) {
+        return line.substring(line.indexOf(' ') + 1);
+    }
+
+    private static String render(String template, int argCount, long... args) {
+        StringBuilder out = new StringBuilder();
+        BinaryLogDecoder.render(out, template, argCount, args);
+        return out.toString();
+    }
+
+    @Test
+    public void renderTemplates() {
+        assertEquals("no args", render("no args", 0));
+        assertEquals("a=1 b=-2", render("a={} b={}", 2, 1, -2));
+        assertEquals("scale 1.50x", render("scale {f}x", 1, BinaryLog.bits(1.5)));
+        // 参数不够时剩下的占位符原样输出
+        assertEquals("7 {} {f}", render("{} {} {f}", 1, 7));
+        assertEquals("{x} 3 {", render("{x} {} {", 1, 3));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        BinaryLog log = new BinaryLog();
+        log.open(file, 16);
+        log.write(BinaryLog.LEVEL_DEBUG, "started", 0, 0, 0, 0, 0);
+        log.write(BinaryLog.LEVEL_WARN, "frame {} took {}ms", 2, 12, 48, 0, 0);
+        log.write(BinaryLog.LEVEL_ERROR, "zoom {f} at {},{}", 3, BinaryLog.bits(2.25), 100, -5, 0);
+        log.write(BinaryLog.LEVEL_DEBUG, "four {} {} {} {}", 4, 1, 2, 3, Long.MAX_VALUE);
+        log.write(BinaryLog.LEVEL_DEBUG, "frame {} took {}ms", 2, 13, 16, 0, 0);
+
+        String thread = Thread.currentThread().getName();
+        String[] lines = decode();
+        assertEquals(5, lines.length);
+        assertEquals("D/" + thread + ": started", body(lines[0]));
+        assertEquals("W/" + thread + ": frame 12 took 48ms", body(lines[1]));
+        assertEquals("E/" + thread + ": zoom 2.25 at 100,-5", body(lines[2]));
+        assertEquals("D/" + thread + ": four 1 2 3 " + Long.MAX_VALUE, body(lines[3]));
+        assertEquals("D/" + thread + ": frame 13 took 16ms", body(lines[4]));
+    }
+
+    @Test
+    public void threadsAreNamed() throws Exception {
+        final BinaryLog log = new BinaryLog();
+        log.open(file, 16);
+        log.write(BinaryLog.LEVEL_DEBUG, "main", 0, 0, 0, 0, 0);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                log.write(BinaryLog.LEVEL_DEBUG, "worker", 0, 0, 0, 0, 0);
+            }
+        }, "binary-worker");
+        thread.start();
+        thread.join();
+
+        String[] lines = decode();
+        assertEquals(2, lines.length);
+        assertTrue(lines[1], lines[1].endsWith(" D/binary-worker: worker"));
+    }
+
+    // 线程池里的线程跑不同队列的任务时会改名，每条记录要记在当时的名字下
+    @Test
+    public void renamedThreadUsesCurrentName() throws Exception {
+        final BinaryLog log = new BinaryLog();
+        log.open(file, 16);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Thread current = Thread.currentThread();
+                current.setName("lane-a");
+                log.write(BinaryLog.LEVEL_DEBUG, "first", 0, 0, 0, 0, 0);
+                current.setName("lane-b");
+                log.write(BinaryLog.LEVEL_DEBUG, "second", 0, 0, 0, 0, 0);
+                current.setName("lane-a");
+                log.write(BinaryLog.LEVEL_DEBUG, "third", 0, 0, 0, 0, 0);
+            }
+        }, "pool-thread");
+        thread.start();
+        thread.join();
+
+        String[] lines = decode();
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" D/lane-a: first"));
+        assertTrue(lines[1], lines[1].endsWith(" D/lane-b: second"));
+        assertTrue(lines[2], lines[2].endsWith(" D/lane-a: third"));
+    }
+
+    // 写满以后从头覆盖，解码按序号排出最后capacity条
+    @Test
+    public void wrapsAroundInOrder() throws Exception {
+        BinaryLog log = new BinaryLog();
+        log.open(file, 8);
+        for (int a = 0; a < 21; a++) {
+            log.write(BinaryLog.LEVEL_DEBUG, "n={}", 1, a, 0, 0, 0);
+        }
+
+        String[] lines = decode();
+        assertEquals(8, lines.length);
+        for (int a = 0; a < 8; a++) {
+            assertTrue(lines[a], lines[a].endsWith(": n=" + (13 + a)));
+        }
+    }
+
+    @Test
+    public void emptyLogDecodesToNothing() throws Exception {
+        new BinaryLog().open(file, 8);
+        assertEquals(0, decode().length);
+    }
+
+    @Test
+    public void missingDictionaryFallsBackToIds() throws Exception {
+        BinaryLog log = new BinaryLog();
+        log.open(file, 8);
+        log.write(BinaryLog.LEVEL_DEBUG, "x={} y={}", 2, 4, 5, 0, 0);
+        dictionary.delete();
+
+        String[] lines = decode();
+        assertEquals(1, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" D/thread-0: <unknown template 0> 4 5"));
+    }
+
+    @Test
+    public void rejectsForeignFile() throws Exception {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(BinaryLog.HEADER_SIZE);
+        randomAccessFile.close();
+        try {
+            decode();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("not a binary log"));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.photopaint.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LogRingBufferTest {
+
+    private static class Collector implements LogRingBuffer.Consumer {
+        final List<String> messages = new ArrayList<>();
+        final List<Throwable> exceptions = new ArrayList<>();
+        final List<Integer> levels = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+
+        @Override
+        public void onRecord(int level, long time, String message, Throwable exception) {
+            levels.add(level);
+            times.add(time);
+            messages.add(message);
+            exceptions.add(exception);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPowerOfTwo() {
+        new LogRingBuffer(12);
+    }
+
+    @Test
+    public void drainsInOfferOrder() {
+        LogRingBuffer buffer = new LogRingBuffer(8);
+        Exception exception = new Exception("boom");
+        assertTrue(buffer.offer(1, 100, "first", null));
+        assertTrue(buffer.offer(2, 200, "second", exception));
+        assertEquals(2, buffer.size());
+
+        Collector collector = new Collector();
+        assertEquals(2, buffer.drain(collector));
+        assertEquals(0, buffer.size());
+
+        assertEquals("first", collector.messages.get(0));
+        assertEquals(1, (int) collector.levels.get(0));
+        assertEquals(100, (long) collector.times.get(0));
+        assertNull(collector.exceptions.get(0));
+        assertEquals("second", collector.messages.get(1));
+        assertSame(exception, collector.exceptions.get(1));
+
+        assertEquals(0, buffer.drain(collector));
+    }
+
+    @Test
+    public void dropsWhenFullAndCounts() {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        for (int a = 0; a < 4; a++) {
+            assertTrue(buffer.offer(0, a, "m" + a, null));
+        }
+        assertFalse(buffer.offer(0, 4, "m4", null));
+        assertFalse(buffer.offer(0, 5, "m5", null));
+        assertEquals(2, buffer.getDroppedCount());
+
+        Collector collector = new Collector();
+        buffer.drain(collector);
+        assertEquals(4, collector.messages.size());
+        assertEquals("m3", collector.messages.get(3));
+
+        assertEquals(2, buffer.takeDroppedCount());
+        assertEquals(0, buffer.getDroppedCount());
+
+        // 取空以后又能写
+        assertTrue(buffer.offer(0, 6, "m6", null));
+    }
+
+    @Test
+    public void wrapsAround() {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        Collector collector = new Collector();
+        for (int a = 0; a < 50; a++) {
+            assertTrue(buffer.offer(0, a, "m" + a, null));
+            if (a % 3 == 2) {
+                buffer.drain(collector);
+            }
+        }
+        buffer.drain(collector);
+        assertEquals(50, collector.messages.size());
+        for (int a = 0; a < 50; a++) {
+            assertEquals("m" + a, collector.messages.get(a));
+        }
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    // 多个线程同时写，一个线程读，写进去的和丢掉的加起来要对得上，每个线程自己的顺序不乱
+    @Test
+    public void multipleProducersSingleConsumer() throws InterruptedException {
+        final LogRingBuffer buffer = new LogRingBuffer(64);
+        final int producers = 4;
+        final int records = 20000;
+        final AtomicBoolean finished = new AtomicBoolean();
+        final long[] accepted = new long[producers];
+
+        final Thread[] threads = new Thread[producers];
+        for (int t = 0; t < producers; t++) {
+            final int producer = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int a = 0; a < records; a++) {
+                        if (buffer.offer(producer, a, null, null)) {
+                            accepted[producer]++;
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        final long[] lastTime = new long[producers];
+        final long[] received = new long[producers];
+        final boolean[] outOfOrder = new boolean[1];
+        for (int t = 0; t < producers; t++) {
+            lastTime[t] = -1;
+        }
+        LogRingBuffer.Consumer consumer = new LogRingBuffer.Consumer() {
+            @Override
+            public void onRecord(int level, long time, String message, Throwable exception) {
+                if (time <= lastTime[level]) {
+                    outOfOrder[0] = true;
+                }
+                lastTime[level] = time;
+                received[level]++;
+            }
+        };
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (Thread thread : threads) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException ignore) {
+
+                    }
+                }
+                finished.set(true);
+            }
+        });
+        watcher.start();
+
+        while (!finished.get()) {
+            buffer.drain(consumer);
+        }
+        buffer.drain(consumer);
+        watcher.join();
+
+        long total = 0;
+        for (int t = 0; t < producers; t++) {
+            assertEquals(accepted[t], received[t]);
+            total += received[t];
+        }
+        assertFalse(outOfOrder[0]);
+        assertEquals(producers * records, total + buffer.getDroppedCount());
+        assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.photopaint.helpers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// DispatchQueue的排队逻辑，handler在单测环境里是空实现，所以直接测队列
+public class PriorityTaskQueueTest {
+
+    private PriorityTaskQueue queue;
+    private List<String> log;
+
+    @Before
+    public void setUp() {
+        queue = new PriorityTaskQueue(DispatchQueue.PRIORITY_LOW + 1);
+        log = new ArrayList<>();
+    }
+
+    private Runnable task(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+        };
+    }
+
+    private void drain() {
+        PriorityTaskQueue.Task task;
+        while ((task = queue.poll()) != null) {
+            task.runnable.run();
+        }
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() {
+        queue.offer(task("low1"), DispatchQueue.PRIORITY_LOW, null, 0);
+        queue.offer(task("normal1"), DispatchQueue.PRIORITY_NORMAL, null, 0);
+        queue.offer(task("high"), DispatchQueue.PRIORITY_HIGH, null, 0);
+        queue.offer(task("low2"), DispatchQueue.PRIORITY_LOW, null, 0);
+        queue.offer(task("normal2"), DispatchQueue.PRIORITY_NORMAL, null, 0);
+        assertEquals(5, queue.size());
+
+        drain();
+        assertEquals(Arrays.asList("high", "normal1", "normal2", "low1", "low2"), log);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void sameKeyKeepsPositionAndLastRunnable() {
+        Object key = new Object();
+        assertFalse(queue.offer(task("a1"), DispatchQueue.PRIORITY_NORMAL, key, 0));
+        queue.offer(task("b"), DispatchQueue.PRIORITY_NORMAL, null, 0);
+        assertTrue(queue.offer(task("a2"), DispatchQueue.PRIORITY_NORMAL, key, 0));
+        assertTrue(queue.offer(task("a3"), DispatchQueue.PRIORITY_NORMAL, key, 0));
+        assertEquals(2, queue.size());
+
+        drain();
+        assertEquals(Arrays.asList("a3", "b"), log);
+    }
+
+    @Test
+    public void sameKeyWithOtherPriorityMoves() {
+        Object key = "redraw";
+        queue.offer(task("a1"), DispatchQueue.PRIORITY_LOW, key, 0);
+        queue.offer(task("b"), DispatchQueue.PRIORITY_NORMAL, null, 0);
+        assertTrue(queue.offer(task("a2"), DispatchQueue.PRIORITY_HIGH, key, 0));
+        assertEquals(2, queue.size());
+
+        drain();
+        assertEquals(Arrays.asList("a2", "b"), log);
+    }
+
+    @Test
+    public void keyIsReleasedAfterPoll() {
+        Object key = "redraw";
+        queue.offer(task("a1"), DispatchQueue.PRIORITY_NORMAL, key, 0);
+        queue.poll().runnable.run();
+
+        // 已经取出的任务不能再被合并
+        assertFalse(queue.offer(task("a2"), DispatchQueue.PRIORITY_NORMAL, key, 0));
+        assertEquals(1, queue.size());
+        drain();
+        assertEquals(Arrays.asList("a1", "a2"), log);
+    }
+
+    @Test
+    public void removeDropsEveryCopyAndItsKey() {
+        Runnable shared = task("shared");
+        queue.offer(shared, DispatchQueue.PRIORITY_HIGH, null, 0);
+        queue.offer(task("other"), DispatchQueue.PRIORITY_NORMAL, null, 0);
+        queue.offer(shared, DispatchQueue.PRIORITY_LOW, "key", 0);
+        assertEquals(3, queue.size());
+
+        queue.remove(shared);
+        assertEquals(1, queue.size());
+        assertFalse(queue.offer(task("keyed"), DispatchQueue.PRIORITY_LOW, "key", 0));
+
+        drain();
+        assertEquals(Arrays.asList("other", "keyed"), log);
+    }
+
+    @Test
+    public void clearEmptiesQueueAndKeys() {
+        queue.offer(task("a"), DispatchQueue.PRIORITY_HIGH, "key", 0);
+        queue.offer(task("b"), DispatchQueue.PRIORITY_LOW, null, 0);
+        queue.clear();
+
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+        assertFalse(queue.offer(task("c"), DispatchQueue.PRIORITY_HIGH, "key", 0));
+    }
+
+    @Test
+    public void keepsPostTimeAndPriority() {
+        Runnable runnable = task("a");
+        queue.offer(runnable, DispatchQueue.PRIORITY_LOW, null, 1234);
+        PriorityTaskQueue.Task task = queue.poll();
+        assertSame(runnable, task.runnable);
+        assertEquals(DispatchQueue.PRIORITY_LOW, task.priority);
+        assertEquals(1234, task.postTime);
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.photopaint.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SerialQueueTest {
+
+    private static final long TIMEOUT = 10;
+
+    // 主线程handler在单测环境里是空实现，延迟任务先攒起来由测试手动触发
+    private static class ManualQueue extends SerialQueue {
+        final List<Runnable> scheduled = new ArrayList<>();
+
+        ManualQueue(String name) {
+            super(name);
+        }
+
+        @Override
+        void scheduleDelayed(Runnable runnable, long delay) {
+            synchronized (scheduled) {
+                scheduled.add(runnable);
+            }
+        }
+
+        @Override
+        void cancelDelayed(Runnable runnable) {
+            synchronized (scheduled) {
+                scheduled.remove(runnable);
+            }
+        }
+
+        void fireAll() {
+            List<Runnable> copy;
+            synchronized (scheduled) {
+                copy = new ArrayList<>(scheduled);
+                scheduled.clear();
+            }
+            for (Runnable runnable : copy) {
+                runnable.run();
+            }
+        }
+
+        int scheduledCount() {
+            synchronized (scheduled) {
+                return scheduled.size();
+            }
+        }
+    }
+
+    private static Runnable latch(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void runsInPostingOrder() throws InterruptedException {
+        SerialQueue queue = new SerialQueue("serial-test");
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int a = 0; a < 1000; a++) {
+            final int index = a;
+            queue.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                }
+            });
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        queue.postRunnable(latch(done));
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+
+        assertEquals(1000, order.size());
+        for (int a = 0; a < order.size(); a++) {
+            assertEquals(a, (int) order.get(a));
+        }
+    }
+
+    // 几个队列共用线程池，各自的任务不会同时执行，顺序也不乱
+    @Test
+    public void queuesStaySerialOnSharedPool() throws InterruptedException {
+        final int queues = 6;
+        final int tasks = 500;
+        final CountDownLatch done = new CountDownLatch(queues);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int q = 0; q < queues; q++) {
+            final SerialQueue queue = new SerialQueue("serial-" + q);
+            final AtomicInteger running = new AtomicInteger();
+            final int[] next = new int[1];
+            for (int a = 0; a < tasks; a++) {
+                final int index = a;
+                queue.postRunnable(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (running.incrementAndGet() != 1 || next[0] != index) {
+                            failures.incrementAndGet();
+                        }
+                        if (!queue.getName().equals(Thread.currentThread().getName())) {
+                            failures.incrementAndGet();
+                        }
+                        next[0]++;
+                        Thread.yield();
+                        running.decrementAndGet();
+                    }
+                });
+            }
+            queue.postRunnable(latch(done));
+        }
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void exceptionDoesNotStopQueue() throws InterruptedException {
+        SerialQueue queue = new SerialQueue("serial-test");
+        queue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("test");
+            }
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        queue.postRunnable(latch(done));
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelAndCleanupDropPendingTasks() throws InterruptedException {
+        SerialQueue queue = new SerialQueue("serial-test");
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        queue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+
+                }
+            }
+        });
+        assertTrue(blocked.await(TIMEOUT, TimeUnit.SECONDS));
+
+        final AtomicInteger ran = new AtomicInteger();
+        Runnable cancelled = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        queue.postRunnable(cancelled);
+        queue.postRunnable(cancelled);
+        queue.cancelRunnable(cancelled);
+        queue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                ran.addAndGet(100);
+            }
+        });
+        queue.cleanupQueue();
+        release.countDown();
+
+        // 清空以后队列还能继续用
+        CountDownLatch done = new CountDownLatch(1);
+        queue.postRunnable(latch(done));
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void threadNameIsRestored() throws InterruptedException {
+        SerialQueue queue = new SerialQueue("serial-name");
+        final String[] name = new String[1];
+        CountDownLatch done = new CountDownLatch(1);
+        queue.postRunnable(new Runnable() {
+            @Override
+            public void run() {
+                name[0] = Thread.currentThread().getName();
+            }
+        });
+        queue.postRunnable(latch(done));
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("serial-name", name[0]);
+
+        // 队列跑完后线程池里的线程换回原来的名字
+        final CountDownLatch checked = new CountDownLatch(1);
+        final boolean[] renamed = new boolean[1];
+        SharedExecutor.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                renamed[0] = Thread.currentThread().getName().startsWith("serial");
+                checked.countDown();
+            }
+        });
+        assertTrue(checked.await(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(renamed[0]);
+    }
+
+    // 同一个runnable延迟投递两次，两次都要执行
+    @Test
+    public void sameRunnableDelayedTwiceRunsTwice() throws InterruptedException {
+        ManualQueue queue = new ManualQueue("serial-test");
+        final AtomicInteger ran = new AtomicInteger();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        queue.postRunnable(runnable, 100);
+        queue.postRunnable(runnable, 200);
+        assertEquals(2, queue.scheduledCount());
+
+        queue.fireAll();
+        CountDownLatch done = new CountDownLatch(1);
+        queue.postRunnable(latch(done));
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(2, ran.get());
+
+        // 执行过的不能再被重复触发
+        queue.fireAll();
+        assertEquals(2, ran.get());
+    }
+
+    @Test
+    public void cancelDropsEveryDelayedPost() throws InterruptedException {
+        ManualQueue queue = new ManualQueue("serial-test");
+        final AtomicInteger ran = new AtomicInteger();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        queue.postRunnable(runnable, 100);
+        queue.postRunnable(runnable, 100);
+        queue.cancelRunnable(runnable);
+        assertEquals(0, queue.scheduledCount());
+
+        // 另一个runnable的延迟任务不受影响
+        CountDownLatch done = new CountDownLatch(1);
+        queue.postRunnable(latch(done), 100);
+        queue.postRunnable(runnable, 100);
+        queue.cleanupQueue();
+        assertEquals(0, queue.scheduledCount());
+
+        queue.postRunnable(latch(done), 100);
+        queue.fireAll();
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void delayedWrapperFiredAfterCancelIsIgnored() throws InterruptedException {
+        ManualQueue queue = new ManualQueue("serial-test");
+        final AtomicInteger ran = new AtomicInteger();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        queue.postRunnable(runnable, 100);
+        List<Runnable> stale = new ArrayList<>(queue.scheduled);
+        queue.cancelRunnable(runnable);
+        // handler已经把它取出来执行了，取消来得太晚也不能进队列
+        stale.get(0).run();
+
+        CountDownLatch done = new CountDownLatch(1);
+        queue.postRunnable(latch(done));
+        assertTrue(done.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+    }
+}
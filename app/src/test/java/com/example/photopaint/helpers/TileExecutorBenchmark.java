@@ -0,0 +1,89 @@
+package com.example.photopaint.helpers;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// 在JVM上量TileExecutor的并行效果，不进单测：
+// 两个纯Java的内核（int[]像素调亮度、int[] -> byte[]转灰度），分别用1/2/4/8个线程和几种块大小跑，
+// 每组先预热再取中位数。用法：java ... TileExecutorBenchmark [width] [height]
+public class TileExecutorBenchmark {
+
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 30;
+    private static final int[] THREADS = new int[]{1, 2, 4, 8};
+    private static final int[] TILE_SIZES = new int[]{64, 128, 256};
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        final int width = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        final int height = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+
+        final int[] source = new int[width * height];
+        for (int a = 0; a < source.length; a++) {
+            source[a] = 0xff000000 | ((a * 0x9e3779b1) >>> 8);
+        }
+        final int[] pixels = new int[source.length];
+        final byte[] gray = new byte[source.length];
+
+        TileExecutor.Kernel brightness = new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                for (int y = top; y < bottom; y++) {
+                    int offset = y * width;
+                    for (int x = left; x < right; x++) {
+                        int color = source[offset + x];
+                        int r = Math.min(255, ((color >> 16) & 0xff) * 5 / 4);
+                        int g = Math.min(255, ((color >> 8) & 0xff) * 5 / 4);
+                        int b = Math.min(255, (color & 0xff) * 5 / 4);
+                        pixels[offset + x] = (color & 0xff000000) | (r << 16) | (g << 8) | b;
+                    }
+                }
+            }
+        };
+        TileExecutor.Kernel grayscale = new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                for (int y = top; y < bottom; y++) {
+                    int offset = y * width;
+                    for (int x = left; x < right; x++) {
+                        int color = source[offset + x];
+                        gray[offset + x] = (byte) ((((color >> 16) & 0xff) * 77 + ((color >> 8) & 0xff) * 150 + (color & 0xff) * 29) >> 8);
+                    }
+                }
+            }
+        };
+
+        System.out.println(String.format(Locale.US, "%dx%d, %d cores", width, height, Runtime.getRuntime().availableProcessors()));
+        measure("int[] brightness", brightness, width, height);
+        measure("byte[] grayscale", grayscale, width, height);
+        sink = pixels[pixels.length / 2] + gray[gray.length / 2];
+    }
+
+    private static void measure(String name, TileExecutor.Kernel kernel, int width, int height) {
+        for (int tileSize : TILE_SIZES) {
+            long baseline = 0;
+            for (int threads : THREADS) {
+                TileExecutor executor = new TileExecutor(threads);
+                for (int a = 0; a < WARMUP; a++) {
+                    executor.run(width, height, tileSize, tileSize, kernel);
+                }
+                long[] times = new long[ITERATIONS];
+                for (int a = 0; a < ITERATIONS; a++) {
+                    long time = System.nanoTime();
+                    executor.run(width, height, tileSize, tileSize, kernel);
+                    times[a] = System.nanoTime() - time;
+                }
+                executor.shutdown();
+
+                Arrays.sort(times);
+                long median = times[ITERATIONS / 2];
+                if (threads == 1) {
+                    baseline = median;
+                }
+                System.out.println(String.format(Locale.US, "%-18s tile=%-4d threads=%d median=%.2fms min=%.2fms speedup=%.2fx",
+                        name, tileSize, threads, median / 1e6, times[0] / 1e6, (double) baseline / median));
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.photopaint.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TileExecutorTest {
+
+    private TileExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new TileExecutor(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    // 每个像素正好被处理一次，边缘不满一块的也要覆盖到
+    private void assertCoversOnce(int width, int height, int tileWidth, int tileHeight) {
+        final int[] hits = new int[width * height];
+        final int stride = width;
+        executor.run(width, height, tileWidth, tileHeight, new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        hits[y * stride + x]++;
+                    }
+                }
+            }
+        });
+        for (int a = 0; a < hits.length; a++) {
+            assertEquals("pixel " + a, 1, hits[a]);
+        }
+    }
+
+    @Test
+    public void coversEveryPixelOnce() {
+        assertCoversOnce(512, 512, 128, 128);
+        assertCoversOnce(300, 17, 128, 128);
+        assertCoversOnce(1, 1, 128, 128);
+        assertCoversOnce(257, 129, 64, 32);
+        assertCoversOnce(100, 100, 0, 0);
+    }
+
+    @Test
+    public void emptyAreaRunsNothing() {
+        final AtomicInteger calls = new AtomicInteger();
+        TileExecutor.Kernel kernel = new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                calls.incrementAndGet();
+            }
+        };
+        executor.run(0, 100, kernel);
+        executor.run(100, 0, kernel);
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void tilesHaveRequestedSize() {
+        final int[] bounds = new int[]{Integer.MAX_VALUE, 0};
+        executor.run(1000, 1000, 100, 50, new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                synchronized (bounds) {
+                    bounds[0] = Math.min(bounds[0], (right - left) * (bottom - top));
+                    bounds[1] = Math.max(bounds[1], (right - left) * (bottom - top));
+                }
+            }
+        });
+        assertEquals(5000, bounds[0]);
+        assertEquals(5000, bounds[1]);
+    }
+
+    @Test
+    public void usesSeveralThreads() {
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        executor.run(512, 512, 32, 32, new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                threads.add(Thread.currentThread());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ignore) {
+
+                }
+            }
+        });
+        assertTrue(threads.contains(Thread.currentThread()));
+        assertTrue(threads.size() > 1);
+        assertTrue(threads.size() <= 4);
+    }
+
+    @Test
+    public void singleThreadRunsOnCaller() {
+        TileExecutor serial = new TileExecutor(1);
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger calls = new AtomicInteger();
+        serial.run(256, 256, 64, 64, new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                assertSame(caller, Thread.currentThread());
+                calls.incrementAndGet();
+            }
+        });
+        assertEquals(16, calls.get());
+        serial.shutdown();
+    }
+
+    @Test
+    public void runtimeExceptionIsRethrown() {
+        final IllegalStateException error = new IllegalStateException("tile");
+        try {
+            executor.run(1024, 1024, 64, 64, new TileExecutor.Kernel() {
+                @Override
+                public void run(int left, int top, int right, int bottom) {
+                    if (left == 512 && top == 512) {
+                        throw error;
+                    }
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(error, e);
+        }
+
+        // 出错之后还能接着用
+        assertCoversOnce(256, 256, 64, 64);
+    }
+
+    @Test
+    public void errorIsRethrown() {
+        try {
+            executor.run(256, 256, 64, 64, new TileExecutor.Kernel() {
+                @Override
+                public void run(int left, int top, int right, int bottom) {
+                    throw new AssertionError("tile");
+                }
+            });
+            fail();
+        } catch (AssertionError e) {
+            assertEquals("tile", e.getMessage());
+        }
+    }
+
+    @Test
+    public void checkedExceptionIsWrapped() {
+        final Exception error = new Exception("tile");
+        try {
+            executor.run(256, 256, 64, 64, new TileExecutor.Kernel() {
+                @Override
+                public void run(int left, int top, int right, int bottom) {
+                    TileExecutorTest.<RuntimeException>sneakyThrow(error);
+                }
+            });
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> void sneakyThrow(Throwable e) throws T {
+        throw (T) e;
+    }
+
+    // 块里再调run：所有线程都可能在外层任务里，内层必须能只靠调用线程做完，不能死锁
+    @Test(timeout = 10000)
+    public void nestedCallsComplete() {
+        final AtomicInteger inner = new AtomicInteger();
+        executor.run(512, 512, 64, 64, new TileExecutor.Kernel() {
+            @Override
+            public void run(int left, int top, int right, int bottom) {
+                executor.run(64, 64, 16, 16, new TileExecutor.Kernel() {
+                    @Override
+                    public void run(int left, int top, int right, int bottom) {
+                        inner.incrementAndGet();
+                    }
+                });
+            }
+        });
+        assertEquals(64 * 16, inner.get());
+    }
+
+    @Test
+    public void sharedInstanceIsReused() {
+        assertSame(TileExecutor.getDefault(), TileExecutor.getDefault());
+        assertEquals(Runtime.getRuntime().availableProcessors(), TileExecutor.getDefault().getParallelism());
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.photopaint.helpers.time;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+
+// 在JVM上比较FileLog用到的几种格式化方式，不进单测：
+// 每条日志新建Calendar再格式化（原来的做法）、format(long, StringBuffer)和format(long, char[], int)；
+// 最后几个线程共用一个printer，看缓存的锁带来多少竞争。用法：java ... FastDatePrinterBenchmark [iterations]
+public class FastDatePrinterBenchmark {
+
+    private static final String PATTERN = "dd_MM_yyyy_HH_mm_ss.SSS";
+    private static final int ROUNDS = 5;
+    private static final int[] THREADS = new int[]{1, 2, 4};
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final FastDateFormat format = FastDateFormat.getInstance(PATTERN, Locale.US);
+        TimeZone timeZone = format.getTimeZone();
+        StringBuffer buffer = new StringBuffer(64);
+        char[] chars = new char[64];
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // 日志时间基本单调递增，同一秒里会有好几条
+            long base = System.currentTimeMillis();
+            long sum = 0;
+
+            long time = System.nanoTime();
+            for (int a = 0; a < iterations; a++) {
+                Calendar calendar = new GregorianCalendar(timeZone, Locale.US);
+                calendar.setTimeInMillis(base + a / 8);
+                buffer.setLength(0);
+                format.format(calendar, buffer);
+                sum += buffer.length();
+            }
+            long calendarTime = System.nanoTime() - time;
+
+            time = System.nanoTime();
+            for (int a = 0; a < iterations; a++) {
+                buffer.setLength(0);
+                format.format(base + a / 8, buffer);
+                sum += buffer.length();
+            }
+            long bufferTime = System.nanoTime() - time;
+
+            time = System.nanoTime();
+            for (int a = 0; a < iterations; a++) {
+                sum += format.format(base + a / 8, chars, 0);
+            }
+            long charsTime = System.nanoTime() - time;
+
+            sink += sum;
+            System.out.println(String.format(Locale.US, "calendar %.1fns  StringBuffer %.1fns  char[] %.1fns",
+                    calendarTime / (double) iterations, bufferTime / (double) iterations, charsTime / (double) iterations));
+        }
+
+        for (int threads : THREADS) {
+            System.out.println(String.format(Locale.US, "char[] on %d threads sharing one printer %.1fns per call", threads, measureShared(format, threads, iterations)));
+        }
+    }
+
+    private static double measureShared(final FastDateFormat format, int threads, final int iterations) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long base = System.currentTimeMillis();
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    char[] chars = new char[64];
+                    long sum = 0;
+                    try {
+                        start.await();
+                    } catch (InterruptedException ignore) {
+
+                    }
+                    for (int a = 0; a < iterations; a++) {
+                        sum += format.format(base + a / 8, chars, 0);
+                    }
+                    sink += sum;
+                    done.countDown();
+                }
+            }).start();
+        }
+        long time = System.nanoTime();
+        start.countDown();
+        done.await();
+        return (System.nanoTime() - time) / (double) iterations;
+    }
+}
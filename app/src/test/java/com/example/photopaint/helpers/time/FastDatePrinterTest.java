@@ -0,0 +1,173 @@
+package com.example.photopaint.helpers.time;
+
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+// format(long, ...)走按秒缓存的快速路径，结果必须和按Calendar逐条规则格式化的完全一致
+public class FastDatePrinterTest {
+
+    private static final String[] PATTERNS = new String[]{
+            "dd_MM_yyyy_HH_mm_ss",
+            "yyyy-MM-dd HH:mm:ss.SSS",
+            "S",
+            "SS",
+            "SSS",
+            "SSSS",
+            "ss.S",
+            "HH:mm:ss,SS z",
+            "EEE, d MMM yyyy hh:mm:ss.S a Z",
+            "S'ms' SSS"
+    };
+
+    private static final String[] TIME_ZONES = new String[]{
+            "UTC",
+            "Europe/Berlin",
+            "America/New_York",
+            "Asia/Kolkata",
+            "Australia/Lord_Howe"
+    };
+
+    private static String expected(FastDateFormat format, long millis) {
+        Calendar calendar = new GregorianCalendar(format.getTimeZone(), format.getLocale());
+        calendar.setTimeInMillis(millis);
+        return format.format(calendar);
+    }
+
+    private static void assertFormats(FastDateFormat format, long millis) {
+        String expected = expected(format, millis);
+        String message = format.getPattern() + " " + format.getTimeZone().getID() + " " + millis;
+
+        assertEquals(message, expected, format.format(millis));
+
+        char[] chars = new char[80];
+        int length = format.format(millis, chars, 5);
+        assertEquals(message, expected, new String(chars, 5, length));
+
+        assertEquals(message, "x" + expected, format.format(millis, new StringBuffer("x")).toString());
+        assertEquals(message, expected, format.format(millis, new StringBuilder()).toString());
+
+        CharBuffer buffer = CharBuffer.allocate(80);
+        format.format(millis, buffer);
+        buffer.flip();
+        assertEquals(message, expected, buffer.toString());
+    }
+
+    private static void assertRange(long from, long to, long step) {
+        for (String pattern : PATTERNS) {
+            for (String zone : TIME_ZONES) {
+                FastDateFormat format = FastDateFormat.getInstance(pattern, TimeZone.getTimeZone(zone), Locale.US);
+                for (long millis = from; millis <= to; millis += step) {
+                    assertFormats(format, millis);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void aroundEpoch() {
+        assertRange(-3001, 3001, 1);
+    }
+
+    @Test
+    public void negativeMillis() {
+        long[] values = new long[]{-1, -999, -1000, -1001, -59999, -60000, -86400000L - 1, -1000000000000L - 7, Long.MIN_VALUE / 4};
+        for (String pattern : PATTERNS) {
+            for (String zone : TIME_ZONES) {
+                FastDateFormat format = FastDateFormat.getInstance(pattern, TimeZone.getTimeZone(zone), Locale.US);
+                for (long value : values) {
+                    assertFormats(format, value);
+                }
+            }
+        }
+    }
+
+    // 夏令时切换前后各两小时，每一步都跨秒，缓存的前缀要跟着偏移量变
+    @Test
+    public void daylightSavingTransitions() {
+        // 2021-03-14 07:00 UTC纽约进夏令时，2021-11-07 06:00 UTC出夏令时
+        assertRange(1615705200000L - 7200000L, 1615705200000L + 7200000L, 1999);
+        assertRange(1636264800000L - 7200000L, 1636264800000L + 7200000L, 1999);
+        // 2021-03-28 01:00 UTC柏林进夏令时，2021-10-31 01:00 UTC出夏令时
+        assertRange(1616893200000L - 7200000L, 1616893200000L + 7200000L, 1999);
+        assertRange(1635642000000L - 7200000L, 1635642000000L + 7200000L, 1999);
+    }
+
+    @Test
+    public void millisecondWidths() {
+        FastDateFormat one = FastDateFormat.getInstance("S", TimeZone.getTimeZone("UTC"), Locale.US);
+        FastDateFormat two = FastDateFormat.getInstance("SS", TimeZone.getTimeZone("UTC"), Locale.US);
+        FastDateFormat three = FastDateFormat.getInstance("SSS", TimeZone.getTimeZone("UTC"), Locale.US);
+        long[] values = new long[]{1000, 1005, 1050, 1500, 1999, -1, -995};
+        for (long value : values) {
+            assertFormats(one, value);
+            assertFormats(two, value);
+            assertFormats(three, value);
+        }
+        assertEquals("5", one.format(1005L));
+        assertEquals("05", two.format(1005L));
+        assertEquals("005", three.format(1005L));
+        assertEquals("999", three.format(-1L));
+    }
+
+    // 时间来回跳，缓存要按秒重建，不能拿上一秒的前缀
+    @Test
+    public void randomJumps() {
+        Random random = new Random(1);
+        for (String pattern : PATTERNS) {
+            for (String zone : TIME_ZONES) {
+                FastDateFormat format = FastDateFormat.getInstance(pattern, TimeZone.getTimeZone(zone), Locale.US);
+                long millis = 1700000000000L;
+                for (int a = 0; a < 2000; a++) {
+                    if (a % 10 == 0) {
+                        millis = (long) ((random.nextDouble() - 0.5) * 8e12);
+                    } else {
+                        millis += random.nextInt(1500) - 500;
+                    }
+                    assertFormats(format, millis);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws InterruptedException {
+        final FastDateFormat format = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS Z", TimeZone.getTimeZone("Europe/Berlin"), Locale.US);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long base = 1600000000000L + t * 86400000L * 50;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    char[] chars = new char[64];
+                    for (int a = 0; a < 20000 && failure.get() == null; a++) {
+                        long millis = base + a * 373L;
+                        String expected = expected(format, millis);
+                        String actual = new String(chars, 0, format.format(millis, chars, 0));
+                        if (!expected.equals(actual)) {
+                            failure.set(millis + ": " + expected + " != " + actual);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.photopaint.views.components.paint;
+
+import android.opengl.GLES20;
+import com.example.photopaint.views.components.Size;
+import com.example.photopaint.views.components.paint.gl.FakeGL;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+import com.example.photopaint.views.components.paint.gl.RecordingGL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class GLStateTest {
+
+    private RecordingGL gl;
+    private GLState state;
+
+    @Before
+    public void setUp() {
+        gl = new RecordingGL(new FakeGL());
+        gl.setCaptureCommands(true);
+        GLBackend.set(gl);
+
+        state = GLState.get();
+        state.reset();
+        state.resetStats();
+    }
+
+    @After
+    public void tearDown() {
+        GLBackend.reset();
+        state.reset();
+        state.resetStats();
+    }
+
+    private List<String> commands() {
+        List<String> names = new ArrayList<>();
+        for (RecordingGL.Command command : gl.endFrame().commands) {
+            names.add(command.name);
+        }
+        return names;
+    }
+
+    @Test
+    public void redundantCallsAreSkipped() {
+        state.useProgram(3);
+        state.useProgram(3);
+        state.bindFramebuffer(7);
+        state.bindFramebuffer(7);
+        state.blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        state.blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        state.activeTexture(GLES20.GL_TEXTURE0);
+        state.activeTexture(GLES20.GL_TEXTURE0);
+        state.bindTexture(5);
+        state.bindTexture(5);
+
+        assertEquals(Arrays.asList("glUseProgram", "glBindFramebuffer", "glBlendFunc", "glActiveTexture", "glBindTexture"), commands());
+
+        state.endFrame();
+        assertEquals(5, state.getLastFrameIssued());
+        assertEquals(5, state.getLastFrameSkipped());
+        assertEquals(1, state.getFrames());
+    }
+
+    @Test
+    public void changedValuesAreIssued() {
+        state.useProgram(3);
+        state.useProgram(4);
+        state.useProgram(3);
+        state.bindFramebuffer(0);
+        state.bindFramebuffer(7);
+
+        assertEquals(Arrays.asList("glUseProgram", "glUseProgram", "glUseProgram", "glBindFramebuffer", "glBindFramebuffer"), commands());
+    }
+
+    @Test
+    public void textureBindingsAreTrackedPerUnit() {
+        state.activeTexture(GLES20.GL_TEXTURE0);
+        state.bindTexture(5);
+        state.activeTexture(GLES20.GL_TEXTURE1);
+        state.bindTexture(5);
+        state.activeTexture(GLES20.GL_TEXTURE0);
+        state.bindTexture(5);
+
+        assertEquals(Arrays.asList("glActiveTexture", "glBindTexture", "glActiveTexture", "glBindTexture", "glActiveTexture"), commands());
+    }
+
+    @Test
+    public void unknownUnitAlwaysBinds() {
+        state.bindTexture(5);
+        state.bindTexture(5);
+
+        assertEquals(Arrays.asList("glBindTexture", "glBindTexture"), commands());
+    }
+
+    @Test
+    public void blendFuncPicksSeparateOnlyWhenNeeded() {
+        state.blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        state.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        state.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        state.blendFuncSeparate(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        assertEquals(Arrays.asList("glBlendFunc", "glBlendFuncSeparate", "glBlendFunc"), commands());
+    }
+
+    @Test
+    public void deletedObjectsAreRebound() {
+        state.activeTexture(GLES20.GL_TEXTURE0);
+        state.bindTexture(5);
+        state.bindFramebuffer(7);
+        state.deleteTexture(5);
+        state.deleteFramebuffer(7);
+        state.bindTexture(5);
+        state.bindFramebuffer(7);
+
+        assertEquals(Arrays.asList("glActiveTexture", "glBindTexture", "glBindFramebuffer", "glDeleteTextures", "glDeleteFramebuffers", "glBindTexture", "glBindFramebuffer"), commands());
+    }
+
+    @Test
+    public void deletingZeroIsIgnored() {
+        state.deleteTexture(0);
+        state.deleteFramebuffer(0);
+
+        assertEquals(0, commands().size());
+    }
+
+    @Test
+    public void resetForgetsState() {
+        state.useProgram(3);
+        state.bindFramebuffer(7);
+        state.reset();
+        state.useProgram(3);
+        state.bindFramebuffer(7);
+
+        assertEquals(Arrays.asList("glUseProgram", "glBindFramebuffer", "glUseProgram", "glBindFramebuffer"), commands());
+    }
+
+    @Test
+    public void generateTextureAllocatesAndBinds() {
+        state.activeTexture(GLES20.GL_TEXTURE0);
+        int texture = Texture.generateTexture(new Size(64, 32));
+        state.bindTexture(texture);
+
+        assertEquals(Arrays.asList("glActiveTexture", "glGenTextures", "glBindTexture",
+                "glTexParameteri", "glTexParameteri", "glTexParameteri", "glTexParameteri", "glTexImage2D"), commands());
+    }
+
+    @Test
+    public void framesSplitTheCallStream() {
+        state.useProgram(3);
+        RecordingGL.Frame first = gl.endFrame();
+        state.useProgram(3);
+        state.useProgram(4);
+        RecordingGL.Frame second = gl.endFrame();
+
+        assertEquals(1, first.calls);
+        assertEquals(1, second.calls);
+        assertEquals(Integer.valueOf(1), second.counts.get("glUseProgram"));
+        assertEquals(2, gl.getFrames().size());
+    }
+}
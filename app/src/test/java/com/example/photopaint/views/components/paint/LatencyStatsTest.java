@@ -0,0 +1,75 @@
+package com.example.photopaint.views.components.paint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyStatsTest {
+
+    @Test
+    public void emptyStats() {
+        LatencyStats stats = new LatencyStats();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMax());
+        assertEquals(0, stats.getLast());
+        assertEquals(0.0f, stats.getAverage(), 0);
+    }
+
+    @Test
+    public void tracksCountAverageMaxAndLast() {
+        LatencyStats stats = new LatencyStats();
+        stats.add(10);
+        stats.add(40);
+        stats.add(16);
+
+        assertEquals(3, stats.getCount());
+        assertEquals(22.0f, stats.getAverage(), 0.0001f);
+        assertEquals(40, stats.getMax());
+        assertEquals(16, stats.getLast());
+
+        String text = stats.toString();
+        assertTrue(text, text.startsWith("frames=3 "));
+        assertTrue(text, text.endsWith("max=40ms last=16ms"));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyStats stats = new LatencyStats();
+        stats.add(100);
+        stats.reset();
+
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMax());
+        assertEquals(0, stats.getLast());
+        assertEquals(0.0f, stats.getAverage(), 0);
+
+        stats.add(5);
+        assertEquals(5, stats.getMax());
+        assertEquals(5.0f, stats.getAverage(), 0);
+    }
+
+    @Test
+    public void concurrentWritersAreCounted() throws InterruptedException {
+        final LatencyStats stats = new LatencyStats();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int value = t + 1;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int a = 0; a < 10000; a++) {
+                        stats.add(value);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, stats.getCount());
+        assertEquals(2.5f, stats.getAverage(), 0.0001f);
+        assertEquals(4, stats.getMax());
+    }
+}
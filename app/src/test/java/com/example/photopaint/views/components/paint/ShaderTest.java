@@ -0,0 +1,105 @@
+package com.example.photopaint.views.components.paint;
+
+import com.example.photopaint.views.components.paint.gl.FakeGL;
+import com.example.photopaint.views.components.paint.gl.GLBackend;
+import com.example.photopaint.views.components.paint.gl.RecordingGL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShaderTest {
+
+    private static final String VERTEX = "attribute vec4 inPosition; void main() { gl_Position = inPosition; }";
+    private static final String FRAGMENT = "uniform sampler2D texture; void main() { gl_FragColor = vec4(1.0); }";
+
+    private RecordingGL gl;
+
+    @Before
+    public void setUp() {
+        gl = new RecordingGL(new FakeGL());
+        gl.setCaptureCommands(true);
+        GLBackend.set(gl);
+        GLState.get().reset();
+    }
+
+    @After
+    public void tearDown() {
+        GLBackend.reset();
+        GLState.get().reset();
+    }
+
+    private List<String> commands() {
+        List<String> names = new ArrayList<>();
+        for (RecordingGL.Command command : gl.endFrame().commands) {
+            names.add(command.name);
+        }
+        return names;
+    }
+
+    @Test
+    public void linksLazilyOnce() {
+        Shader shader = new Shader(VERTEX, FRAGMENT, new String[]{"inPosition"}, new String[]{"mvpMatrix", "texture"}, null);
+        assertEquals(0, commands().size());
+
+        int program = shader.getProgram();
+        assertNotEquals(0, program);
+        assertEquals(Arrays.asList(
+                "glCreateProgram",
+                "glCreateShader", "glShaderSource", "glCompileShader", "glGetShaderiv",
+                "glCreateShader", "glShaderSource", "glCompileShader", "glGetShaderiv",
+                "glAttachShader", "glAttachShader", "glBindAttribLocation",
+                "glLinkProgram", "glGetProgramiv",
+                "glGetUniformLocation", "glGetUniformLocation",
+                "glDeleteShader", "glDeleteShader"), commands());
+
+        assertEquals(program, shader.getProgram());
+        assertEquals(0, commands().size());
+    }
+
+    @Test
+    public void uniformSlotsAreResolved() {
+        Shader shader = new Shader(VERTEX, FRAGMENT, new String[]{"inPosition"}, new String[]{"mvpMatrix", "texture"}, null);
+        shader.getProgram();
+
+        assertTrue(shader.getUniform(Shader.UNIFORM_MVP_MATRIX) >= 0);
+        assertTrue(shader.getUniform(Shader.UNIFORM_TEXTURE) >= 0);
+        assertEquals(-1, shader.getUniform(Shader.UNIFORM_MASK));
+        assertEquals(shader.getUniform("texture"), shader.getUniform(Shader.UNIFORM_TEXTURE));
+    }
+
+    @Test
+    public void switchingShadersSkipsRepeatedUse() {
+        Shader first = new Shader(VERTEX, FRAGMENT, new String[]{"inPosition"}, new String[]{"texture"}, null);
+        Shader second = new Shader(VERTEX, FRAGMENT, new String[]{"inPosition"}, new String[]{"texture"}, null);
+        first.getProgram();
+        second.getProgram();
+        commands();
+
+        GLState.get().useProgram(first.getProgram());
+        GLState.get().useProgram(first.getProgram());
+        GLState.get().useProgram(second.getProgram());
+        GLState.get().useProgram(second.getProgram());
+        GLState.get().useProgram(first.getProgram());
+
+        assertEquals(Arrays.asList("glUseProgram", "glUseProgram", "glUseProgram"), commands());
+    }
+
+    @Test
+    public void cleanResourcesDeletesProgram() {
+        Shader shader = new Shader(VERTEX, FRAGMENT, new String[]{"inPosition"}, new String[]{"texture"}, null);
+        GLState.get().useProgram(shader.getProgram());
+        commands();
+
+        shader.cleanResources();
+        assertEquals(Arrays.asList("glDeleteProgram"), commands());
+    }
+}
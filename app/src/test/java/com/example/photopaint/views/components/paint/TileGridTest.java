@@ -0,0 +1,117 @@
+package com.example.photopaint.views.components.paint;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+import com.example.photopaint.views.components.Size;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TileGridTest {
+
+    // 单测环境里android.graphics的构造函数是空的，直接写字段
+    private static RectF rect(float left, float top, float right, float bottom) {
+        RectF rect = new RectF();
+        rect.left = left;
+        rect.top = top;
+        rect.right = right;
+        rect.bottom = bottom;
+        return rect;
+    }
+
+    @Test
+    public void startsFullyDirty() {
+        TileGrid grid = new TileGrid(new Size(1000, 600));
+        assertEquals(4 * 3, grid.getTileCount());
+        assertEquals(grid.getTileCount(), grid.getDirtyCount());
+        assertTrue(grid.isDirty());
+    }
+
+    @Test
+    public void clearAndMarkAll() {
+        TileGrid grid = new TileGrid(new Size(512, 512));
+        grid.clear();
+        assertFalse(grid.isDirty());
+        assertEquals(0, grid.getDirtyCount());
+
+        grid.markAllDirty();
+        assertEquals(4, grid.getDirtyCount());
+    }
+
+    @Test
+    public void markDirtyCoversTouchedTiles() {
+        TileGrid grid = new TileGrid(new Size(1024, 1024));
+        grid.clear();
+
+        grid.markDirty(rect(300, 10, 520, 200));
+        // 第0行的1、2列
+        assertEquals(2, grid.getDirtyCount());
+        assertTrue(grid.isTileDirty(1));
+        assertTrue(grid.isTileDirty(2));
+        assertFalse(grid.isTileDirty(0));
+        assertFalse(grid.isTileDirty(5));
+    }
+
+    @Test
+    public void markDirtyRoundsOutward() {
+        TileGrid grid = new TileGrid(new Size(1024, 1024));
+        grid.clear();
+
+        // 右边界刚好压到下一块的第一个像素
+        grid.markDirty(rect(255.5f, 0, 256.2f, 1));
+        assertTrue(grid.isTileDirty(0));
+        assertTrue(grid.isTileDirty(1));
+        assertEquals(2, grid.getDirtyCount());
+    }
+
+    @Test
+    public void markDirtyClampsToGrid() {
+        TileGrid grid = new TileGrid(new Size(600, 300));
+        grid.clear();
+
+        grid.markDirty(rect(-500, -500, 5000, 5000));
+        assertEquals(grid.getTileCount(), grid.getDirtyCount());
+
+        grid.clear();
+        grid.markDirty(null);
+        assertEquals(0, grid.getDirtyCount());
+    }
+
+    @Test
+    public void dirtyCountIgnoresRepeats() {
+        TileGrid grid = new TileGrid(new Size(512, 512));
+        grid.clear();
+
+        grid.markTileDirty(3);
+        grid.markTileDirty(3);
+        grid.markDirty(rect(300, 300, 310, 310));
+        assertEquals(1, grid.getDirtyCount());
+
+        grid.clearTile(3);
+        grid.clearTile(3);
+        assertEquals(0, grid.getDirtyCount());
+        assertFalse(grid.isDirty());
+    }
+
+    @Test
+    public void edgeTilesAreClipped() {
+        TileGrid grid = new TileGrid(new Size(600, 300));
+        assertEquals(3 * 2, grid.getTileCount());
+
+        Rect rect = new Rect();
+        grid.getTileRect(0, rect);
+        assertEquals(0, rect.left);
+        assertEquals(0, rect.top);
+        assertEquals(256, rect.right);
+        assertEquals(256, rect.bottom);
+
+        grid.getTileRect(5, rect);
+        assertEquals(512, rect.left);
+        assertEquals(256, rect.top);
+        assertEquals(600, rect.right);
+        assertEquals(300, rect.bottom);
+    }
+}
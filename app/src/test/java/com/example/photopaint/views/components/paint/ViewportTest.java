@@ -0,0 +1,111 @@
+package com.example.photopaint.views.components.paint;
+
+import com.example.photopaint.views.components.Size;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 只测纯计算的部分，Matrix和RectF在单测环境里是空实现
+public class ViewportTest {
+
+    private static final float EPSILON = 0.001f;
+
+    private Viewport viewport;
+
+    @Before
+    public void setUp() {
+        viewport = new Viewport(new Size(2000, 1000));
+        viewport.setViewSize(1000, 1600);
+    }
+
+    private float paintingX(float viewX) {
+        return (viewX - viewport.getOffsetX()) / viewport.getScale();
+    }
+
+    private float paintingY(float viewY) {
+        return (viewY - viewport.getOffsetY()) / viewport.getScale();
+    }
+
+    @Test
+    public void fitsViewWidth() {
+        assertEquals(0.5f, viewport.getScale(), EPSILON);
+        assertFalse(viewport.isZoomed());
+        // 画布在view里竖直居中
+        assertEquals(0, viewport.getOffsetX(), EPSILON);
+        assertEquals((1600 - 500) / 2.0f, viewport.getOffsetY(), EPSILON);
+    }
+
+    @Test
+    public void zoomIsClamped() {
+        viewport.zoom(0.5f, 500, 800);
+        assertEquals(1.0f, viewport.getZoom(), EPSILON);
+
+        viewport.zoom(100, 500, 800);
+        assertEquals(Viewport.MAX_ZOOM, viewport.getZoom(), EPSILON);
+        assertTrue(viewport.isZoomed());
+    }
+
+    @Test
+    public void zoomKeepsFocusInPlace() {
+        // 放大后画布两个方向都比view大，不会被居中的约束挪动
+        float focusX = 300;
+        float focusY = 750;
+        float beforeX = paintingX(focusX);
+        float beforeY = paintingY(focusY);
+
+        viewport.zoom(4, focusX, focusY);
+
+        assertEquals(4, viewport.getZoom(), EPSILON);
+        assertEquals(beforeX, paintingX(focusX), EPSILON);
+        assertEquals(beforeY, paintingY(focusY), EPSILON);
+    }
+
+    @Test
+    public void panIsClampedToPainting() {
+        viewport.pan(100, 100);
+        // 没放大时画布比view窄，不能拖动
+        assertEquals(0, viewport.getTranslationX(), EPSILON);
+        assertEquals(0, viewport.getTranslationY(), EPSILON);
+
+        viewport.zoom(4, 500, 800);
+        viewport.pan(100000, -100000);
+        // 放大4倍后画布在view里是4000x2000，view 1000x1600，拖到头时画布边缘正好贴着view
+        assertEquals(1500, viewport.getTranslationX(), EPSILON);
+        assertEquals(-200, viewport.getTranslationY(), EPSILON);
+        assertEquals(0, viewport.getOffsetX(), EPSILON);
+        assertEquals(1600, viewport.getOffsetY() + 1000 * viewport.getScale(), EPSILON);
+    }
+
+    @Test
+    public void setClampsAndResetRestores() {
+        viewport.set(20, 5000, 5000);
+        assertEquals(Viewport.MAX_ZOOM, viewport.getZoom(), EPSILON);
+        float maxX = (2000 * viewport.getScale() - 1000) / 2.0f;
+        float maxY = (1000 * viewport.getScale() - 1600) / 2.0f;
+        assertEquals(maxX, viewport.getTranslationX(), EPSILON);
+        assertEquals(maxY, viewport.getTranslationY(), EPSILON);
+
+        viewport.reset();
+        assertEquals(1.0f, viewport.getZoom(), EPSILON);
+        assertEquals(0, viewport.getTranslationX(), EPSILON);
+        assertEquals(0, viewport.getTranslationY(), EPSILON);
+    }
+
+    @Test
+    public void resizingViewReclamps() {
+        viewport.set(1, 400, 0);
+        // 画布正好和view一样宽，不能横向拖
+        assertEquals(0, viewport.getTranslationX(), EPSILON);
+
+        viewport.set(4, 0, 150);
+        assertEquals(150, viewport.getTranslationY(), EPSILON);
+
+        // view变高以后画布竖直方向能露出的部分变少
+        viewport.setViewSize(1000, 1900);
+        assertEquals(50, viewport.getTranslationY(), EPSILON);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.photopaint.views.components.paint.batch;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EditScriptTest {
+
+    private static EditScript roundTrip(EditScript script) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(script);
+        output.close();
+
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            return (EditScript) input.readObject();
+        } finally {
+            input.close();
+        }
+    }
+
+    @Test
+    public void serializesStrokesAndEntities() throws Exception {
+        EditScript script = new EditScript(2048, 1536);
+        script.addStroke(new EditScript.Stroke(EditScript.BrushType.NEON, 0xff00ff00, 42.5f, new float[]{1, 2, 3, 4, 5.5f, 6.25f}));
+        script.addStroke(new EditScript.Stroke(EditScript.BrushType.MOSAIC, 0, 80, new float[]{100, 200}));
+
+        EditScript.TextEntity text = new EditScript.TextEntity("hello\nworld", 0xffff0000, 64, true);
+        text.x = 300;
+        text.y = 400;
+        text.rotation = 0.5f;
+        script.addEntity(text);
+
+        EditScript.StickerEntity sticker = new EditScript.StickerEntity("/sdcard/sticker.webp", 512, 256);
+        sticker.scale = 1.5f;
+        sticker.mirrored = true;
+        script.addEntity(sticker);
+
+        EditScript copy = roundTrip(script);
+
+        assertEquals(2048, copy.getWidth(), 0);
+        assertEquals(1536, copy.getHeight(), 0);
+
+        assertEquals(2, copy.getStrokes().size());
+        EditScript.Stroke stroke = copy.getStrokes().get(0);
+        assertEquals(EditScript.BrushType.NEON, stroke.brush);
+        assertEquals(0xff00ff00, stroke.color);
+        assertEquals(42.5f, stroke.weight, 0);
+        assertArrayEquals(new float[]{1, 2, 3, 4, 5.5f, 6.25f}, stroke.points, 0);
+        assertEquals(3, stroke.getPointsCount());
+        assertEquals(EditScript.BrushType.MOSAIC, copy.getStrokes().get(1).brush);
+        assertEquals(1, copy.getStrokes().get(1).getPointsCount());
+
+        assertEquals(2, copy.getEntities().size());
+        EditScript.TextEntity textCopy = (EditScript.TextEntity) copy.getEntities().get(0);
+        assertEquals("hello\nworld", textCopy.text);
+        assertEquals(0xffff0000, textCopy.color);
+        assertEquals(64, textCopy.fontSize, 0);
+        assertTrue(textCopy.stroke);
+        assertEquals(300, textCopy.x, 0);
+        assertEquals(400, textCopy.y, 0);
+        assertEquals(0.5f, textCopy.rotation, 0);
+        assertEquals(1.0f, textCopy.scale, 0);
+
+        EditScript.StickerEntity stickerCopy = (EditScript.StickerEntity) copy.getEntities().get(1);
+        assertEquals("/sdcard/sticker.webp", stickerCopy.path);
+        assertEquals(512, stickerCopy.width, 0);
+        assertEquals(256, stickerCopy.height, 0);
+        assertEquals(1.5f, stickerCopy.scale, 0);
+        assertTrue(stickerCopy.mirrored);
+    }
+
+    @Test
+    public void serializesEmptyScript() throws Exception {
+        EditScript copy = roundTrip(new EditScript(10, 20));
+        assertEquals(0, copy.getStrokes().size());
+        assertEquals(0, copy.getEntities().size());
+    }
+
+    @Test
+    public void strokeWithoutPoints() throws Exception {
+        EditScript script = new EditScript(10, 10);
+        script.addStroke(new EditScript.Stroke(EditScript.BrushType.RADIAL, 0xff000000, 1, null));
+        EditScript.Stroke copy = roundTrip(script).getStrokes().get(0);
+        assertNull(copy.points);
+        assertEquals(0, copy.getPointsCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void strokesAreReadOnly() {
+        new EditScript(10, 10).getStrokes().add(null);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void entitiesAreReadOnly() {
+        new EditScript(10, 10).getEntities().add(null);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.photopaint.views.components.paint.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HistogramTest {
+
+    private static Histogram histogram() {
+        return new Histogram("frame", "ms", new long[]{1, 2, 4, 8, 16});
+    }
+
+    @Test
+    public void bucketsByInclusiveUpperBound() {
+        Histogram histogram = histogram();
+        long[] values = new long[]{0, 1, 2, 3, 4, 5, 8, 16, 17, 100};
+        for (long value : values) {
+            histogram.record(value);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        // 最后一个桶放超出上界的值
+        assertArrayEquals(new long[]{2, 1, 2, 2, 1, 2}, snapshot.counts);
+        assertEquals(10, snapshot.count);
+        assertEquals(156, snapshot.sum);
+        assertEquals(100, snapshot.max);
+        assertEquals(15.6f, snapshot.getAverage(), 0.0001f);
+    }
+
+    @Test
+    public void percentilesReturnBucketBound() {
+        Histogram histogram = histogram();
+        for (int a = 0; a < 90; a++) {
+            histogram.record(3);
+        }
+        for (int a = 0; a < 10; a++) {
+            histogram.record(12);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(4, snapshot.getPercentile(0.5f));
+        assertEquals(4, snapshot.getPercentile(0.9f));
+        // 上界比最大值大时返回最大值
+        assertEquals(12, snapshot.getPercentile(0.95f));
+        assertEquals(12, snapshot.getPercentile(1.0f));
+    }
+
+    @Test
+    public void percentileInOverflowBucketIsMax() {
+        Histogram histogram = histogram();
+        histogram.record(1);
+        histogram.record(500);
+        assertEquals(500, histogram.snapshot().getPercentile(0.99f));
+    }
+
+    @Test
+    public void emptySnapshot() {
+        Histogram.Snapshot snapshot = histogram().snapshot();
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.getPercentile(0.5f));
+        assertEquals(0.0f, snapshot.getAverage(), 0);
+        assertEquals("frame n=0 avg=0.0 p50=0 p95=0 max=0 ms", snapshot.toString());
+    }
+
+    @Test
+    public void snapshotIsDetachedAndResetClears() {
+        Histogram histogram = histogram();
+        histogram.record(6);
+        Histogram.Snapshot before = histogram.snapshot();
+
+        histogram.record(6);
+        histogram.reset();
+
+        assertEquals(1, before.count);
+        assertEquals(1, before.counts[3]);
+
+        Histogram.Snapshot after = histogram.snapshot();
+        assertEquals(0, after.count);
+        assertEquals(0, after.sum);
+        assertEquals(0, after.max);
+        assertArrayEquals(new long[6], after.counts);
+    }
+
+    @Test
+    public void concurrentRecording() throws InterruptedException {
+        final Histogram histogram = histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int a = 0; a < 20000; a++) {
+                        histogram.record(a % 20 + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        long total = 0;
+        for (long value : snapshot.counts) {
+            total += value;
+        }
+        assertEquals(80000, snapshot.count);
+        assertEquals(80000, total);
+        // 每个线程贡献 1000*(0+..+19) + 20000*offset
+        assertEquals(4 * 190000 + 20000 * (0 + 1 + 2 + 3), snapshot.sum);
+        assertEquals(22, snapshot.max);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.photopaint.views.components.paint.replay;
+
+import com.example.photopaint.views.components.paint.batch.EditScript;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TouchSessionTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static TouchSession.Event event(int time, int action, int actionIndex, int[] pointerIds, int[] sampleTimes, float[] coords) {
+        TouchSession.Event event = new TouchSession.Event();
+        event.time = time;
+        event.action = action;
+        event.actionIndex = actionIndex;
+        event.downTime = 3;
+        event.pointerIds = pointerIds;
+        event.sampleTimes = sampleTimes;
+        event.coords = coords;
+        return event;
+    }
+
+    @Test
+    public void roundTripsAllRecordTypes() throws IOException {
+        TouchSession session = new TouchSession(1280, 720);
+
+        TouchSession.BrushChange brush = new TouchSession.BrushChange();
+        brush.time = 0;
+        brush.brush = EditScript.BrushType.ELLIPTICAL;
+        session.add(brush);
+
+        TouchSession.ColorChange color = new TouchSession.ColorChange();
+        color.time = 1;
+        color.color = 0x80ff1020;
+        session.add(color);
+
+        TouchSession.SizeChange size = new TouchSession.SizeChange();
+        size.time = 2;
+        size.size = 0.35f;
+        session.add(size);
+
+        session.add(event(3, 0, 0, new int[]{0}, new int[]{3}, new float[]{10.5f, 20.25f}));
+        // 两个触点、三个采样点，两个是历史采样
+        session.add(event(20, 2, 0, new int[]{0, 7}, new int[]{12, 16, 20},
+                new float[]{11, 21, 100, 200, 12, 22, 101, 201, 13, 23, 102, 202}));
+
+        TouchSession.ViewportChange viewport = new TouchSession.ViewportChange();
+        viewport.time = 25;
+        viewport.viewWidth = 1080;
+        viewport.viewHeight = 1920;
+        viewport.zoom = 2.5f;
+        viewport.translationX = -40;
+        viewport.translationY = 12.5f;
+        session.add(viewport);
+
+        session.add(event(40, 1, 0, new int[]{0}, new int[]{40}, new float[]{-1, 1e6f}));
+
+        session.save(file);
+        TouchSession copy = TouchSession.load(file);
+
+        assertEquals(1280, copy.getWidth(), 0);
+        assertEquals(720, copy.getHeight(), 0);
+        assertEquals(40, copy.getDuration());
+
+        List<TouchSession.Record> records = copy.getRecords();
+        assertEquals(7, records.size());
+
+        assertEquals(EditScript.BrushType.ELLIPTICAL, ((TouchSession.BrushChange) records.get(0)).brush);
+        assertEquals(0x80ff1020, ((TouchSession.ColorChange) records.get(1)).color);
+        assertEquals(2, records.get(2).time);
+        assertEquals(0.35f, ((TouchSession.SizeChange) records.get(2)).size, 0);
+
+        TouchSession.Event move = (TouchSession.Event) records.get(4);
+        assertEquals(20, move.time);
+        assertEquals(2, move.action);
+        assertEquals(3, move.downTime);
+        assertEquals(2, move.getPointerCount());
+        assertEquals(3, move.getSampleCount());
+        assertArrayEquals(new int[]{0, 7}, move.pointerIds);
+        assertArrayEquals(new int[]{12, 16, 20}, move.sampleTimes);
+        assertEquals(12, move.getX(1, 0), 0);
+        assertEquals(201, move.getY(1, 1), 0);
+        assertEquals(102, move.getX(2, 1), 0);
+
+        TouchSession.ViewportChange viewportCopy = (TouchSession.ViewportChange) records.get(5);
+        assertEquals(1080, viewportCopy.viewWidth, 0);
+        assertEquals(1920, viewportCopy.viewHeight, 0);
+        assertEquals(2.5f, viewportCopy.zoom, 0);
+        assertEquals(-40, viewportCopy.translationX, 0);
+        assertEquals(12.5f, viewportCopy.translationY, 0);
+
+        TouchSession.Event up = (TouchSession.Event) records.get(6);
+        assertEquals(-1, up.getX(0, 0), 0);
+        assertEquals(1e6f, up.getY(0, 0), 0);
+    }
+
+    @Test
+    public void roundTripsEmptySession() throws IOException {
+        new TouchSession(10, 20).save(file);
+        TouchSession copy = TouchSession.load(file);
+        assertEquals(0, copy.getRecords().size());
+        assertEquals(0, copy.getDuration());
+    }
+
+    @Test
+    public void rejectsForeignFile() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(0x12345678);
+        out.close();
+        try {
+            TouchSession.load(file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not a touch session"));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void recordsAreReadOnly() {
+        new TouchSession(10, 10).getRecords().add(new TouchSession.ColorChange());
+    }
+}